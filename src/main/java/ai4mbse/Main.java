@@ -45,6 +45,9 @@ import ai4mbse.ui.AllocationDialog;
 import ai4mbse.subsystems.ModelDataExtractor;
 import ai4mbse.subsystems.JsonModelExporter;
 import ai4mbse.subsystems.AIIntegrationService;
+import ai4mbse.subsystems.AllocationCancellation;
+import ai4mbse.subsystems.AllocationCancelledException;
+import ai4mbse.subsystems.AllocationRequest;
 import ai4mbse.subsystems.ModelRelationshipCreator;
 import ai4mbse.subsystems.UserInterfaceManager;
 import ai4mbse.config.ConfigurationService;
@@ -161,7 +164,7 @@ public class Main extends Plugin {
     private final ModelRelationshipCreator modelRelationshipCreator = new ModelRelationshipCreator();
     private final UserInterfaceManager userInterfaceManager = new UserInterfaceManager();
     private final ConfigurationService configurationService = new ConfigurationService();
-    private final LoggingService loggingService = new LoggingService();
+    private final LoggingService loggingService = LoggingService.getInstance();
 
     /** 
      * Konfigurator für das Hauptmenü zur Registrierung der Plugin-Aktionen.
@@ -190,13 +193,29 @@ public class Main extends Plugin {
         @Override public int getPriority() { return AMConfigurator.MEDIUM_PRIORITY; }
     };
 
+    /**
+     * Wärmt nach dem Öffnen eines Projekts den Allokationspfad im Hintergrund auf
+     * (nur mit AI4MBSE_WARMUP).
+     */
+    private final ProjectEventListenerAdapter warmUpListener = new ProjectEventListenerAdapter() {
+        @Override
+        public void projectOpened(Project project) {
+            aiIntegrationService.warmUpAsync(backgroundExecutor);
+        }
+    };
+
     /**
      * Initialisiert das Plugin beim Start von MagicDraw.
-     * Registriert den Menü-Konfigurator für die Plugin-Aktionen.
+     * Registriert den Menü-Konfigurator für die Plugin-Aktionen, die Cache-Statistik als
+     * Diagnose-Bericht und, falls aktiviert, das Aufwärmen nach dem Öffnen eines Projekts.
      */
     @Override
     public void init() {
         ActionsConfiguratorsManager.getInstance().addMainMenuConfigurator(mainMenuConfigurator);
+        loggingService.addDiagnosticsSource(aiIntegrationService::getCacheStatistics);
+        if (AIIntegrationService.isWarmUpEnabled()) {
+            Application.getInstance().addProjectEventListener(warmUpListener);
+        }
         log("Plugin initialized successfully.");
     }
 
@@ -272,7 +291,7 @@ public class Main extends Plugin {
      * Ablauf:
      * 1. Auswahl des Requirement-Ordners
      * 2. Sammlung aller Requirements aus dem ausgewählten Ordner
-     * 3. Benutzerauswahl eines Requirements
+     * 3. Benutzerauswahl eines oder mehrerer Requirements
      * 4. Auswahl des Subsystem-Ordners
      * 5. Extraktion der Subsystem-Informationen
      * 6. Erstellung des KI-Prompts und API-Aufruf
@@ -319,6 +338,27 @@ public class Main extends Plugin {
             });
     }
     
+    /**
+     * Zeigt den Dialog zur Subsystem-Package-Auswahl für mehrere Requirements.
+     * 
+     * @param selectedRequirements Die ausgewählten Requirements
+     * @param project Das aktuelle Projekt
+     */
+    private void showBatchSubsystemDialog(List<Element> selectedRequirements, Project project) {
+        userInterfaceManager.showPackageSelectionDialog(
+            "Subsystem-Ordner wählen",
+            "Wählen Sie den Ordner mit den Subsystemen:",
+            project,
+            (selectedPackage) -> {
+                if (selectedPackage != null) {
+                    continueWithBatchAnalysis(selectedRequirements, selectedPackage, project);
+                } else {
+                    operationInProgress.set(false);
+                }
+            }
+        );
+    }
+    
     /**
      * Sammelt alle Block-Elemente aus einem Package und seinen Subpackages.
      * 
@@ -401,6 +441,11 @@ public class Main extends Plugin {
                     showNonModalSubsystemDialog(selectedRequirement, project);
                 }
                 
+                @Override
+                public void onRequirementsSelected(List<Element> selectedRequirements, Project project) {
+                    showBatchSubsystemDialog(selectedRequirements, project);
+                }
+                
                 @Override
                 public void onRequirementSelectionCancelled() {
                     operationInProgress.set(false);
@@ -433,55 +478,40 @@ public class Main extends Plugin {
         List<String> blockNames = new ArrayList<>();
         /** Zuordnung von Block-Namen zu deren MagicDraw-IDs */
         Map<String, String> blockNameToIdMap = new HashMap<>();
-
-        try {
-            // Sammle alle Block-Elemente aus dem ausgewählten Package und seinen Subpackages
-            collectBlocksFromPackage(selectedSubsystemPackage, blockNames, blockNameToIdMap);
-            
-            if (blockNames.isEmpty()) {
-                log("❌ Keine Block-Elemente im ausgewählten Package gefunden: " + selectedSubsystemPackage.getHumanName());
-                showMessage("❌ Keine Block-Elemente im ausgewählten Package gefunden.", JOptionPane.ERROR_MESSAGE);
-                operationInProgress.set(false);
-                return;
-            }
-            
-            
-        } catch (Exception ex) {
-            log("Fehler beim Extrahieren der Block-Elemente: " + ex.getMessage());
-            showMessage("Fehler beim Extrahieren der Block-Elemente: " + ex.getMessage(), JOptionPane.ERROR_MESSAGE);
-            operationInProgress.set(false);
+        if (!collectBlockCatalog(selectedSubsystemPackage, blockNames, blockNameToIdMap)) {
             return;
         }
 
-        // Schritt 4: KI-Prompt mit Requirement-Text und Block-Liste über AIIntegrationService erstellen
+        // Schritt 4: Requirement-Text über AIIntegrationService extrahieren
         String reqText = aiIntegrationService.extractRequirementText(selectedRequirement);
-        String prompt = aiIntegrationService.buildAdvancedPrompt(reqText, blockNames);
 
         // Schritt 5: API Key über ConfigurationService prüfen oder vom Benutzer anfordern
-        String apiKey = configurationService.getOrRequestApiKey();
-        if (apiKey == null || apiKey.isEmpty()) {
-            // Falls kein API Key verfügbar, über UserInterfaceManager anfordern
-            apiKey = userInterfaceManager.showApiKeyDialog();
-            if (apiKey == null || apiKey.isEmpty()) {
-                operationInProgress.set(false);
-                return;
-            }
-            // API Key speichern für zukünftige Verwendung
-            if (!configurationService.setApiKey(apiKey)) {
-                log("WARNING: API Key konnte nicht gespeichert werden.");
-            }
+        String apiKey = obtainApiKey();
+        if (apiKey == null) {
+            return;
         }
         
-        final String fPrompt = prompt;
-        final String fApiKey = apiKey;
-        final Map<String, String> fBlockNameToIdMap = blockNameToIdMap;
+        // KI-Prompt mit Requirement-Text und Block-Liste innerhalb des Token-Budgets erstellen;
+        // über das Abbruch-Token beendet "Abbrechen" auch die laufende HTTP-Anfrage
+        final AllocationCancellation cancellation = new AllocationCancellation();
+        final AllocationRequest request = aiIntegrationService.createRequest(
+            selectedRequirement, reqText, blockNames, blockNameToIdMap, apiKey).withCancellation(cancellation);
+        
+        // Streaming-Modus: Vorschläge erscheinen im Dialog, sobald sie generiert wurden
+        if (aiIntegrationService.isStreamingEnabled()) {
+            startStreamingAnalysis(request, project);
+            return;
+        }
         
         // Asynchroner API-Aufruf mit SwingWorker für bessere UI-Integration
-        SwingWorker<String, Void> apiWorker = new SwingWorker<String, Void>() {
+        SwingWorker<List<AllocationCandidate>, Void> apiWorker = new SwingWorker<List<AllocationCandidate>, Void>() {
             private ProgressMonitor progressMonitor;
             
+            /** Prüft regelmäßig, ob im Progress Monitor "Abbrechen" gewählt wurde */
+            private javax.swing.Timer cancelPoller;
+            
             @Override
-            protected String doInBackground() throws Exception {
+            protected List<AllocationCandidate> doInBackground() throws Exception {
                 // Progress Monitor für Benutzer-Feedback
                 EventQueue.invokeLater(() -> {
                     progressMonitor = new ProgressMonitor(
@@ -491,6 +521,14 @@ public class Main extends Plugin {
                         0, 100
                     );
                     progressMonitor.setProgress(25);
+                    cancelPoller = new javax.swing.Timer(200, event -> {
+                        if (progressMonitor.isCanceled()) {
+                            cancelPoller.stop();
+                            cancellation.cancel();
+                            cancel(false);
+                        }
+                    });
+                    cancelPoller.start();
                 });
                 
                 if (isCancelled()) {
@@ -504,7 +542,8 @@ public class Main extends Plugin {
                     }
                 });
                 
-                String suggestion = aiIntegrationService.callGeminiAPI(fPrompt, fApiKey);
+                // KI-Abfrage inkl. Cache und Verarbeitung der Antwort über AIIntegrationService
+                List<AllocationCandidate> validCandidates = aiIntegrationService.allocate(request);
                 
                 EventQueue.invokeLater(() -> {
                     if (progressMonitor != null) {
@@ -513,12 +552,15 @@ public class Main extends Plugin {
                     }
                 });
                 
-                return suggestion;
+                return validCandidates;
             }
             
             @Override
             protected void done() {
                 // Progress Monitor schließen
+                if (cancelPoller != null) {
+                    cancelPoller.stop();
+                }
                 if (progressMonitor != null) {
                     progressMonitor.close();
                 }
@@ -526,12 +568,8 @@ public class Main extends Plugin {
                 
                 try {
                     if (!isCancelled()) {
-                        String suggestion = get();
-                        if (suggestion != null) {
-                            // Verarbeitung der AI-Antwort über AIIntegrationService
-                            List<AllocationCandidate> validCandidates = aiIntegrationService.processAIResponse(
-                                suggestion, selectedRequirement, fBlockNameToIdMap);
-                            
+                        List<AllocationCandidate> validCandidates = get();
+                        if (validCandidates != null) {
                             if (validCandidates.isEmpty()) {
                                 userInterfaceManager.showMessage("Die KI hat keine Subsysteme vorgeschlagen, die im Modell gefunden werden konnten.", JOptionPane.INFORMATION_MESSAGE);
                                 return;
@@ -540,32 +578,7 @@ public class Main extends Plugin {
                             // Anzeige des Allokationsdialogs
                             AllocationDialog dialog = new AllocationDialog(userInterfaceManager.getMainFrame(), validCandidates);
                             
-                            dialog.setDialogListener(new AllocationDialog.AllocationDialogListener() {
-                                @Override
-                                public void onAllocationsAccepted(List<AllocationCandidate> accepted) {
-                                    if (accepted.isEmpty()) {
-                                        userInterfaceManager.showMessage("Keine Allokationen ausgewählt.", JOptionPane.INFORMATION_MESSAGE);
-                                        return;
-                                    }
-                                    
-                                    // Logging der bestätigten Allokationen
-                                    loggingService.log("User confirmed the following allocations:");
-                                    for (AllocationCandidate acceptedCandidate : accepted) {
-                                        loggingService.log("- Requirement: " + acceptedCandidate.getRequirementElement().getHumanName() +
-                                            " -> Subsystem: " + acceptedCandidate.getSubsystemName() +
-                                            " (ID: " + acceptedCandidate.getSubsystemId() + ")");
-                                    }
-                                    
-                                    // Erstellung der Satisfy-Dependencies über ModelRelationshipCreator
-                                    modelRelationshipCreator.createRelationshipsAsync(project, accepted);
-                                }
-                                
-                                @Override
-                                public void onDialogCancelled() {
-                                    loggingService.log("User cancelled allocation dialog.");
-                                    userInterfaceManager.showMessage("Allokation abgebrochen.", JOptionPane.INFORMATION_MESSAGE);
-                                }
-                            });
+                            dialog.setDialogListener(createAllocationDialogListener(project, null, null));
                             
                             dialog.setVisible(true);
                         }
@@ -574,6 +587,10 @@ public class Main extends Plugin {
                     log("KI-Abfrage wurde abgebrochen.");
                     showMessage("KI-Abfrage wurde abgebrochen.", JOptionPane.INFORMATION_MESSAGE);
                 } catch (Exception e) {
+                    if (e.getCause() instanceof AllocationCancelledException) {
+                        log("KI-Abfrage wurde abgebrochen.");
+                        return;
+                    }
                     log("Error querying Gemini: " + e.getMessage());
                     showMessage("Fehler bei der KI-Abfrage: " + e.getMessage(), JOptionPane.ERROR_MESSAGE);
                 }
@@ -582,6 +599,291 @@ public class Main extends Plugin {
         
         apiWorker.execute();
     }
+    
+    /**
+     * Setzt die KI-Analyse für mehrere ausgewählte Requirements fort. Alle Requirements
+     * werden über {@link AIIntegrationService#allocateBatch(List)} gemeinsam bearbeitet,
+     * sodass Requirements mit demselben Block-Katalog in gepackten Prompts angefragt werden.
+     * Anschließend wird für jedes Requirement mit Vorschlägen nacheinander ein
+     * Allokationsdialog geöffnet.
+     * 
+     * @param selectedRequirements Die ausgewählten Requirements
+     * @param selectedSubsystemPackage Das ausgewählte Subsystem-Package
+     * @param project Das aktuelle Projekt
+     */
+    private void continueWithBatchAnalysis(List<Element> selectedRequirements, Package selectedSubsystemPackage, Project project) {
+        List<String> blockNames = new ArrayList<>();
+        Map<String, String> blockNameToIdMap = new HashMap<>();
+        if (!collectBlockCatalog(selectedSubsystemPackage, blockNames, blockNameToIdMap)) {
+            return;
+        }
+        String apiKey = obtainApiKey();
+        if (apiKey == null) {
+            return;
+        }
+        
+        // Ein gemeinsames Abbruch-Token beendet alle Aufrufe des Stapels
+        final AllocationCancellation cancellation = new AllocationCancellation();
+        final List<AllocationRequest> requests = new ArrayList<>(selectedRequirements.size());
+        for (Element requirement : selectedRequirements) {
+            String reqText = aiIntegrationService.extractRequirementText(requirement);
+            requests.add(aiIntegrationService.createRequest(
+                requirement, reqText, blockNames, blockNameToIdMap, apiKey).withCancellation(cancellation));
+        }
+        
+        SwingWorker<List<List<AllocationCandidate>>, Void> batchWorker = new SwingWorker<List<List<AllocationCandidate>>, Void>() {
+            private ProgressMonitor progressMonitor;
+            
+            /** Prüft regelmäßig, ob im Progress Monitor "Abbrechen" gewählt wurde */
+            private javax.swing.Timer cancelPoller;
+            
+            @Override
+            protected List<List<AllocationCandidate>> doInBackground() throws Exception {
+                EventQueue.invokeLater(() -> {
+                    progressMonitor = new ProgressMonitor(
+                        getMainFrame(),
+                        "KI-Analyse für " + requests.size() + " Requirements wird durchgeführt...",
+                        "Anfragen werden gesendet...",
+                        0, 100
+                    );
+                    progressMonitor.setProgress(25);
+                    cancelPoller = new javax.swing.Timer(200, event -> {
+                        if (progressMonitor.isCanceled()) {
+                            cancelPoller.stop();
+                            cancellation.cancel();
+                            cancel(false);
+                        }
+                    });
+                    cancelPoller.start();
+                });
+                
+                // Gepackte KI-Abfrage inkl. Cache über AIIntegrationService
+                return aiIntegrationService.allocateBatch(requests);
+            }
+            
+            @Override
+            protected void done() {
+                if (cancelPoller != null) {
+                    cancelPoller.stop();
+                }
+                if (progressMonitor != null) {
+                    progressMonitor.close();
+                }
+                operationInProgress.set(false);
+                
+                try {
+                    if (!isCancelled()) {
+                        List<List<AllocationCandidate>> results = get();
+                        if (results.stream().allMatch(List::isEmpty)) {
+                            userInterfaceManager.showMessage("Die KI hat keine Subsysteme vorgeschlagen, die im Modell gefunden werden konnten.", JOptionPane.INFORMATION_MESSAGE);
+                            return;
+                        }
+                        showBatchAllocationDialog(results, 0, project);
+                    }
+                } catch (CancellationException e) {
+                    log("KI-Abfrage wurde abgebrochen.");
+                    showMessage("KI-Abfrage wurde abgebrochen.", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    if (e.getCause() instanceof AllocationCancelledException) {
+                        log("KI-Abfrage wurde abgebrochen.");
+                        return;
+                    }
+                    log("Error querying Gemini: " + e.getMessage());
+                    showMessage("Fehler bei der KI-Abfrage: " + e.getMessage(), JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        
+        batchWorker.execute();
+    }
+    
+    /**
+     * Öffnet den Allokationsdialog für das nächste Requirement eines Stapels mit Vorschlägen.
+     * Nach dem Bestätigen oder Überspringen folgt das nächste Requirement.
+     * 
+     * @param results Die validierten Kandidaten je Requirement
+     * @param index Position des nächsten zu prüfenden Requirements
+     * @param project Das aktuelle Projekt
+     */
+    private void showBatchAllocationDialog(List<List<AllocationCandidate>> results, int index, Project project) {
+        // Requirements ohne gültige Kandidaten überspringen
+        while (index < results.size() && results.get(index).isEmpty()) {
+            index++;
+        }
+        if (index >= results.size()) {
+            return;
+        }
+        final int next = index + 1;
+        final String requirementName = results.get(index).get(0).getRequirementElement().getHumanName();
+        AllocationDialog.AllocationDialogListener acceptListener = createAllocationDialogListener(project, null, null);
+        AllocationDialog dialog = new AllocationDialog(getMainFrame(), results.get(index));
+        dialog.setDialogListener(new AllocationDialog.AllocationDialogListener() {
+            @Override
+            public void onAllocationsAccepted(List<AllocationCandidate> accepted) {
+                acceptListener.onAllocationsAccepted(accepted);
+                showBatchAllocationDialog(results, next, project);
+            }
+            
+            @Override
+            public void onDialogCancelled() {
+                loggingService.log("User skipped allocation of requirement " + requirementName + ".");
+                showBatchAllocationDialog(results, next, project);
+            }
+        });
+        dialog.setVisible(true);
+    }
+    
+    /**
+     * Sammelt den Block-Katalog des ausgewählten Subsystem-Packages. Ist er leer oder
+     * schlägt das Sammeln fehl, wird der Benutzer informiert und die Operation beendet.
+     * 
+     * @param selectedSubsystemPackage Das ausgewählte Subsystem-Package
+     * @param blockNames Liste der Block-Namen (wird befüllt)
+     * @param blockNameToIdMap Map von Block-Namen zu IDs (wird befüllt)
+     * @return true, wenn Blöcke gefunden wurden
+     */
+    private boolean collectBlockCatalog(Package selectedSubsystemPackage, List<String> blockNames,
+                                        Map<String, String> blockNameToIdMap) {
+        try {
+            // Sammle alle Block-Elemente aus dem ausgewählten Package und seinen Subpackages
+            collectBlocksFromPackage(selectedSubsystemPackage, blockNames, blockNameToIdMap);
+            
+            if (blockNames.isEmpty()) {
+                log("❌ Keine Block-Elemente im ausgewählten Package gefunden: " + selectedSubsystemPackage.getHumanName());
+                showMessage("❌ Keine Block-Elemente im ausgewählten Package gefunden.", JOptionPane.ERROR_MESSAGE);
+                operationInProgress.set(false);
+                return false;
+            }
+            return true;
+        } catch (Exception ex) {
+            log("Fehler beim Extrahieren der Block-Elemente: " + ex.getMessage());
+            showMessage("Fehler beim Extrahieren der Block-Elemente: " + ex.getMessage(), JOptionPane.ERROR_MESSAGE);
+            operationInProgress.set(false);
+            return false;
+        }
+    }
+    
+    /**
+     * Prüft den API Key über den ConfigurationService oder fordert ihn vom Benutzer an.
+     * Ohne API Key wird die Operation beendet.
+     * 
+     * @return Der API Key oder null, wenn keiner angegeben wurde
+     */
+    private String obtainApiKey() {
+        String apiKey = configurationService.getOrRequestApiKey();
+        if (apiKey == null || apiKey.isEmpty()) {
+            // Falls kein API Key verfügbar, über UserInterfaceManager anfordern
+            apiKey = userInterfaceManager.showApiKeyDialog();
+            if (apiKey == null || apiKey.isEmpty()) {
+                operationInProgress.set(false);
+                return null;
+            }
+            // API Key speichern für zukünftige Verwendung
+            if (!configurationService.setApiKey(apiKey)) {
+                log("WARNING: API Key konnte nicht gespeichert werden.");
+            }
+        }
+        return apiKey;
+    }
+    
+    /**
+     * Führt die KI-Analyse im Streaming-Modus durch. Der Allokationsdialog wird sofort
+     * geöffnet und jeder Kandidat eingefügt, sobald sein JSON-Objekt vollständig
+     * empfangen wurde, statt einen Fortschrittsbalken für die gesamte Generierungszeit
+     * anzuzeigen.
+     * 
+     * @param request Die Eingaben der Allokation
+     * @param project Das aktuelle Projekt
+     */
+    private void startStreamingAnalysis(AllocationRequest request, Project project) {
+        AllocationDialog dialog = new AllocationDialog(getMainFrame(),
+            request.getRequirementElement().getHumanName());
+        
+        SwingWorker<List<AllocationCandidate>, AllocationCandidate> streamWorker =
+            new SwingWorker<List<AllocationCandidate>, AllocationCandidate>() {
+            @Override
+            protected List<AllocationCandidate> doInBackground() throws Exception {
+                return aiIntegrationService.streamAllocation(request, candidate -> publish(candidate));
+            }
+            
+            @Override
+            protected void process(List<AllocationCandidate> chunks) {
+                for (AllocationCandidate candidate : chunks) {
+                    dialog.addCandidate(candidate);
+                }
+            }
+            
+            @Override
+            protected void done() {
+                operationInProgress.set(false);
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    List<AllocationCandidate> validCandidates = get();
+                    if (validCandidates.isEmpty()) {
+                        dialog.dispose();
+                        userInterfaceManager.showMessage("Die KI hat keine Subsysteme vorgeschlagen, die im Modell gefunden werden konnten.", JOptionPane.INFORMATION_MESSAGE);
+                        return;
+                    }
+                    dialog.markGenerationComplete();
+                } catch (Exception e) {
+                    dialog.dispose();
+                    log("Error querying Gemini: " + e.getMessage());
+                    showMessage("Fehler bei der KI-Abfrage: " + e.getMessage(), JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        
+        dialog.setDialogListener(createAllocationDialogListener(project, streamWorker, request.getCancellation()));
+        dialog.setVisible(true);
+        streamWorker.execute();
+    }
+    
+    /**
+     * Erstellt den Listener, der bestätigte Allokationen als Satisfy-Dependencies anlegt.
+     * 
+     * @param project Das aktuelle Projekt
+     * @param runningWorker Optionaler noch laufender Worker, der bei Abbruch gestoppt wird
+     * @param cancellation Optionales Abbruch-Token der laufenden KI-Abfrage
+     * @return Listener für den Allokationsdialog
+     */
+    private AllocationDialog.AllocationDialogListener createAllocationDialogListener(
+            Project project, SwingWorker<?, ?> runningWorker, AllocationCancellation cancellation) {
+        return new AllocationDialog.AllocationDialogListener() {
+            @Override
+            public void onAllocationsAccepted(List<AllocationCandidate> accepted) {
+                if (accepted.isEmpty()) {
+                    userInterfaceManager.showMessage("Keine Allokationen ausgewählt.", JOptionPane.INFORMATION_MESSAGE);
+                    return;
+                }
+                
+                // Logging der bestätigten Allokationen
+                loggingService.log("User confirmed the following allocations:");
+                for (AllocationCandidate acceptedCandidate : accepted) {
+                    loggingService.log("- Requirement: " + acceptedCandidate.getRequirementElement().getHumanName() +
+                        " -> Subsystem: " + acceptedCandidate.getSubsystemName() +
+                        " (ID: " + acceptedCandidate.getSubsystemId() + ")");
+                }
+                
+                // Erstellung der Satisfy-Dependencies über ModelRelationshipCreator
+                modelRelationshipCreator.createRelationshipsAsync(project, accepted);
+            }
+            
+            @Override
+            public void onDialogCancelled() {
+                // Laufende Generierung kooperativ abbrechen; ein Interrupt würde den Kanal des Festplatten-Caches schließen
+                if (cancellation != null) {
+                    cancellation.cancel();
+                }
+                if (runningWorker != null && !runningWorker.isDone()) {
+                    runningWorker.cancel(false);
+                }
+                loggingService.log("User cancelled allocation dialog.");
+                userInterfaceManager.showMessage("Allokation abgebrochen.", JOptionPane.INFORMATION_MESSAGE);
+            }
+        };
+    }
 
     // Diese Methode wurde nach AIIntegrationService ausgelagert
 
@@ -628,14 +930,19 @@ public class Main extends Plugin {
     
     /**
      * Plugin-Lifecycle: Wird beim Schließen aufgerufen.
-     * Beendet alle laufenden Hintergrund-Operationen.
+     * Beendet alle laufenden Hintergrund-Operationen und protokolliert die Diagnose der Sitzung.
      * 
      * @return true, wenn das Plugin erfolgreich geschlossen werden kann
      */
     @Override 
     public boolean close() { 
         try {
+            if (AIIntegrationService.isWarmUpEnabled()) {
+                Application.getInstance().removeProjectEventListener(warmUpListener);
+            }
             backgroundExecutor.shutdown();
+            log(loggingService.getDiagnostics());
+            aiIntegrationService.shutdown();
             return true;
         } catch (Exception e) {
             log("Fehler beim Schließen des Plugins: " + e.getMessage());
@@ -668,4 +975,4 @@ public class Main extends Plugin {
 // - PackageSelectionCallback, RequirementSelectionCallback, SubsystemSelectionCallback -> UserInterfaceManager
 // - PackageTreeNode -> ModelDataExtractor  
 // - ExportedElement, ExportedPackage -> JsonModelExporter
-// - GeminiClient -> AIIntegrationService
+// - GeminiClient -> GeminiClient (subsystems, gemeinsamer HTTP/2-Transport)
@@ -10,6 +10,69 @@ import ai4mbse.interfaces.IConfigurationService;
  */
 public class ConfigurationService implements IConfigurationService {
     
+    /**
+     * Liest eine Plugin-Einstellung. Umgebungsvariablen haben Vorrang vor
+     * gespeicherten Preferences, danach greift der Standardwert.
+     * 
+     * @param key Name der Einstellung (z.B. "AI4MBSE_STREAMING")
+     * @param defaultValue Standardwert, falls die Einstellung nicht gesetzt ist
+     * @return Der konfigurierte Wert oder der Standardwert
+     */
+    public static String getSetting(String key, String defaultValue) {
+        String value = System.getenv(key);
+        if (value != null && !value.trim().isEmpty()) {
+            return value.trim();
+        }
+        try {
+            Preferences prefs = Preferences.userNodeForPackage(ConfigurationService.class);
+            value = prefs.get(key, null);
+        } catch (Exception e) {
+            value = null;
+        }
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+    
+    /**
+     * Liest eine boolesche Plugin-Einstellung ("true"/"false").
+     * 
+     * @param key Name der Einstellung
+     * @param defaultValue Standardwert
+     * @return Der konfigurierte Wert oder der Standardwert
+     */
+    public static boolean getBooleanSetting(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(getSetting(key, String.valueOf(defaultValue)));
+    }
+    
+    /**
+     * Liest eine ganzzahlige Plugin-Einstellung; ungültige Werte fallen auf den Standardwert zurück.
+     * 
+     * @param key Name der Einstellung
+     * @param defaultValue Standardwert
+     * @return Der konfigurierte Wert oder der Standardwert
+     */
+    public static long getLongSetting(String key, long defaultValue) {
+        try {
+            return Long.parseLong(getSetting(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Liest eine Gleitkomma-Einstellung; ungültige Werte fallen auf den Standardwert zurück.
+     * 
+     * @param key Name der Einstellung
+     * @param defaultValue Standardwert
+     * @return Der konfigurierte Wert oder der Standardwert
+     */
+    public static double getDoubleSetting(String key, double defaultValue) {
+        try {
+            return Double.parseDouble(getSetting(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
     /**
      * Holt den API Key aus der Umgebungsvariable oder fordert ihn vom Benutzer an - ORIGINAL.
      * 
@@ -8,6 +8,7 @@ import com.nomagic.magicdraw.actions.ActionsID;
 import com.nomagic.magicdraw.actions.MDAction;
 import com.nomagic.magicdraw.core.Application;
 import com.nomagic.magicdraw.core.Project;
+import com.nomagic.magicdraw.core.project.ProjectEventListenerAdapter;
 import com.nomagic.magicdraw.plugins.Plugin;
 
 import ai4mbse.subsystems.UserInterfaceManager;
@@ -75,6 +76,16 @@ public class PluginCoreManager extends Plugin {
         }
     };
     
+    /**
+     * Wärmt nach dem Öffnen eines Projekts den Allokationspfad im Hintergrund auf.
+     */
+    private final ProjectEventListenerAdapter warmUpListener = new ProjectEventListenerAdapter() {
+        @Override
+        public void projectOpened(Project project) {
+            aiService.warmUpAsync(asyncProcessor::runAsync);
+        }
+    };
+    
     /**
      * Initialisiert das Plugin beim Start von MagicDraw.
      */
@@ -82,7 +93,7 @@ public class PluginCoreManager extends Plugin {
     public void init() {
         try {
             // Einfache Subsystem-Initialisierung
-            loggingService = new LoggingService();
+            loggingService = LoggingService.getInstance();
             configService = new ConfigurationService();
             asyncProcessor = new AsynchronousProcessingService();
             modelExtractor = new ModelDataExtractor();
@@ -92,6 +103,9 @@ public class PluginCoreManager extends Plugin {
             userInterface = new UserInterfaceManager();
             
             ActionsConfiguratorsManager.getInstance().addMainMenuConfigurator(mainMenuConfigurator);
+            if (AIIntegrationService.isWarmUpEnabled()) {
+                Application.getInstance().addProjectEventListener(warmUpListener);
+            }
             loggingService.log("Plugin initialized successfully.");
                              
         } catch (Exception e) {
@@ -161,10 +175,18 @@ public class PluginCoreManager extends Plugin {
     @Override 
     public boolean close() { 
         try {
+            if (AIIntegrationService.isWarmUpEnabled()) {
+                Application.getInstance().removeProjectEventListener(warmUpListener);
+            }
+            
             if (asyncProcessor != null) {
                 asyncProcessor.shutdown();
             }
             
+            if (aiService != null) {
+                aiService.shutdown();
+            }
+            
             if (loggingService != null) {
                 loggingService.log("Plugin shutdown completed");
             }
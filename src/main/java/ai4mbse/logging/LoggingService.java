@@ -4,6 +4,8 @@ import com.nomagic.magicdraw.core.Application;
 import ai4mbse.interfaces.ILoggingService;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
 
 /**
  * Einfaches Logging Subsystem.
@@ -11,6 +13,19 @@ import java.util.ArrayList;
  */
 public class LoggingService implements ILoggingService {
     
+    /** Gemeinsame Instanz des Plugins */
+    private static final LoggingService instance = new LoggingService();
+    
+    /** Weitere Berichte für {@link #getDiagnostics()}, z.B. die Cache-Statistik */
+    private final List<Supplier<String>> diagnosticsSources = new CopyOnWriteArrayList<>();
+    
+    /**
+     * @return Der gemeinsame LoggingService des Plugins
+     */
+    public static LoggingService getInstance() {
+        return instance;
+    }
+    
     /**
      * Loggt eine einfache Nachricht.
      * 
@@ -83,9 +98,28 @@ public class LoggingService implements ILoggingService {
         return false;
     }
     
+    /**
+     * Registriert einen weiteren Bericht für {@link #getDiagnostics()}.
+     *
+     * @param source Liefert den Bericht beim Abruf der Diagnose
+     */
+    public void addDiagnosticsSource(Supplier<String> source) {
+        diagnosticsSources.add(source);
+    }
+    
+    /**
+     * Liefert den Tokenverbrauch der Sitzung je Modell, Stapel und Requirement sowie
+     * die registrierten Berichte.
+     *
+     * @return Diagnose-Bericht als String
+     */
     @Override
     public String getDiagnostics() {
-        return "Basic diagnostics";
+        StringBuilder report = new StringBuilder(TokenUsageLedger.getInstance().getReport());
+        for (Supplier<String> source : diagnosticsSources) {
+            report.append('\n').append(source.get());
+        }
+        return report.toString();
     }
     
     @Override
@@ -0,0 +1,98 @@
+package ai4mbse.logging;
+
+/**
+ * Tokenverbrauch eines oder mehrerer Gemini-Aufrufe laut usageMetadata.
+ *
+ * Eingabe-Tokens enthalten die aus einem Kontext-Cache gelesenen Tokens, die zusätzlich
+ * getrennt ausgewiesen werden. Denk-Tokens (thoughtsTokenCount) werden wie Ausgabe
+ * abgerechnet, aber getrennt geführt. Instanzen sind unveränderlich.
+ */
+public final class TokenUsage {
+
+    /** Kein Verbrauch */
+    public static final TokenUsage NONE = new TokenUsage(0, 0, 0, 0, 0);
+
+    private final long calls;
+    private final long inputTokens;
+    private final long outputTokens;
+    private final long cachedTokens;
+    private final long thoughtTokens;
+
+    /**
+     * @param calls Anzahl der Aufrufe
+     * @param inputTokens Eingabe-Tokens (promptTokenCount)
+     * @param outputTokens Ausgabe-Tokens (candidatesTokenCount)
+     * @param cachedTokens Davon aus dem Kontext-Cache gelesene Eingabe-Tokens (cachedContentTokenCount)
+     * @param thoughtTokens Denk-Tokens (thoughtsTokenCount)
+     */
+    public TokenUsage(long calls, long inputTokens, long outputTokens, long cachedTokens, long thoughtTokens) {
+        this.calls = calls;
+        this.inputTokens = inputTokens;
+        this.outputTokens = outputTokens;
+        this.cachedTokens = cachedTokens;
+        this.thoughtTokens = thoughtTokens;
+    }
+
+    /**
+     * @param other Weiterer Verbrauch
+     * @return Die Summe beider Verbräuche
+     */
+    public TokenUsage plus(TokenUsage other) {
+        return new TokenUsage(calls + other.calls, inputTokens + other.inputTokens, outputTokens + other.outputTokens,
+            cachedTokens + other.cachedTokens, thoughtTokens + other.thoughtTokens);
+    }
+
+    /**
+     * Teilt den Verbrauch eines gemeinsamen Aufrufs gleichmäßig auf, z.B. einen gepackten
+     * Prompt auf seine Requirements. Die Anzahl der Aufrufe bleibt erhalten.
+     *
+     * @param parts Anzahl der Anteile
+     * @return Ein Anteil (abgerundet)
+     */
+    public TokenUsage share(int parts) {
+        if (parts <= 1) return this;
+        return new TokenUsage(calls, inputTokens / parts, outputTokens / parts, cachedTokens / parts,
+            thoughtTokens / parts);
+    }
+
+    /**
+     * @return Anzahl der Aufrufe
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return Eingabe-Tokens einschließlich der gecachten
+     */
+    public long getInputTokens() {
+        return inputTokens;
+    }
+
+    /**
+     * @return Ausgabe-Tokens
+     */
+    public long getOutputTokens() {
+        return outputTokens;
+    }
+
+    /**
+     * @return Aus dem Kontext-Cache gelesene Eingabe-Tokens
+     */
+    public long getCachedTokens() {
+        return cachedTokens;
+    }
+
+    /**
+     * @return Denk-Tokens
+     */
+    public long getThoughtTokens() {
+        return thoughtTokens;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d calls, %d in (%d cached), %d out, %d thoughts",
+            calls, inputTokens, cachedTokens, outputTokens, thoughtTokens);
+    }
+}
@@ -0,0 +1,161 @@
+package ai4mbse.logging;
+
+import ai4mbse.config.ConfigurationService;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Buchführung über den Tokenverbrauch der Gemini-Aufrufe einer MagicDraw-Sitzung.
+ *
+ * Jeder Aufruf wird mit den Zahlen aus usageMetadata gebucht: gesamt und je Modell.
+ * Zusätzlich werden Verbräuche je Requirement (die zuletzt bearbeiteten) und je
+ * Stapelverarbeitung geführt. Sind Preise je Million Tokens konfiguriert, weist der
+ * Bericht die geschätzten Kosten aus. Der Bericht erscheint in
+ * {@link LoggingService#getDiagnostics()}.
+ */
+public final class TokenUsageLedger {
+
+    /** Preis je Million nicht gecachter Eingabe-Tokens (0 = keine Kostenschätzung) */
+    private static final double INPUT_PRICE = ConfigurationService.getDoubleSetting("AI4MBSE_PRICE_INPUT_PER_MTOK", 0);
+
+    /** Preis je Million Ausgabe- und Denk-Tokens */
+    private static final double OUTPUT_PRICE = ConfigurationService.getDoubleSetting("AI4MBSE_PRICE_OUTPUT_PER_MTOK", 0);
+
+    /** Preis je Million aus dem Kontext-Cache gelesener Eingabe-Tokens */
+    private static final double CACHED_PRICE = ConfigurationService.getDoubleSetting("AI4MBSE_PRICE_CACHED_PER_MTOK", 0);
+
+    /** Anzahl der vorgehaltenen Requirements */
+    private static final int MAX_REQUIREMENTS = 500;
+
+    /** Anzahl der im Bericht gezeigten Requirements mit dem höchsten Verbrauch */
+    private static final int REPORTED_REQUIREMENTS = 10;
+
+    /** Anzahl der vorgehaltenen Stapelverarbeitungen */
+    private static final int MAX_BATCHES = 20;
+
+    /** Gemeinsame Instanz der Sitzung */
+    private static final TokenUsageLedger instance = new TokenUsageLedger();
+
+    /** Verbrauch der gesamten Sitzung */
+    private TokenUsage session = TokenUsage.NONE;
+
+    /** Verbrauch je Modell */
+    private final Map<String, TokenUsage> byModel = new TreeMap<>();
+
+    /** Verbrauch der zuletzt bearbeiteten Requirements (LRU) */
+    private final Map<String, TokenUsage> byRequirement = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TokenUsage> eldest) {
+            return size() > MAX_REQUIREMENTS;
+        }
+    };
+
+    /** Zuletzt abgeschlossene Stapelverarbeitungen, älteste zuerst */
+    private final ArrayDeque<String> recentBatches = new ArrayDeque<>();
+
+    /** Verbrauch aller Stapelverarbeitungen */
+    private TokenUsage batches = TokenUsage.NONE;
+
+    /** Anzahl der Stapelverarbeitungen und ihrer Requirements */
+    private long batchCount, batchRequirements;
+
+    private TokenUsageLedger() {
+    }
+
+    /**
+     * @return Die Buchführung der Sitzung
+     */
+    public static TokenUsageLedger getInstance() {
+        return instance;
+    }
+
+    /**
+     * Bucht einen Gemini-Aufruf.
+     *
+     * @param model Der Modellname
+     * @param usage Der Verbrauch laut usageMetadata
+     */
+    public synchronized void recordCall(String model, TokenUsage usage) {
+        session = session.plus(usage);
+        byModel.merge(model, usage, TokenUsage::plus);
+    }
+
+    /**
+     * Bucht den Verbrauch eines Requirements; mehrere Buchungen werden addiert.
+     *
+     * @param requirement Bezeichnung des Requirements
+     * @param usage Der Verbrauch seiner Aufrufe bzw. sein Anteil an einem gepackten Prompt
+     */
+    public synchronized void recordRequirement(String requirement, TokenUsage usage) {
+        byRequirement.merge(requirement, usage, TokenUsage::plus);
+    }
+
+    /**
+     * Bucht eine abgeschlossene Stapelverarbeitung.
+     *
+     * @param requirements Anzahl der Requirements im Stapel
+     * @param usage Der Verbrauch aller Aufrufe des Stapels
+     */
+    public synchronized void recordBatch(int requirements, TokenUsage usage) {
+        batchCount++;
+        batchRequirements += requirements;
+        batches = batches.plus(usage);
+        if (recentBatches.size() >= MAX_BATCHES) recentBatches.removeFirst();
+        recentBatches.addLast(String.format("%tT %d requirements: %s%s", System.currentTimeMillis(), requirements,
+            usage, costSuffix(usage)));
+    }
+
+    /**
+     * @return Der Verbrauch der gesamten Sitzung
+     */
+    public synchronized TokenUsage getSessionUsage() {
+        return session;
+    }
+
+    /**
+     * @param requirement Bezeichnung des Requirements
+     * @return Der gebuchte Verbrauch oder {@link TokenUsage#NONE}
+     */
+    public synchronized TokenUsage getRequirementUsage(String requirement) {
+        return byRequirement.getOrDefault(requirement, TokenUsage.NONE);
+    }
+
+    /**
+     * @return Bericht über Sitzung, Modelle, Stapel und die Requirements mit dem höchsten Verbrauch
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder("Token usage (session): ").append(session).append(costSuffix(session));
+        for (Map.Entry<String, TokenUsage> model : byModel.entrySet()) {
+            report.append("\n  model ").append(model.getKey()).append(": ").append(model.getValue())
+                .append(costSuffix(model.getValue()));
+        }
+        report.append(String.format("%nToken usage (batches): %d batches, %d requirements, %s%s",
+            batchCount, batchRequirements, batches, costSuffix(batches)));
+        for (String batch : recentBatches) report.append("\n  ").append(batch);
+        report.append(String.format("%nToken usage (requirements): %d tracked, top %d by tokens",
+            byRequirement.size(), Math.min(REPORTED_REQUIREMENTS, byRequirement.size())));
+        byRequirement.entrySet().stream()
+            .sorted((a, b) -> Long.compare(totalTokens(b.getValue()), totalTokens(a.getValue())))
+            .limit(REPORTED_REQUIREMENTS)
+            .forEach(e -> report.append("\n  ").append(e.getKey()).append(": ").append(e.getValue()));
+        return report.toString();
+    }
+
+    private static long totalTokens(TokenUsage usage) {
+        return usage.getInputTokens() + usage.getOutputTokens() + usage.getThoughtTokens();
+    }
+
+    /**
+     * Geschätzte Kosten als Zusatz für den Bericht, leer ohne konfigurierte Preise.
+     */
+    private static String costSuffix(TokenUsage usage) {
+        if (INPUT_PRICE <= 0 && OUTPUT_PRICE <= 0 && CACHED_PRICE <= 0) return "";
+        double cost = ((usage.getInputTokens() - usage.getCachedTokens()) * INPUT_PRICE
+            + usage.getCachedTokens() * CACHED_PRICE
+            + (usage.getOutputTokens() + usage.getThoughtTokens()) * OUTPUT_PRICE) / 1_000_000;
+        return String.format(java.util.Locale.ROOT, ", est. cost %.4f", cost);
+    }
+}
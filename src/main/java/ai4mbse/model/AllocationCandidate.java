@@ -44,6 +44,13 @@ public class AllocationCandidate {
     @SerializedName("justification")
     private String justification;
 
+    /**
+     * Streuung (Standardabweichung) der Konfidenz über die Läufe eines Ensembles
+     * (null = einzelne Bewertung). Wird mit gecachten Ensemble-Ergebnissen gespeichert.
+     */
+    @SerializedName("dispersion")
+    private Double scoreDispersion;
+
     /**
      * Standardkonstruktor für Gson-Deserialisierung.
      * Wird automatisch von Gson beim Parsen der JSON-Antwort der KI aufgerufen.
@@ -96,6 +103,13 @@ public class AllocationCandidate {
         return justification;
     }
 
+    /**
+     * @return Streuung der Konfidenz über die Ensemble-Läufe oder null bei einzelner Bewertung
+     */
+    public Double getScoreDispersion() {
+        return scoreDispersion;
+    }
+
     /**
      * @return true, wenn dieser Kandidat vom Benutzer ausgewählt wurde
      */
@@ -146,6 +160,15 @@ public class AllocationCandidate {
         this.justification = justification;
     }
 
+    /**
+     * Setzt die Streuung der Konfidenz über die Läufe eines Ensembles.
+     * 
+     * @param scoreDispersion Standardabweichung der Konfidenz oder null
+     */
+    public void setScoreDispersion(Double scoreDispersion) {
+        this.scoreDispersion = scoreDispersion;
+    }
+
     /**
      * Markiert diesen Kandidaten als vom Benutzer ausgewählt oder nicht ausgewählt.
      * 
@@ -173,6 +196,22 @@ public class AllocationCandidate {
         this.subsystemId = subsystemId;
     }
 
+    /**
+     * Erstellt eine Kopie dieses Kandidaten für ein anderes Requirement-Element.
+     * Subsystem, Konfidenz, Streuung, Begründung und Subsystem-ID werden übernommen;
+     * die Benutzerauswahl wird zurückgesetzt.
+     * 
+     * @param requirementElement Das Requirement-Element der Kopie
+     * @return Neuer, unabhängiger Allokationskandidat
+     */
+    public AllocationCandidate copyForRequirement(Element requirementElement) {
+        AllocationCandidate copy = new AllocationCandidate(subsystemName, confidence, justification);
+        copy.setScoreDispersion(scoreDispersion);
+        copy.setSubsystemId(subsystemId);
+        copy.setRequirementElement(requirementElement);
+        return copy;
+    }
+
     /**
      * Erstellt eine String-Repräsentation dieses Allokationskandidaten.
      * Nützlich für Debugging und Logging.
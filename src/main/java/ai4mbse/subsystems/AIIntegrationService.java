@@ -4,23 +4,31 @@ import com.nomagic.magicdraw.core.Application;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Comment;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.io.OutputStreamWriter;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.TokenUsage;
+import ai4mbse.logging.TokenUsageLedger;
 import ai4mbse.model.AllocationCandidate;
 
 /**
@@ -38,12 +46,47 @@ public class AIIntegrationService {
     
     /** Timeout für HTTP-Verbindungen in Millisekunden */
     private static final int TIMEOUT = 60000;
-    
-    /** GSON-Instanz für JSON-Serialisierung */
-    private static final Gson gson = new Gson();
 
-    /** Speichert den letzten Request-Payload für Debugging-Zwecke */
-    public static String lastRequestPayload;
+    /** Aktiviert den Streaming-Modus (streamGenerateContent) mit inkrementellen Kandidaten */
+    private static final boolean STREAMING_ENABLED =
+        ConfigurationService.getBooleanSetting("AI4MBSE_STREAMING", true);
+
+    /** Version des Prompt-Aufbaus (Vorlagenname und Hash des Vorlagentexts); fließt in den Cache-Schlüssel ein */
+    public static final String PROMPT_VERSION = PromptTemplate.ADVANCED.getVersion();
+
+    /** Gemeinsamer In-Memory-Cache für KI-Antworten, begrenzt nach Anzahl und Größe */
+    private static final AllocationResultCache resultCache = new AllocationResultCache(
+        (int) ConfigurationService.getLongSetting("AI4MBSE_CACHE_MAX_ENTRIES", 256),
+        ConfigurationService.getLongSetting("AI4MBSE_CACHE_MAX_BYTES", 8L * 1024 * 1024));
+
+    /** Aktiviert den persistenten Cache neben model_structure.json */
+    private static final boolean PERSISTENT_CACHE_ENABLED =
+        ConfigurationService.getBooleanSetting("AI4MBSE_PERSISTENT_CACHE", true);
+
+    /** Fordert strukturierte JSON-Ausgabe mit Antwortschema an (Block-Namen als Enum) */
+    private static final boolean STRUCTURED_OUTPUT_ENABLED =
+        ConfigurationService.getBooleanSetting("AI4MBSE_STRUCTURED_OUTPUT", true);
+
+    /** Lässt die KI Blöcke über kurze Aliase (S1, S2, ...) statt über ihre Namen benennen */
+    private static final boolean SUBSYSTEM_ALIASES_ENABLED =
+        ConfigurationService.getBooleanSetting("AI4MBSE_SUBSYSTEM_ALIASES", false);
+
+    /** Bewertet Subsysteme lokal, solange der Circuit Breaker Gemini-Aufrufe abweist */
+    private static final boolean LOCAL_FALLBACK_ENABLED =
+        ConfigurationService.getBooleanSetting("AI4MBSE_LOCAL_FALLBACK", false);
+
+    /** Persistenter Cache über MagicDraw-Neustarts hinweg; wird beim ersten Zugriff geöffnet */
+    private static PersistentAllocationCache persistentCache;
+
+    /** true, wenn das Öffnen des persistenten Caches fehlgeschlagen ist */
+    private static boolean persistentCacheUnavailable;
+
+    /** Laufende Gemini-Anfragen nach Prompt-Hash (Single-Flight) */
+    private static final ConcurrentHashMap<String, CompletableFuture<List<AllocationCandidate>>> inFlightRequests =
+        new ConcurrentHashMap<>();
+
+    /** Anzahl der Aufrufe, die an eine laufende identische Anfrage angehängt wurden */
+    private static final AtomicLong coalescedRequests = new AtomicLong();
 
     /**
      * Verarbeitet die Antwort der KI und wandelt sie in AllocationCandidate-Objekte um.
@@ -57,6 +100,21 @@ public class AIIntegrationService {
             String aiResponse,
             Element requirementElement,
             java.util.Map<String, String> subsystemNameToIdMap
+    ) {
+        return processAIResponse(aiResponse, requirementElement, subsystemNameToIdMap, UnaryOperator.identity());
+    }
+
+    /**
+     * Verarbeitet die Antwort der KI für einen Prompt, dessen Block-Namen von den
+     * Modellnamen abweichen können.
+     *
+     * @param nameResolver Übersetzt Block-Namen der Antwort in Modellnamen
+     */
+    private List<AllocationCandidate> processAIResponse(
+            String aiResponse,
+            Element requirementElement,
+            java.util.Map<String, String> subsystemNameToIdMap,
+            UnaryOperator<String> nameResolver
     ) {
         // AI-Antwort wird verarbeitet
 
@@ -79,42 +137,778 @@ public class AIIntegrationService {
 
         try {
             // Deserialisierung der JSON-Antwort zu AllocationCandidate-Objekten
-            Type listType = new TypeToken<List<AllocationCandidate>>() {}.getType();
-            List<AllocationCandidate> candidates = gson.fromJson(cleanedAiResponse, listType);
+            List<AllocationCandidate> candidates = AllocationCandidateCodec.readList(cleanedAiResponse);
+            return bindCandidates(candidates, requirementElement, subsystemNameToIdMap, nameResolver);
+
+        } catch (JsonSyntaxException e) {
+            log("Fehler beim Parsen der KI-Antwort: " + e.getMessage() + "\nAI Response was: " + aiResponse);
+            return new ArrayList<>();
+        } catch (Exception e) {
+            log("Unerwarteter Fehler in processAIResponse: " + e.getMessage());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Führt die KI-Analyse für ein Requirement durch.
+     * Identische Anfragen (gleicher Requirement-Text, Block-Katalog, Modell und
+     * Prompt-Version) werden aus dem Cache beantwortet oder an eine bereits
+     * laufende identische Anfrage angehängt.
+     * 
+     * @param request Die Eingaben der Allokation
+     * @return Liste validierter Allokations-Kandidaten
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     */
+    public List<AllocationCandidate> allocate(AllocationRequest request) throws IOException, JsonSyntaxException {
+        return allocateShared(request, null);
+    }
+
+    /**
+     * Führt die KI-Analyse für mehrere Requirements durch. Requirements mit demselben
+     * Block-Katalog und API-Schlüssel werden vom {@link RequirementPackingPlanner} zu
+     * gemeinsamen Prompts gepackt; die Antwort wird nach Requirement-ID aufgeteilt und
+     * je Requirement unter seinem normalen Cache-Schlüssel gespeichert. Requirements,
+     * die einzeln bleiben oder in der Antwort fehlen, sowie alle Requirements im
+     * Ensemble-Modus laufen über {@link #allocate}. Alle Aufrufe erhalten die Fristen
+     * der Stapelverarbeitung ({@link AllocationRequest#asBatch()}).
+     *
+     * @param batchRequests Die Eingaben der Allokationen
+     * @return Die validierten Kandidaten je Requirement, in Reihenfolge der Eingaben
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     */
+    public List<List<AllocationCandidate>> allocateBatch(List<AllocationRequest> batchRequests)
+            throws IOException, JsonSyntaxException {
+        List<AllocationRequest> requests = new ArrayList<>(batchRequests.size());
+        for (AllocationRequest request : batchRequests) requests.add(request.asBatch());
+        TokenUsageScope usage = TokenUsageScope.open();
+        TokenUsageScope.Binding binding = usage.bind();
+        try {
+            return allocateBatchRequests(requests);
+        } finally {
+            binding.close();
+            TokenUsageLedger.getInstance().recordBatch(requests.size(), usage.getUsage());
+        }
+    }
+
+    /**
+     * Ablauf von {@link #allocateBatch} für die bereits als Stapel markierten Anfragen.
+     */
+    private List<List<AllocationCandidate>> allocateBatchRequests(List<AllocationRequest> requests)
+            throws IOException, JsonSyntaxException {
+        List<List<AllocationCandidate>> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
 
-            // Validierung der KI-Antwort
-            if (candidates == null || candidates.isEmpty()) {
-                log("Keine gültigen Kandidaten aus der KI-Antwort erhalten!");
-                return new ArrayList<>();
+        // Cache-Treffer direkt beantworten, den Rest nach Katalog und Schlüssel gruppieren
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            AllocationRequest request = requests.get(i);
+            String cached = lookupCachedResponse(computeCacheKey(request));
+            if (cached != null) {
+                results.set(i, processAIResponse(cached, request.getRequirementElement(),
+                    request.getSubsystemNameToIdMap(), nameResolverFor(request)));
+                continue;
+            }
+            if (AllocationEnsemble.isEnabled()) {
+                // Ensemble-Varianten bewerten jedes Requirement einzeln
+                results.set(i, allocate(request));
+                continue;
             }
+            String group = request.getApiKey() + '\u0000' + request.getSubsystemNames() + '\u0000'
+                + computeCatalogFingerprint(request.getSubsystemNameToIdMap());
+            groups.computeIfAbsent(group, k -> new ArrayList<>()).add(i);
+        }
 
-            // Filterung und Validierung der Kandidaten gegen das Modell
-            List<AllocationCandidate> validCandidates = new ArrayList<>();
-            for (AllocationCandidate candidate : candidates) {
-                String subsystemId = subsystemNameToIdMap.get(candidate.getSubsystemName());
-                if (subsystemId != null) {
-                    candidate.setRequirementElement(requirementElement);
-                    candidate.setSubsystemId(subsystemId);
-                    validCandidates.add(candidate);
+        for (List<Integer> group : groups.values()) {
+            List<String> texts = new ArrayList<>(group.size());
+            for (int index : group) texts.add(requests.get(index).getRequirementText());
+            List<String> catalog = requests.get(group.get(0)).getSubsystemNames();
+            for (RequirementPackingPlanner.Pack pack : RequirementPackingPlanner.plan(texts, catalog,
+                    STRUCTURED_OUTPUT_ENABLED, SUBSYSTEM_ALIASES_ENABLED)) {
+                List<Integer> indices = new ArrayList<>(pack.getMembers().size());
+                for (int member : pack.getMembers()) indices.add(group.get(member));
+                if (pack.getPlan() == null) {
+                    for (int index : indices) results.set(index, allocate(requests.get(index)));
                 } else {
-                    log("WARNING: Subsystem '" + candidate.getSubsystemName() + "' from AI response not found in model's subsystem list. Skipping.");
+                    allocatePack(pack, requests, indices, results);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Sendet einen gepackten Prompt und verteilt die Kandidaten auf die Requirements.
+     * Bei offenem Circuit Breaker oder unlesbarer Antwort wird jedes Requirement einzeln
+     * bearbeitet. Mit aktivem {@link GeminiModelRouter} geht der Prompt an die günstigste
+     * Stufe; unsichere Requirements werden einzeln eskaliert.
+     */
+    private void allocatePack(
+            RequirementPackingPlanner.Pack pack,
+            List<AllocationRequest> requests,
+            List<Integer> indices,
+            List<List<AllocationCandidate>> results
+    ) throws IOException, JsonSyntaxException {
+        PromptPlan plan = pack.getPlan();
+        GeminiModelRouter router = GeminiModelRouter.getInstance();
+        String model = router.isEnabled() ? router.getModel(0) : null;
+        Map<String, List<AllocationCandidate>> lists;
+        try {
+            GeminiRequestBody body = GeminiRequestBody.writeKeyed(pack.getKeys(),
+                STRUCTURED_OUTPUT_ENABLED ? plan.getResponseNames() : null, plan.getPrompt());
+            long start = System.nanoTime();
+            AllocationRequest first = requests.get(indices.get(0));
+            long expectedOutputTokens =
+                GeminiDeadline.expectedOutputTokens(indices.size(), first.getSubsystemNames().size());
+            GeminiDeadline deadline = GeminiDeadline.start(GeminiDeadline.Mode.BATCH, expectedOutputTokens);
+            String aiResponse;
+            TokenUsageScope usage = TokenUsageScope.open();
+            TokenUsageScope.Binding binding = usage.bind();
+            try {
+                aiResponse = GeminiClient.callGeminiModel(model, body, plan.getPrompt(),
+                    first.getApiKey(), plan.getEstimatedTokens(), first.getCancellation(), deadline);
+            } finally {
+                binding.close();
+                // Der gepackte Prompt wird zu gleichen Teilen auf seine Requirements gebucht
+                TokenUsage share = usage.getUsage().share(indices.size());
+                if (share.getCalls() > 0) {
+                    for (int index : indices) {
+                        TokenUsageLedger.getInstance().recordRequirement(usageLabel(requests.get(index)), share);
+                    }
                 }
             }
+            if (model != null) {
+                router.recordBaseline(plan.getEstimatedTokens(), expectedOutputTokens);
+                router.recordCall(0, (System.nanoTime() - start) / 1_000_000, plan.getEstimatedTokens(),
+                    expectedOutputTokens);
+            }
+            lists = AllocationCandidateCodec.readKeyedLists(aiResponse.trim());
+        } catch (GeminiCircuitOpenException e) {
+            lists = Collections.emptyMap();
+        } catch (JsonSyntaxException e) {
+            log("Fehler beim Parsen der gepackten KI-Antwort: " + e.getMessage() + " - Requirements werden einzeln angefragt.");
+            lists = Collections.emptyMap();
+        }
+
+        for (int i = 0; i < indices.size(); i++) {
+            AllocationRequest request = requests.get(indices.get(i));
+            List<AllocationCandidate> candidates = lists.get(pack.getKeys().get(i));
+            if (candidates == null) {
+                RequirementPackingPlanner.recordFallback(1);
+                results.set(indices.get(i), allocate(request));
+                continue;
+            }
+            List<AllocationCandidate> validCandidates = bindCandidates(candidates, request.getRequirementElement(),
+                request.getSubsystemNameToIdMap(), plan::resolveSubsystemName);
+            String reason = model != null ? router.escalationReason(validCandidates) : null;
+            if (reason != null) {
+                // Unsichere Requirements einzeln auf der nächsten Modellstufe nachfragen
+                router.recordEscalation(0, reason);
+                results.set(indices.get(i), fetchBlocking(request, computeCacheKey(request), 1));
+                continue;
+            }
+            if (!validCandidates.isEmpty()) {
+                // Unter Modellnamen speichern, damit der Einzelaufruf den Eintrag ohne Paket-Aliase liest
+                storeResponse(computeCacheKey(request), AllocationCandidateCodec.writeList(validCandidates));
+            }
+            results.set(indices.get(i), validCandidates);
+        }
+    }
 
+    /**
+     * Führt die KI-Analyse im Streaming-Modus durch.
+     * Jeder Kandidat wird validiert und an den Konsumenten übergeben, sobald sein
+     * JSON-Objekt vollständig empfangen wurde - noch während die KI weiter generiert.
+     * Bei einem Cache-Treffer oder einer angehängten Anfrage werden alle Kandidaten
+     * auf einmal ausgeliefert.
+     * 
+     * @param request Die Eingaben der Allokation
+     * @param candidateConsumer Empfänger für jeden validierten Kandidaten
+     * @return Liste aller validierten Allokations-Kandidaten
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     */
+    public List<AllocationCandidate> streamAllocation(
+            AllocationRequest request,
+            Consumer<AllocationCandidate> candidateConsumer
+    ) throws IOException, JsonSyntaxException {
+        return allocateShared(request, candidateConsumer);
+    }
+
+    /**
+     * Gemeinsamer Ablauf für gestreamte und nicht gestreamte Allokationen:
+     * Cache-Lookup, dann Single-Flight über den Prompt-Hash. Nur der erste Aufrufer
+     * eines Prompts fragt Gemini ab; gleichzeitige Aufrufer warten auf dessen
+     * Ergebnis und erhalten Kopien der Kandidaten für ihr eigenes Requirement-Element.
+     * 
+     * @param request Die Eingaben der Allokation
+     * @param candidateConsumer Optionaler Empfänger für gestreamte Kandidaten (null = nicht streamen)
+     * @return Liste validierter Allokations-Kandidaten
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     */
+    private List<AllocationCandidate> allocateShared(
+            AllocationRequest request,
+            Consumer<AllocationCandidate> candidateConsumer
+    ) throws IOException, JsonSyntaxException {
+        AllocationCancellation cancellation = request.getCancellation();
+        cancellation.throwIfCancelled();
+        String cacheKey = computeCacheKey(request);
+        String cached = lookupCachedResponse(cacheKey);
+        if (cached != null) {
+            List<AllocationCandidate> validCandidates = processAIResponse(cached, request.getRequirementElement(),
+                request.getSubsystemNameToIdMap(), nameResolverFor(request));
+            if (candidateConsumer != null) validCandidates.forEach(candidateConsumer);
             return validCandidates;
+        }
 
-        } catch (JsonSyntaxException e) {
-            log("Fehler beim Parsen der KI-Antwort: " + e.getMessage() + "\nAI Response was: " + aiResponse);
-            return new ArrayList<>();
-        } catch (Exception e) {
-            log("Unerwarteter Fehler in processAIResponse: " + e.getMessage());
-            e.printStackTrace();
+        CompletableFuture<List<AllocationCandidate>> flight = new CompletableFuture<>();
+        CompletableFuture<List<AllocationCandidate>> leader = inFlightRequests.putIfAbsent(cacheKey, flight);
+        if (leader != null) {
+            // Identischer Prompt ist bereits unterwegs: an dessen Ergebnis anhängen
+            coalescedRequests.incrementAndGet();
+            log("Identische KI-Anfrage läuft bereits - Ergebnis wird geteilt.");
+            List<AllocationCandidate> shared;
+            try {
+                shared = awaitInFlight(leader, cancellation);
+            } catch (AllocationCancelledException e) {
+                // Der Abbruch einer fremden Anfrage betrifft diesen Aufrufer nicht
+                if (cancellation.isCancelled()) throw e;
+                return allocateShared(request, candidateConsumer);
+            }
+            List<AllocationCandidate> validCandidates = copyCandidates(shared, request.getRequirementElement());
+            if (candidateConsumer != null) validCandidates.forEach(candidateConsumer);
+            return validCandidates;
+        }
+
+        TokenUsageScope usage = TokenUsageScope.open();
+        TokenUsageScope.Binding binding = usage.bind();
+        try {
+            List<AllocationCandidate> validCandidates;
+            try {
+                validCandidates = candidateConsumer != null
+                    ? fetchStreaming(request, cacheKey, candidateConsumer)
+                    : AllocationEnsemble.isEnabled() ? fetchEnsemble(request, cacheKey) : fetchBlocking(request, cacheKey, 0);
+            } catch (GeminiCircuitOpenException e) {
+                if (!LOCAL_FALLBACK_ENABLED) throw e;
+                validCandidates = scoreLocally(request);
+                if (candidateConsumer != null) validCandidates.forEach(candidateConsumer);
+            }
+            // Nach einem Abbruch scheitert auch der geteilte Aufruf; Wartende fragen selbst erneut an
+            cancellation.throwIfCancelled();
+            // Unveränderliche Momentaufnahme, damit Dialoge die eigene Liste sortieren dürfen
+            flight.complete(List.copyOf(validCandidates));
+            return validCandidates;
+        } catch (IOException | RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            binding.close();
+            inFlightRequests.remove(cacheKey, flight);
+            if (usage.getUsage().getCalls() > 0) {
+                TokenUsageLedger.getInstance().recordRequirement(usageLabel(request), usage.getUsage());
+            }
+        }
+    }
+
+    /**
+     * Bezeichnung eines Requirements in der Token-Buchführung.
+     */
+    private static String usageLabel(AllocationRequest request) {
+        Element element = request.getRequirementElement();
+        if (element != null) return element.getHumanName() + " (" + element.getID() + ")";
+        String text = request.getRequirementText();
+        return text.length() <= 60 ? text : text.substring(0, 60) + "...";
+    }
+
+    /**
+     * Validiert deserialisierte Kandidaten gegen das Modell.
+     */
+    private List<AllocationCandidate> bindCandidates(
+            List<AllocationCandidate> candidates,
+            Element requirementElement,
+            java.util.Map<String, String> subsystemNameToIdMap,
+            UnaryOperator<String> nameResolver
+    ) {
+        // Validierung der KI-Antwort
+        if (candidates == null || candidates.isEmpty()) {
+            log("Keine gültigen Kandidaten aus der KI-Antwort erhalten!");
             return new ArrayList<>();
         }
+
+        // Filterung und Validierung der Kandidaten gegen das Modell
+        List<AllocationCandidate> validCandidates = new ArrayList<>();
+        for (AllocationCandidate candidate : candidates) {
+            if (bindCandidate(candidate, requirementElement, subsystemNameToIdMap, nameResolver)
+                    && !isDuplicate(candidate, validCandidates)) {
+                validCandidates.add(candidate);
+            }
+        }
+        return validCandidates;
+    }
+
+    /**
+     * Fragt Gemini ohne Streaming ab und speichert gültige Antworten im Cache.
+     * Im strukturierten Modus ist die Antwort schemakonformes JSON und wird ohne
+     * Bereinigung deserialisiert; Parse-Fehler werden gemeldet statt verschluckt.
+     * Mit aktivem {@link GeminiModelRouter} beginnt die Abfrage auf der angegebenen
+     * Modellstufe und wird bei unsicherem Ergebnis eskaliert.
+     */
+    private List<AllocationCandidate> fetchBlocking(AllocationRequest request, String cacheKey, int firstTier)
+            throws IOException, JsonSyntaxException {
+        GeminiModelRouter router = GeminiModelRouter.getInstance();
+        Map.Entry<String, List<AllocationCandidate>> answer = router.isEnabled()
+            ? router.route(firstTier, request.getPromptPlan().getEstimatedTokens(),
+                GeminiDeadline.expectedOutputTokens(1, request.getSubsystemNames().size()),
+                model -> callAndBind(request, model), Map.Entry::getValue)
+            : callAndBind(request, null);
+        List<AllocationCandidate> validCandidates = answer.getValue();
+        if (!validCandidates.isEmpty()) {
+            storeResponse(cacheKey, answer.getKey());
+        }
+        return validCandidates;
+    }
+
+    /**
+     * Fragt ein Gemini-Modell ab und validiert die Kandidaten.
+     *
+     * @param model Der Modellname oder null für das konfigurierte Modell
+     * @return Die rohe Antwort und die validierten Kandidaten
+     */
+    private Map.Entry<String, List<AllocationCandidate>> callAndBind(AllocationRequest request, String model)
+            throws IOException, JsonSyntaxException {
+        GeminiDeadline deadline = deadlineFor(request);
+        String aiResponse = GeminiContextCache.isEnabled() ? callWithContextCache(request, model, deadline) : null;
+        if (aiResponse == null) {
+            aiResponse = GeminiClient.callGeminiModel(model, request.getPrompt(), request.getApiKey(),
+                responseSchemaFor(request), request.getCancellation(), deadline);
+        }
+        return Map.entry(aiResponse, bindResponse(request, aiResponse));
+    }
+
+    /**
+     * Beginnt die Deadline eines Aufrufs für ein einzelnes Requirement: interaktiv oder,
+     * bei Stapelverarbeitung, mit den längeren Fristen des Modus BATCH.
+     */
+    private static GeminiDeadline deadlineFor(AllocationRequest request) {
+        return GeminiDeadline.start(request.isBatch() ? GeminiDeadline.Mode.BATCH : GeminiDeadline.Mode.INTERACTIVE,
+            GeminiDeadline.expectedOutputTokens(1, request.getSubsystemNames().size()));
+    }
+
+    /**
+     * Fragt Gemini mit dem statischen Teil (Anweisungen und Block-Katalog) als
+     * {@link GeminiContextCache} ab; je Aufruf wird nur das Requirement gesendet.
+     *
+     * @return Die Antwort oder null, wenn der vollständige Prompt gesendet werden muss
+     */
+    private static String callWithContextCache(AllocationRequest request, String model, GeminiDeadline deadline)
+            throws IOException {
+        PromptPlan plan = request.getPromptPlan();
+        PromptTemplate prefix = plan.isAliased() ? PromptTemplate.CACHED_PREFIX_ALIASED : PromptTemplate.CACHED_PREFIX;
+        return GeminiContextCache.generate(model, request.getApiKey(),
+            computeCatalogFingerprint(request.getSubsystemNameToIdMap()),
+            prefix.render("", plan.getSubsystemNames()),
+            PromptTemplate.CACHED_REQUIREMENT.render(request.getRequirementText(), List.of()),
+            responseSchemaFor(request), request.getCancellation(), deadline);
+    }
+
+    /**
+     * Deserialisiert eine nicht gestreamte Antwort und validiert die Kandidaten.
+     */
+    private List<AllocationCandidate> bindResponse(AllocationRequest request, String aiResponse) {
+        return STRUCTURED_OUTPUT_ENABLED
+            ? bindCandidates(AllocationCandidateCodec.readList(aiResponse),
+                request.getRequirementElement(), request.getSubsystemNameToIdMap(), nameResolverFor(request))
+            : processAIResponse(aiResponse, request.getRequirementElement(), request.getSubsystemNameToIdMap(),
+                nameResolverFor(request));
+    }
+
+    /**
+     * Fragt Gemini mit den parallelen Varianten des {@link AllocationEnsemble} ab: jede
+     * Variante mit eigener Temperatur und eigener Reihenfolge des Block-Katalogs, höchstens
+     * so viele, wie der {@link GeminiRateLimiter} sofort zulässt. Das zusammengeführte
+     * Ergebnis wird samt Streuung unter Modellnamen gecacht, aber nur, wenn alle
+     * konfigurierten Varianten erfolgreich waren.
+     */
+    private List<AllocationCandidate> fetchEnsemble(AllocationRequest request, String cacheKey)
+            throws IOException, JsonSyntaxException {
+        // Nur so viele Varianten, wie das Kontingent des API-Schlüssels sofort zulässt
+        int availableCalls = GeminiRateLimiter.forApiKey(request.getApiKey())
+            .availableCalls(GeminiRateLimiter.estimateTokens(request.getPrompt()));
+        // Varianten laufen auf eigenen Threads und buchen in den Bereich dieser Allokation
+        TokenUsageScope usage = TokenUsageScope.open();
+        AtomicInteger succeeded = new AtomicInteger();
+        List<AllocationCandidate> validCandidates = AllocationEnsemble.run((variant, temperature) -> {
+            TokenUsageScope.Binding binding = usage.bind();
+            try {
+                List<AllocationCandidate> candidates = fetchVariant(request, variant, temperature);
+                succeeded.incrementAndGet();
+                return candidates;
+            } finally {
+                binding.close();
+            }
+        }, availableCalls);
+        // Ein verkleinertes Ensemble ist nicht das Ergebnis, für das der Schlüssel steht
+        if (!validCandidates.isEmpty() && succeeded.get() >= AllocationEnsemble.getSize()) {
+            storeResponse(cacheKey, AllocationCandidateCodec.writeList(validCandidates));
+        }
+        return validCandidates;
+    }
+
+    /**
+     * Fragt eine Variante des {@link AllocationEnsemble} ab.
+     */
+    private List<AllocationCandidate> fetchVariant(AllocationRequest request, int variant, double temperature)
+            throws IOException, JsonSyntaxException {
+        AllocationRequest variantRequest = variant == 0 ? request
+            : createRequest(request.getRequirementElement(), request.getRequirementText(),
+                AllocationEnsemble.reorder(request.getSubsystemNames(), variant),
+                request.getSubsystemNameToIdMap(), request.getApiKey());
+        List<String> schema = responseSchemaFor(variantRequest);
+        GeminiRequestBody body = GeminiRequestBody.write(schema, temperature, variantRequest.getPrompt());
+        String aiResponse = GeminiClient.callGeminiModel(null, body, variantRequest.getPrompt(),
+            request.getApiKey(), TokenEstimator.estimateRequest(variantRequest.getPrompt(), schema),
+            request.getCancellation(), deadlineFor(request));
+        return bindResponse(variantRequest, aiResponse);
+    }
+
+    /**
+     * Fragt Gemini im Streaming-Modus ab, reicht jeden gültigen Kandidaten sofort
+     * weiter und speichert gültige Antworten im Cache.
+     */
+    private List<AllocationCandidate> fetchStreaming(
+            AllocationRequest request,
+            String cacheKey,
+            Consumer<AllocationCandidate> candidateConsumer
+    ) throws IOException, JsonSyntaxException {
+        List<AllocationCandidate> validCandidates = new ArrayList<>();
+        StreamingCandidateParser parser = new StreamingCandidateParser(candidate -> {
+            if (bindCandidate(candidate, request.getRequirementElement(), request.getSubsystemNameToIdMap(),
+                    nameResolverFor(request)) && !isDuplicate(candidate, validCandidates)) {
+                validCandidates.add(candidate);
+                candidateConsumer.accept(candidate);
+            }
+        });
+
+        String aiResponse = GeminiClient.streamGeminiAPI(request.getPrompt(), request.getApiKey(),
+            responseSchemaFor(request), parser::feed, request.getCancellation(), deadlineFor(request));
+        // Eine abgebrochene Antwort ist unvollständig und wird nicht gecacht
+        request.getCancellation().throwIfCancelled();
+
+        if (parser.getCandidateCount() == 0) {
+            log("Keine gültigen Kandidaten aus der KI-Antwort erhalten!");
+        }
+        if (!validCandidates.isEmpty()) {
+            storeResponse(cacheKey, aiResponse);
+        }
+        return validCandidates;
+    }
+
+    /**
+     * @return Block-Namen bzw. Aliase des Prompts für das Antwortschema oder null, wenn der strukturierte Modus aus ist
+     */
+    private static List<String> responseSchemaFor(AllocationRequest request) {
+        return STRUCTURED_OUTPUT_ENABLED ? request.getPromptPlan().getResponseNames() : null;
+    }
+
+    /**
+     * @return Übersetzung der Block-Namen bzw. Aliase des Prompts in Modellnamen
+     */
+    private static UnaryOperator<String> nameResolverFor(AllocationRequest request) {
+        return request.getPromptPlan()::resolveSubsystemName;
+    }
+
+    /**
+     * Ersatzbewertung bei offenem Circuit Breaker. Das Ergebnis wird nicht gecacht,
+     * damit nach der Störung wieder die KI-Bewertung greift.
+     */
+    private List<AllocationCandidate> scoreLocally(AllocationRequest request) {
+        log("Gemini nicht erreichbar - lokale Ersatzbewertung wird verwendet.");
+        List<AllocationCandidate> validCandidates = new ArrayList<>();
+        for (AllocationCandidate candidate : LocalFallbackScorer.score(
+                request.getRequirementText(), request.getSubsystemNames())) {
+            if (bindCandidate(candidate, request.getRequirementElement(), request.getSubsystemNameToIdMap(),
+                    UnaryOperator.identity())) {
+                validCandidates.add(candidate);
+            }
+        }
+        return validCandidates;
+    }
+
+    /**
+     * Wartet auf das Ergebnis einer laufenden identischen Anfrage.
+     * Fehler der führenden Anfrage werden an alle Wartenden weitergegeben; ein Abbruch
+     * des Wartenden beendet nur das Warten, nicht die führende Anfrage.
+     */
+    private static List<AllocationCandidate> awaitInFlight(CompletableFuture<List<AllocationCandidate>> flight,
+                                                           AllocationCancellation cancellation) throws IOException {
+        AllocationCancellation.Registration interrupt = cancellation.interruptOnCancel();
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            if (cancellation.isCancelled()) throw new AllocationCancelledException();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Warten auf geteilte KI-Anfrage unterbrochen");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Geteilte KI-Anfrage fehlgeschlagen: " + cause.getMessage(), cause);
+        } finally {
+            interrupt.close();
+        }
+    }
+
+    /**
+     * Kopiert geteilte Kandidaten für ein anderes Requirement-Element.
+     */
+    private static List<AllocationCandidate> copyCandidates(List<AllocationCandidate> shared, Element requirementElement) {
+        List<AllocationCandidate> copies = new ArrayList<>(shared.size());
+        for (AllocationCandidate candidate : shared) {
+            copies.add(candidate.copyForRequirement(requirementElement));
+        }
+        return copies;
+    }
+
+    /**
+     * @return true, wenn der Allokationspfad nach dem Öffnen eines Projekts aufgewärmt
+     *         werden soll (AI4MBSE_WARMUP)
+     */
+    public static boolean isWarmUpEnabled() {
+        return AllocationWarmUp.isEnabled();
+    }
+
+    /**
+     * Wärmt Verbindung, JSON-Adapter, Dialog-Klassen und den persistenten Cache im
+     * Hintergrund auf, damit die erste Allokation ohne Anlaufkosten läuft.
+     *
+     * @param executor Der Executor für das Aufwärmen
+     */
+    public void warmUpAsync(Executor executor) {
+        if (!AllocationWarmUp.isEnabled()) return;
+        executor.execute(() -> AllocationWarmUp.run(this::getPersistentCache));
+    }
+
+    /**
+     * @return Statistik des Antwort-Caches (Treffer, Fehlschläge, Belegung) sowie von Rate-Limiter, Wiederholungen, Circuit Breaker, Hedging, Kompression, Prompt-Vorlage, Token-Budget, Token-Schätzung, gepackten Prompts, Modell-Routing, Ensembles, Kontext-Caches, Aufwärmen, Abbrüchen, Deadlines und Namensauflösung, mit AI4MBSE_DEBUG_CAPTURE_BYTES zusätzlich der zuletzt gesendete Payload
+     */
+    public String getCacheStatistics() {
+        PersistentAllocationCache diskCache = getPersistentCache();
+        String lastPayload = GeminiRequestBody.getLastCapturedPayload();
+        return resultCache.getStatistics()
+            + "\nIn-flight coalescing: " + coalescedRequests.get() + " requests shared a running call"
+            + (diskCache != null ? "\n" + diskCache.getStatistics() : "")
+            + "\n" + GeminiRateLimiter.getAllStatistics()
+            + "\n" + GeminiRetryPolicy.getInstance().getStatistics()
+            + "\n" + GeminiCircuitBreaker.getInstance().getStatistics()
+            + "\n" + GeminiClient.hedgingPolicy.getStatistics()
+            + "\n" + GeminiCompression.getStatistics()
+            + "\n" + PromptTemplate.getAllStatistics()
+            + "\n" + PromptBudgetGovernor.getStatistics()
+            + "\n" + TokenEstimator.getStatistics()
+            + "\n" + RequirementPackingPlanner.getStatistics()
+            + "\n" + GeminiModelRouter.getInstance().getStatistics()
+            + "\n" + AllocationEnsemble.getStatistics()
+            + "\n" + GeminiContextCache.getStatistics()
+            + "\n" + AllocationWarmUp.getStatistics()
+            + "\n" + AllocationCancellation.getStatistics()
+            + "\n" + GeminiDeadline.getStatistics()
+            + "\n" + SubsystemNameResolver.getStatistics()
+            + (lastPayload != null ? "\nLast request payload: " + lastPayload : "");
+    }
+
+    /**
+     * Schließt den persistenten Cache und schreibt seinen Index auf die Platte.
+     * Wird beim Beenden des Plugins aufgerufen.
+     */
+    public void shutdown() {
+        synchronized (AIIntegrationService.class) {
+            if (persistentCache != null) {
+                persistentCache.close();
+                persistentCache = null;
+            }
+            persistentCacheUnavailable = true;
+        }
+        GeminiContextCache.shutdown();
+    }
+
+    /**
+     * Sucht eine gespeicherte KI-Antwort zuerst im Speicher, dann im persistenten
+     * Cache. Treffer aus dem persistenten Cache werden in den Speicher übernommen.
+     * 
+     * @param cacheKey Der Prompt-Hash
+     * @return Die rohe KI-Antwort oder null
+     */
+    private String lookupCachedResponse(String cacheKey) {
+        String cached = resultCache.get(cacheKey);
+        if (cached != null) {
+            log("KI-Antwort aus dem Cache verwendet. " + resultCache.getStatistics());
+            return cached;
+        }
+        PersistentAllocationCache diskCache = getPersistentCache();
+        if (diskCache != null) {
+            cached = diskCache.get(cacheKey);
+            if (cached != null) {
+                resultCache.put(cacheKey, cached);
+                log("KI-Antwort aus dem persistenten Cache verwendet. " + diskCache.getStatistics());
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Speichert eine gültige KI-Antwort im Speicher und im persistenten Cache.
+     * 
+     * @param cacheKey Der Prompt-Hash
+     * @param aiResponse Die rohe KI-Antwort
+     */
+    private void storeResponse(String cacheKey, String aiResponse) {
+        resultCache.put(cacheKey, aiResponse);
+        PersistentAllocationCache diskCache = getPersistentCache();
+        if (diskCache != null) {
+            try {
+                diskCache.put(cacheKey, aiResponse);
+            } catch (IOException e) {
+                log("WARNING: KI-Antwort konnte nicht im persistenten Cache gespeichert werden: " + e.getMessage());
+            }
+        }
     }
 
     /**
-     * Erstellt einen erweiterten Prompt für die KI-Analyse.
+     * Öffnet den persistenten Cache beim ersten Zugriff im Plugin-Verzeichnis
+     * neben model_structure.json.
+     * 
+     * @return Der persistente Cache oder null, wenn deaktiviert bzw. nicht verfügbar
+     */
+    private PersistentAllocationCache getPersistentCache() {
+        if (!PERSISTENT_CACHE_ENABLED) return null;
+        synchronized (AIIntegrationService.class) {
+            if (persistentCache == null && !persistentCacheUnavailable) {
+                try {
+                    java.nio.file.Path cacheDir = Paths.get(new ConfigurationService().getModelJsonPath())
+                        .resolveSibling("allocation_cache");
+                    persistentCache = new PersistentAllocationCache(cacheDir,
+                        ConfigurationService.getLongSetting("AI4MBSE_PERSISTENT_CACHE_MAX_BYTES", 64L * 1024 * 1024));
+                } catch (IOException | RuntimeException e) {
+                    persistentCacheUnavailable = true;
+                    log("WARNING: Persistenter Cache nicht verfügbar: " + e.getMessage());
+                }
+            }
+            return persistentCache;
+        }
+    }
+
+    /**
+     * Berechnet den Cache-Schlüssel einer Allokation aus Requirement-Text-Digest,
+     * Block-Katalog-Fingerprint, Modellname bzw. Modellstufen und Prompt-Version.
+     * 
+     * @param request Die Eingaben der Allokation
+     * @return Hex-kodierter SHA-256-Schlüssel
+     */
+    String computeCacheKey(AllocationRequest request) {
+        return sha256Hex(request.getPromptPlan().getVersion() + (STRUCTURED_OUTPUT_ENABLED ? "+schema" : "")
+            + (AllocationEnsemble.isEnabled() ? "+" + AllocationEnsemble.getDescriptor() : "")
+            + (GeminiContextCache.isEnabled() ? "+context" : "") + '\u0000'
+            + (GeminiModelRouter.getInstance().isEnabled()
+                ? GeminiModelRouter.getInstance().getDescriptor() : GeminiClient.getModelName()) + '\u0000'
+            + sha256Hex(request.getRequirementText()) + '\u0000'
+            + computeCatalogFingerprint(request.getSubsystemNameToIdMap()));
+    }
+
+    /**
+     * Berechnet einen reihenfolgeunabhängigen Fingerprint des Block-Katalogs.
+     * 
+     * @param subsystemNameToIdMap Zuordnung von Block-Namen zu IDs
+     * @return Hex-kodierter SHA-256-Fingerprint
+     */
+    static String computeCatalogFingerprint(Map<String, String> subsystemNameToIdMap) {
+        StringBuilder catalog = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(subsystemNameToIdMap).entrySet()) {
+            catalog.append(entry.getKey()).append('\u0000').append(entry.getValue()).append('\n');
+        }
+        return sha256Hex(catalog.toString());
+    }
+
+    /**
+     * Berechnet den SHA-256-Hash eines Texts als Hex-String.
+     */
+    static String sha256Hex(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    /**
+     * @return true, wenn KI-Vorschläge inkrementell gestreamt werden sollen
+     */
+    public boolean isStreamingEnabled() {
+        // Eskalation und Ensemble ersetzen bereits angezeigte Kandidaten - dann nicht streamen
+        return STREAMING_ENABLED && !GeminiModelRouter.getInstance().isEnabled() && !AllocationEnsemble.isEnabled();
+    }
+
+    /**
+     * Validiert einen Kandidaten gegen die Subsystem-Liste des Modells und
+     * verknüpft ihn mit Requirement und Subsystem-ID.
+     * 
+     * @param candidate Der von der KI gelieferte Kandidat
+     * @param requirementElement Das ausgewählte Requirement-Element
+     * @param subsystemNameToIdMap Zuordnung von Subsystem-Namen zu IDs
+     * @param nameResolver Übersetzt den Block-Namen der Antwort in den Modellnamen
+     * @return true, wenn das Subsystem im Modell gefunden wurde
+     */
+    private boolean bindCandidate(
+            AllocationCandidate candidate,
+            Element requirementElement,
+            java.util.Map<String, String> subsystemNameToIdMap,
+            UnaryOperator<String> nameResolver
+    ) {
+        String modelName = nameResolver.apply(candidate.getSubsystemName());
+        if (modelName != null && !modelName.equals(candidate.getSubsystemName())) {
+            candidate.setSubsystemName(modelName);
+        }
+        String subsystemId = subsystemNameToIdMap.get(candidate.getSubsystemName());
+        if (subsystemId == null && SubsystemNameResolver.isEnabled()) {
+            // Abweichende Schreibweisen lokal auflösen statt den Kandidaten zu verwerfen
+            String resolved = SubsystemNameResolver.forCatalog(subsystemNameToIdMap).resolve(candidate.getSubsystemName());
+            if (resolved != null) {
+                candidate.setSubsystemName(resolved);
+                subsystemId = subsystemNameToIdMap.get(resolved);
+            }
+        }
+        if (subsystemId == null) {
+            log("WARNING: Subsystem '" + candidate.getSubsystemName() + "' from AI response not found in model's subsystem list. Skipping.");
+            return false;
+        }
+        candidate.setRequirementElement(requirementElement);
+        candidate.setSubsystemId(subsystemId);
+        return true;
+    }
+
+    /**
+     * Prüft, ob bereits ein Kandidat für denselben Block übernommen wurde, z.B. wenn zwei
+     * Schreibweisen der Antwort auf denselben Modellnamen aufgelöst wurden. Der erste gewinnt.
+     *
+     * @param candidate Der gebundene Kandidat
+     * @param validCandidates Die bereits übernommenen Kandidaten
+     * @return true, wenn der Kandidat verworfen wird
+     */
+    private boolean isDuplicate(AllocationCandidate candidate, List<AllocationCandidate> validCandidates) {
+        for (AllocationCandidate accepted : validCandidates) {
+            if (accepted.getSubsystemId().equals(candidate.getSubsystemId())) {
+                log("WARNING: Subsystem '" + candidate.getSubsystemName() + "' appears more than once in AI response. Skipping duplicate.");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Erstellt einen erweiterten Prompt für die KI-Analyse aus der vorkompilierten
+     * {@link PromptTemplate#ADVANCED}-Vorlage.
      * 
      * KRITISCH: Arbeitet nur mit Block-stereotyped Subsystem-Namen!
      * Die Liste subsystemNames enthält ausschließlich Block-Elemente.
@@ -124,48 +918,27 @@ public class AIIntegrationService {
      * @return Der optimierte Prompt-String
      */
     public String buildAdvancedPrompt(String reqText, List<String> subsystemNames) {
-        StringBuilder subsystemListBuilder = new StringBuilder();       
-        for (String n : subsystemNames) {
-            subsystemListBuilder.append("- ").append(n).append("\n");
-        }
-
-        // Improved expert prompt using advanced prompting techniques for better accuracy
-        String prompt = "Hello Gemini,\n\n" +
-                        "Please act as an **expert Systems Engineer specializing in Model-Based Systems Engineering (MBSE)** with extensive experience in complex system architectures, particularly those modeled using tools like CATIA Magic / No Magic products (or similar SysML-compliant tools). Your analytical skills allow you to infer logical relationships even when they are not explicitly stated.\n\n" +
-                        "I will provide you with a requirement from a systems engineering project. Your primary task is to meticulously analyze this requirement and provide well-founded, actionable suggestions for requirement allocation to appropriate subsystems.\n\n" +
-                        "**CRITICAL INSTRUCTIONS – PLEASE ADHERE STRICTLY:**\n\n" +
-                        "1. **Single-Pass Task:** This is a **single-pass analysis**. You will not receive follow-up clarifications or opportunities for correction. It is paramount that your first response is as accurate, complete, and helpful as possible.\n" +
-                        "2. **Precision and Justification:** Every suggested allocation must be logically justified based *only* on the information present in the requirement description and subsystem names. Do not invent information or make assumptions beyond the data.\n" +
-                        "3. **Semantic Fit:** Only suggest allocations where subsystems semantically fit the requirement's intent and technical domain.\n" +
-                        "4. **Confidence Scoring:** Provide realistic confidence scores (0.0-1.0) based on how well each subsystem matches the requirement's purpose.\n\n" +
-                        "**Your Detailed Task:**\n\n" +
-                        "1. **Parse:** Thoroughly analyze the provided requirement description.\n" +
-                        "2. **Evaluate:** For each available subsystem, assess its suitability for implementing or satisfying the requirement.\n" +
-                        "3. **Score:** Assign realistic confidence scores where:\n" +
-                        "   - 0.9-1.0: Perfect semantic match, primary responsibility\n" +
-                        "   - 0.7-0.8: Strong match, likely implementation candidate\n" +
-                        "   - 0.4-0.6: Moderate match, supporting role possible\n" +
-                        "   - 0.1-0.3: Weak match, indirect contribution only\n" +
-                        "   - 0.0: No logical connection\n" +
-                        "4. **Justify:** Provide concise (1-2 sentences) justification explaining *why* each allocation is logical.\n\n" +
-                        "**Requirement to Analyze:**\n" +
-                        "\"" + reqText + "\"\n\n" +
-                        "**Available Subsystems:**\n" +
-                        subsystemListBuilder.toString() +
-                        "\n" +
-                        "**Output Format:** Provide your analysis as a JSON array of objects. Each object must have exactly three keys:\n" +
-                        "- 'subsystemName' (string, exact name from Available Subsystems list)\n" +
-                        "- 'score' (float, confidence value 0.0-1.0)\n" +
-                        "- 'justification' (string, concise reasoning for the score)\n\n" +
-                        "**Example JSON Structure:**\n" +
-                        "[\n" +
-                        "  { \"subsystemName\": \"Power Management System\", \"score\": 0.95, \"justification\": \"Direct responsibility for power-related requirements based on domain expertise.\" },\n" +
-                        "  { \"subsystemName\": \"Control System\", \"score\": 0.65, \"justification\": \"May interface with power systems for monitoring and control functions.\" },\n" +
-                        "  { \"subsystemName\": \"User Interface\", \"score\": 0.15, \"justification\": \"Minimal relevance, only potential status display capabilities.\" }\n" +
-                        "]\n\n" +
-                        "**IMPORTANT:** Return only valid JSON and nothing else. Ensure all subsystem names exactly match those provided in the Available Subsystems list.";
-
-        return prompt;
+        // Vorkompilierte Vorlage: nur der Requirement-Text wird je Aufruf eingefügt
+        return PromptTemplate.ADVANCED.render(reqText, subsystemNames);
+    }
+
+    /**
+     * Erstellt die Eingaben einer Allokation. Der Prompt wird aus der vorkompilierten
+     * Vorlage erstellt und vom {@link PromptBudgetGovernor} unter dem Token-Budget gehalten;
+     * im Alias-Modus benennt die KI Blöcke über Aliase statt über ihre Namen.
+     *
+     * @param requirementElement Das ausgewählte Requirement-Element
+     * @param reqText Der Text des Requirements
+     * @param subsystemNames Liste der verfügbaren Block-Subsystem-Namen (nur Block-Stereotyp!)
+     * @param subsystemNameToIdMap Zuordnung von Block-Namen zu IDs
+     * @param apiKey Der API-Schlüssel
+     * @return Die Eingaben der Allokation
+     */
+    public AllocationRequest createRequest(Element requirementElement, String reqText, List<String> subsystemNames,
+                                           Map<String, String> subsystemNameToIdMap, String apiKey) {
+        PromptPlan plan = PromptBudgetGovernor.plan(reqText, subsystemNames, STRUCTURED_OUTPUT_ENABLED,
+            SUBSYSTEM_ALIASES_ENABLED);
+        return new AllocationRequest(requirementElement, reqText, subsystemNames, subsystemNameToIdMap, plan, apiKey);
     }
 
     /**
@@ -183,6 +956,8 @@ public class AIIntegrationService {
 
     /**
      * Ruft die Gemini API auf - delegiert an GeminiClient.
+     * Alle Aufrufe teilen sich den langlebigen HTTP/2-Transport des GeminiClient,
+     * sodass parallele Allokationen eine bereits aufgebaute Verbindung wiederverwenden.
      * 
      * @param prompt Der Text-Prompt für die KI
      * @param apiKey Der API-Schlüssel für die Authentifizierung
@@ -203,81 +978,3 @@ public class AIIntegrationService {
         }
     }
 }
-
-/**
- * Client für die Kommunikation mit der Google Gemini API.
- */
-class GeminiClient {
-    /** Standard-URL für die Gemini API */
-    private static final String API_URL = System.getenv().getOrDefault("GEMINI_API_URL",
-        "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.5-flash:generateContent");
-    
-    /** Timeout für HTTP-Verbindungen in Millisekunden */
-    private static final int TIMEOUT = 60000;
-    
-    /** GSON-Instanz für JSON-Serialisierung */
-    private static final Gson gson = new Gson();
-
-    /** Speichert den letzten Request-Payload für Debugging-Zwecke */
-    public static String lastRequestPayload;
-
-    /**
-     * Führt einen API-Aufruf an Google Gemini durch.
-     * 
-     * @param prompt Der Text-Prompt für die KI
-     * @param apiKey Der API-Schlüssel für die Authentifizierung
-     * @return Die von der KI generierte Antwort als String
-     * @throws IOException Bei Netzwerk- oder API-Fehlern
-     * @throws JsonSyntaxException Bei fehlerhaften JSON-Antworten
-     */
-    public static String callGeminiAPI(String prompt, String apiKey) throws IOException, JsonSyntaxException {
-        HttpURLConnection conn = null;
-        try {
-            URL url = new URL(API_URL + "?key=" + apiKey);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-            conn.setConnectTimeout(TIMEOUT);
-            conn.setReadTimeout(TIMEOUT);
-
-            // Aufbau des korrekten Gemini API JSON-Payloads
-            JsonObject textPart = new JsonObject();
-            textPart.addProperty("text", prompt);
-            JsonArray partsArray = new JsonArray();
-            partsArray.add(textPart);
-            JsonObject content = new JsonObject();
-            content.add("parts", partsArray);
-            JsonArray contentsArray = new JsonArray();
-            contentsArray.add(content);
-            JsonObject req = new JsonObject();
-            req.add("contents", contentsArray);
-
-            // Serialisierung des Request-Payloads
-            lastRequestPayload = gson.toJson(req);
-
-            // HTTP-Request senden
-            conn.setDoOutput(true);
-            try (OutputStreamWriter w = new OutputStreamWriter(conn.getOutputStream(), StandardCharsets.UTF_8)) {
-                w.write(lastRequestPayload);
-            }
-
-            // Antwort lesen und verarbeiten
-            int code = conn.getResponseCode();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(
-                code < 400 ? conn.getInputStream() : conn.getErrorStream(), StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) sb.append(line);
-            if (code >= 400) throw new IOException("API Error: " + sb.toString());
-            
-            // JSON-Antwort parsen und Text extrahieren
-            JsonObject resp = JsonParser.parseString(sb.toString()).getAsJsonObject();
-            JsonArray cands = resp.getAsJsonArray("candidates");
-            return cands.get(0).getAsJsonObject()
-                .getAsJsonObject("content").getAsJsonArray("parts")
-                .get(0).getAsJsonObject().get("text").getAsString();
-        } finally {
-            if (conn != null) conn.disconnect();
-        }
-    }   
-}
\ No newline at end of file
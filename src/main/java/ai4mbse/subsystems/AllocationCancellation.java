@@ -0,0 +1,129 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.logging.LoggingService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Abbruch-Token einer Allokation, das von der Oberfläche bis zum HTTP-Transport
+ * durchgereicht wird.
+ *
+ * Solange der {@link GeminiClient} auf Kontingent, Antwort oder Antwortkörper wartet,
+ * hat er Aktionen registriert, die den wartenden Thread unterbrechen bzw. den
+ * Antwort-Stream schließen. {@link #cancel()} führt sie sofort aus: die laufende
+ * HTTP-Anfrage wird abgebrochen, die Verbindung freigegeben, und eine danach noch
+ * eintreffende Antwort wird ohne Parsen verworfen.
+ */
+public final class AllocationCancellation {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /**
+     * Eine registrierte Aktion; {@link #close()} meldet sie wieder ab.
+     */
+    interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /** Token für Aufrufe ohne Abbruchmöglichkeit */
+    static final AllocationCancellation NONE = new AllocationCancellation();
+
+    /** Statistik: abgebrochene Allokationen, dabei abgebrochene Wartezustände, verworfene Antworten */
+    private static long cancellations, abortedWaits, discardedResponses;
+
+    /** Bei Abbruch auszuführende Aktionen */
+    private final List<Runnable> actions = new ArrayList<>();
+
+    private boolean cancelled;
+
+    /**
+     * Bricht die Allokation ab. Registrierte Aktionen werden unter der Sperre des Tokens
+     * ausgeführt, damit nach {@link Registration#close()} keine Aktion mehr läuft.
+     * Weitere Aufrufe haben keine Wirkung.
+     */
+    public synchronized void cancel() {
+        if (cancelled || this == NONE) return;
+        cancelled = true;
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                logger.warning("Abbruch-Aktion fehlgeschlagen: " + e.getMessage(), "AllocationCancellation");
+            }
+        }
+        synchronized (AllocationCancellation.class) {
+            cancellations++;
+            abortedWaits += actions.size();
+        }
+        actions.clear();
+        logger.info("Allokation abgebrochen.", "AllocationCancellation");
+    }
+
+    /**
+     * @return true, wenn die Allokation abgebrochen wurde
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws AllocationCancelledException Wenn die Allokation abgebrochen wurde
+     */
+    void throwIfCancelled() throws AllocationCancelledException {
+        if (isCancelled()) throw new AllocationCancelledException();
+    }
+
+    /**
+     * Registriert eine Aktion für den Abbruch. Ist die Allokation bereits abgebrochen,
+     * wird die Aktion sofort ausgeführt.
+     *
+     * @param action Die Aktion, z.B. das Schließen eines Antwort-Streams
+     * @return Die Registrierung zum Abmelden
+     */
+    synchronized Registration onCancel(Runnable action) {
+        if (this == NONE) return () -> { };
+        if (cancelled) {
+            action.run();
+            return () -> { };
+        }
+        actions.add(action);
+        return () -> {
+            synchronized (this) {
+                actions.remove(action);
+            }
+        };
+    }
+
+    /**
+     * Unterbricht den aufrufenden Thread bei Abbruch, solange die Registrierung offen
+     * ist, z.B. während Rate-Limiter, Wiederholungspause oder Antwort abgewartet werden.
+     * Beim Abmelden einer abgebrochenen Allokation wird das gesetzte Interrupt-Flag
+     * wieder gelöscht, damit es nicht in spätere Aufgaben des Threads durchschlägt.
+     *
+     * @return Die Registrierung zum Abmelden
+     */
+    Registration interruptOnCancel() {
+        Registration registration = onCancel(Thread.currentThread()::interrupt);
+        return () -> {
+            registration.close();
+            if (isCancelled()) Thread.interrupted();
+        };
+    }
+
+    /**
+     * Erfasst eine nach dem Abbruch eingetroffene und ungelesen verworfene Antwort.
+     */
+    static synchronized void recordDiscardedResponse() {
+        discardedResponses++;
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über abgebrochene Allokationen
+     */
+    static synchronized String getStatistics() {
+        return String.format("Cancellation: %d allocations cancelled, %d waits aborted, %d late responses discarded",
+            cancellations, abortedWaits, discardedResponses);
+    }
+}
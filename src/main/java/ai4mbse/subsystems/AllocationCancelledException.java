@@ -0,0 +1,17 @@
+package ai4mbse.subsystems;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Wird geworfen, wenn eine Allokation über ihre {@link AllocationCancellation}
+ * abgebrochen wurde. Als {@link InterruptedIOException} wird sie weder wiederholt
+ * noch vom {@link GeminiCircuitBreaker} als Störung des Dienstes gezählt.
+ */
+public class AllocationCancelledException extends InterruptedIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    AllocationCancelledException() {
+        super("KI-Abfrage wurde abgebrochen.");
+    }
+}
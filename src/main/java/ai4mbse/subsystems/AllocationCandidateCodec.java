@@ -0,0 +1,138 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.model.AllocationCandidate;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deserialisierung von {@link AllocationCandidate}s über einen einmalig erzeugten
+ * {@link TypeAdapter}.
+ *
+ * Gson löst Typ und Felder des Kandidaten nur einmal auf; jede Antwort wird anschließend
+ * in einem Durchlauf direkt aus dem {@link JsonReader} gelesen, ohne Zwischenbaum und
+ * ohne erneute Reflection.
+ */
+final class AllocationCandidateCodec {
+
+    /** Vorkompilierter Adapter für einzelne Kandidaten */
+    private static final TypeAdapter<AllocationCandidate> ADAPTER = new Gson().getAdapter(AllocationCandidate.class);
+
+    private AllocationCandidateCodec() {
+    }
+
+    /**
+     * Liest ein JSON-Array von Kandidaten.
+     *
+     * @param json Der JSON-Text (leer oder "null" ergibt null)
+     * @return Die Kandidaten oder null
+     * @throws JsonSyntaxException Bei fehlerhaftem JSON
+     */
+    static List<AllocationCandidate> readList(String json) throws JsonSyntaxException {
+        if (json == null) return null;
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            if (reader.peek() == JsonToken.END_DOCUMENT) return null;
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            List<AllocationCandidate> candidates = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                candidates.add(ADAPTER.read(reader));
+            }
+            reader.endArray();
+            return candidates;
+        } catch (IllegalStateException | EOFException | MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Liest ein einzelnes Kandidaten-Objekt.
+     *
+     * @param json Der JSON-Text eines Objekts
+     * @return Der Kandidat oder null
+     * @throws JsonSyntaxException Bei fehlerhaftem JSON
+     */
+    static AllocationCandidate read(String json) throws JsonSyntaxException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            return ADAPTER.read(reader);
+        } catch (IllegalStateException | EOFException | MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Liest ein JSON-Objekt mit je einem Kandidaten-Array pro Schlüssel, z.B. die Antwort
+     * auf einen Prompt mit mehreren Requirements.
+     *
+     * @param json Der JSON-Text
+     * @return Die Kandidaten je Schlüssel in Antwortreihenfolge; null-Werte ergeben leere Listen
+     * @throws JsonSyntaxException Bei fehlerhaftem JSON
+     */
+    static Map<String, List<AllocationCandidate>> readKeyedLists(String json) throws JsonSyntaxException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            Map<String, List<AllocationCandidate>> lists = new LinkedHashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName().trim();
+                List<AllocationCandidate> candidates = new ArrayList<>();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                } else {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        candidates.add(ADAPTER.read(reader));
+                    }
+                    reader.endArray();
+                }
+                lists.put(key, candidates);
+            }
+            reader.endObject();
+            return lists;
+        } catch (IllegalStateException | EOFException | MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Schreibt Kandidaten als JSON-Array, wie es {@link #readList(String)} liest.
+     *
+     * @param candidates Die Kandidaten
+     * @return Der JSON-Text
+     */
+    static String writeList(List<AllocationCandidate> candidates) {
+        StringWriter json = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(json)) {
+            writer.beginArray();
+            for (AllocationCandidate candidate : candidates) {
+                ADAPTER.write(writer, candidate);
+            }
+            writer.endArray();
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return json.toString();
+    }
+}
@@ -0,0 +1,313 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+import ai4mbse.model.AllocationCandidate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Self-Consistency-Ensemble für Allokationen.
+ *
+ * Statt einer einzelnen, verrauschten Bewertung werden K Varianten einer Anfrage parallel
+ * gesendet, jede mit eigener Sampling-Temperatur und eigener Reihenfolge des
+ * Block-Katalogs. Die Konfidenzen je Subsystem werden per Mittelwert, Median oder
+ * getrimmtem Mittelwert zusammengeführt; ein Subsystem, das eine Variante nicht nennt,
+ * zählt dort mit 0. Die Standardabweichung über die Varianten wird als Streuung am
+ * Kandidaten vermerkt, sofern mindestens zwei Varianten erfolgreich waren. Da die Varianten gleichzeitig laufen, bleibt die Wartezeit nahe
+ * an der eines einzelnen Aufrufs.
+ *
+ * Alle Varianten teilen sich das Kontingent des {@link GeminiRateLimiter}. Reicht es nicht
+ * für alle, laufen nur so viele Varianten, wie sofort zugelassen würden; ohne Spielraum
+ * läuft nur die unveränderte Anfrage.
+ */
+final class AllocationEnsemble {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /**
+     * Verfahren zum Zusammenführen der Konfidenzen.
+     */
+    enum Aggregation {
+        MEAN, MEDIAN, TRIMMED_MEAN
+    }
+
+    /**
+     * Eine Variante der Anfrage.
+     */
+    @FunctionalInterface
+    interface VariantCall {
+        /**
+         * @param variant Nummer der Variante (0 = unveränderte Anfrage)
+         * @param temperature Sampling-Temperatur der Variante
+         * @return Die validierten Kandidaten der Variante
+         */
+        List<AllocationCandidate> call(int variant, double temperature) throws IOException;
+    }
+
+    /** Anzahl der Varianten je Allokation (1 = kein Ensemble) */
+    private static final int ENSEMBLE_SIZE = (int) Math.max(1, ConfigurationService.getLongSetting("AI4MBSE_ENSEMBLE_SIZE", 1));
+
+    /** Verfahren zum Zusammenführen der Konfidenzen */
+    private static final Aggregation AGGREGATION = parseAggregation(
+        ConfigurationService.getSetting("AI4MBSE_ENSEMBLE_AGGREGATION", "median"));
+
+    /** Temperaturbereich der Varianten */
+    private static final double MIN_TEMPERATURE = 0.2, MAX_TEMPERATURE = 1.0;
+
+    /** Anteil der Werte, der beim getrimmten Mittelwert an jedem Ende verworfen wird */
+    private static final double TRIM_RATIO = 0.2;
+
+    /** Threads für die parallelen Varianten */
+    private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "AI4MBSE-Ensemble");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Statistik: Ensembles, Varianten, fehlgeschlagene Varianten, wegen Kontingent verkleinerte Ensembles */
+    private static long ensembles, variants, failedVariants, reducedEnsembles;
+
+    /** Statistik: summierte Wartezeit der Ensembles und summierte Latenz der Varianten */
+    private static long wallMillis, variantMillis;
+
+    /** Statistik: summierte Streuung und Anzahl der bewerteten Kandidaten */
+    private static double dispersionSum;
+    private static long dispersionCount;
+
+    private AllocationEnsemble() {
+    }
+
+    /**
+     * @return true, wenn Allokationen als Ensemble mehrerer Varianten laufen
+     */
+    static boolean isEnabled() {
+        return ENSEMBLE_SIZE > 1;
+    }
+
+    /**
+     * @return Größe und Verfahren für den Cache-Schlüssel
+     */
+    static String getDescriptor() {
+        return "ensemble" + ENSEMBLE_SIZE + "-" + AGGREGATION.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return Konfigurierte Anzahl der Varianten je Allokation
+     */
+    static int getSize() {
+        return ENSEMBLE_SIZE;
+    }
+
+    /**
+     * Liefert die Reihenfolge des Block-Katalogs einer Variante: Variante 0 behält die
+     * Reihenfolge, die übrigen beginnen an einer gleichmäßig versetzten Position.
+     *
+     * @param subsystemNames Die Block-Namen
+     * @param variant Nummer der Variante
+     * @return Die Block-Namen in der Reihenfolge der Variante
+     */
+    static List<String> reorder(List<String> subsystemNames, int variant) {
+        int size = subsystemNames.size();
+        int offset = size == 0 ? 0 : (int) ((long) variant * size / ENSEMBLE_SIZE);
+        if (offset == 0) return subsystemNames;
+        List<String> reordered = new ArrayList<>(size);
+        reordered.addAll(subsystemNames.subList(offset, size));
+        reordered.addAll(subsystemNames.subList(0, offset));
+        return reordered;
+    }
+
+    /**
+     * Führt alle Varianten parallel aus und führt ihre Kandidaten zusammen. Scheitern
+     * einzelne Varianten, wird über die übrigen zusammengeführt; scheitern alle, wird
+     * der erste Fehler weitergegeben.
+     *
+     * @param call Der Aufruf einer Variante
+     * @param availableCalls Sofort mögliche Aufrufe laut {@link GeminiRateLimiter#availableCalls(long)};
+     *                       begrenzt die Anzahl der Varianten (mindestens eine)
+     * @return Die zusammengeführten Kandidaten, nach Konfidenz absteigend
+     * @throws IOException Wenn keine Variante erfolgreich war
+     */
+    static List<AllocationCandidate> run(VariantCall call, int availableCalls) throws IOException {
+        int size = Math.max(1, Math.min(ENSEMBLE_SIZE, availableCalls));
+        if (size < ENSEMBLE_SIZE) {
+            synchronized (AllocationEnsemble.class) {
+                reducedEnsembles++;
+            }
+            logger.info("Kontingent reicht nur für " + size + " von " + ENSEMBLE_SIZE + " Ensemble-Varianten.", "AllocationEnsemble");
+        }
+        long start = System.nanoTime();
+        List<Future<List<AllocationCandidate>>> futures = new ArrayList<>(size);
+        long[] latencies = new long[size];
+        for (int i = 0; i < size; i++) {
+            int variant = i;
+            futures.add(executor.submit(() -> {
+                long variantStart = System.nanoTime();
+                try {
+                    return call.call(variant, temperature(variant));
+                } finally {
+                    latencies[variant] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - variantStart);
+                }
+            }));
+        }
+
+        List<List<AllocationCandidate>> runs = new ArrayList<>(size);
+        Exception firstFailure = null;
+        try {
+            for (Future<List<AllocationCandidate>> future : futures) {
+                try {
+                    runs.add(future.get());
+                } catch (ExecutionException e) {
+                    if (firstFailure == null) firstFailure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ensemble-Allokation unterbrochen");
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        synchronized (AllocationEnsemble.class) {
+            ensembles++;
+            variants += size;
+            failedVariants += size - runs.size();
+            wallMillis += elapsed;
+            for (long latency : latencies) variantMillis += latency;
+        }
+        if (runs.isEmpty()) {
+            if (firstFailure instanceof IOException) throw (IOException) firstFailure;
+            if (firstFailure instanceof RuntimeException) throw (RuntimeException) firstFailure;
+            throw new IOException("Ensemble-Allokation fehlgeschlagen: " + firstFailure.getMessage(), firstFailure);
+        }
+        if (firstFailure != null) {
+            logger.warning("" + (size - runs.size()) + " von " + size
+                + " Ensemble-Varianten fehlgeschlagen (" + firstFailure.getMessage() + ") - Zusammenführung der übrigen.", "AllocationEnsemble");
+        }
+        List<AllocationCandidate> aggregated = aggregate(runs);
+        logger.info("Ensemble aus " + runs.size() + " Varianten (" + AGGREGATION + ") in " + elapsed + " ms zusammengeführt.", "AllocationEnsemble");
+        return aggregated;
+    }
+
+    /**
+     * Führt die Kandidaten der Varianten je Subsystem zusammen. Begründung und
+     * Subsystem-ID stammen von der Variante, deren Konfidenz dem Ergebnis am nächsten liegt.
+     */
+    static List<AllocationCandidate> aggregate(List<List<AllocationCandidate>> runs) {
+        Map<String, AllocationCandidate[]> bySubsystem = new LinkedHashMap<>();
+        for (int run = 0; run < runs.size(); run++) {
+            for (AllocationCandidate candidate : runs.get(run)) {
+                AllocationCandidate[] perRun = bySubsystem.computeIfAbsent(candidate.getSubsystemName(),
+                    name -> new AllocationCandidate[runs.size()]);
+                if (perRun[run] == null || candidate.getConfidence() > perRun[run].getConfidence()) {
+                    perRun[run] = candidate;
+                }
+            }
+        }
+
+        List<AllocationCandidate> aggregated = new ArrayList<>(bySubsystem.size());
+        double dispersions = 0;
+        int dispersed = 0;
+        for (AllocationCandidate[] perRun : bySubsystem.values()) {
+            double[] scores = new double[perRun.length];
+            for (int run = 0; run < perRun.length; run++) {
+                scores[run] = perRun[run] != null ? perRun[run].getConfidence() : 0.0;
+            }
+            double score = aggregate(scores);
+            if (score <= 0) continue;
+            AllocationCandidate representative = null;
+            for (AllocationCandidate candidate : perRun) {
+                if (candidate != null && (representative == null
+                        || Math.abs(candidate.getConfidence() - score) < Math.abs(representative.getConfidence() - score))) {
+                    representative = candidate;
+                }
+            }
+            representative.setConfidence(score);
+            aggregated.add(representative);
+            // Eine einzelne Variante sagt nichts über die Stabilität aus
+            if (runs.size() < 2) continue;
+            double dispersion = standardDeviation(scores);
+            representative.setScoreDispersion(dispersion);
+            dispersions += dispersion;
+            dispersed++;
+        }
+        aggregated.sort((a, b) -> Double.compare(b.getConfidence(), a.getConfidence()));
+
+        synchronized (AllocationEnsemble.class) {
+            dispersionSum += dispersions;
+            dispersionCount += dispersed;
+        }
+        return aggregated;
+    }
+
+    /**
+     * Sampling-Temperatur einer Variante, gleichmäßig über den Temperaturbereich verteilt.
+     */
+    private static double temperature(int variant) {
+        return MIN_TEMPERATURE + (MAX_TEMPERATURE - MIN_TEMPERATURE) * variant / (ENSEMBLE_SIZE - 1);
+    }
+
+    /**
+     * Führt Konfidenzen nach dem konfigurierten Verfahren zusammen.
+     */
+    private static double aggregate(double[] scores) {
+        double[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        switch (AGGREGATION) {
+            case MEDIAN:
+                return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+            case TRIMMED_MEAN:
+                int trim = n >= 3 ? Math.max(1, (int) (n * TRIM_RATIO)) : 0;
+                return mean(sorted, trim, n - trim);
+            default:
+                return mean(sorted, 0, n);
+        }
+    }
+
+    private static double mean(double[] values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) sum += values[i];
+        return sum / (to - from);
+    }
+
+    private static double standardDeviation(double[] values) {
+        double mean = mean(values, 0, values.length);
+        double squares = 0;
+        for (double value : values) squares += (value - mean) * (value - mean);
+        return Math.sqrt(squares / values.length);
+    }
+
+    private static Aggregation parseAggregation(String value) {
+        String normalized = value.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+        if (normalized.equals("TRIMMED")) return Aggregation.TRIMMED_MEAN;
+        try {
+            return Aggregation.valueOf(normalized);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Unbekanntes Verfahren AI4MBSE_ENSEMBLE_AGGREGATION='" + value + "' - Median wird verwendet.", "AllocationEnsemble");
+            return Aggregation.MEDIAN;
+        }
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über Ensembles, Streuung und Parallelität
+     */
+    static synchronized String getStatistics() {
+        return String.format("Ensemble %s (%d variants, %s): %d ensembles (%d reduced by quota), %d variant calls, %d failed, mean dispersion %.3f, avg %d ms wall vs %d ms per variant",
+            isEnabled() ? "on" : "off", ENSEMBLE_SIZE, AGGREGATION, ensembles, reducedEnsembles, variants, failedVariants,
+            dispersionCount == 0 ? 0.0 : dispersionSum / dispersionCount,
+            ensembles == 0 ? 0 : wallMillis / ensembles, variants == 0 ? 0 : variantMillis / variants);
+    }
+}
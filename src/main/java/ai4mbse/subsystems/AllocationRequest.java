@@ -0,0 +1,151 @@
+package ai4mbse.subsystems;
+
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bündelt alle Eingaben einer KI-Allokation für ein einzelnes Requirement.
+ *
+ * KRITISCH: Die Subsystem-Liste enthält ausschließlich Block-stereotyped Elemente,
+ * wie sie in Main.collectBlocksFromPackage() gesammelt werden.
+ */
+public class AllocationRequest {
+
+    /** Das ausgewählte Requirement-Element */
+    private final Element requirementElement;
+
+    /** Der aus dem Requirement extrahierte Text */
+    private final String requirementText;
+
+    /** Namen der verfügbaren Block-Subsysteme */
+    private final List<String> subsystemNames;
+
+    /** Zuordnung von Block-Namen zu deren MagicDraw-IDs */
+    private final Map<String, String> subsystemNameToIdMap;
+
+    /** Der fertige KI-Prompt samt Block-Katalog, wie er im Prompt steht */
+    private final PromptPlan plan;
+
+    /** Der API-Schlüssel für die Authentifizierung */
+    private final String apiKey;
+
+    /** Abbruch-Token, über das die Oberfläche die Allokation beenden kann */
+    private final AllocationCancellation cancellation;
+
+    /** Gehört die Anfrage zu einer Stapelverarbeitung (längere Fristen als interaktiv) */
+    private final boolean batch;
+
+    /**
+     * @param requirementElement Das ausgewählte Requirement-Element
+     * @param requirementText Der extrahierte Requirement-Text
+     * @param subsystemNames Namen der verfügbaren Block-Subsysteme
+     * @param subsystemNameToIdMap Zuordnung von Block-Namen zu IDs
+     * @param plan Der vorbereitete Prompt
+     * @param apiKey Der API-Schlüssel
+     */
+    AllocationRequest(Element requirementElement, String requirementText, List<String> subsystemNames,
+                      Map<String, String> subsystemNameToIdMap, PromptPlan plan, String apiKey) {
+        this(requirementElement, requirementText, subsystemNames, subsystemNameToIdMap, plan, apiKey,
+            AllocationCancellation.NONE, false);
+    }
+
+    private AllocationRequest(Element requirementElement, String requirementText, List<String> subsystemNames,
+                              Map<String, String> subsystemNameToIdMap, PromptPlan plan, String apiKey,
+                              AllocationCancellation cancellation, boolean batch) {
+        this.requirementElement = requirementElement;
+        this.requirementText = requirementText;
+        this.subsystemNames = subsystemNames;
+        this.subsystemNameToIdMap = subsystemNameToIdMap;
+        this.plan = plan;
+        this.apiKey = apiKey;
+        this.cancellation = cancellation;
+        this.batch = batch;
+    }
+
+    /**
+     * Liefert dieselbe Anfrage mit einem Abbruch-Token.
+     *
+     * @param cancellation Das Abbruch-Token der Oberfläche
+     * @return Die abbrechbare Anfrage
+     */
+    public AllocationRequest withCancellation(AllocationCancellation cancellation) {
+        return new AllocationRequest(requirementElement, requirementText, subsystemNames, subsystemNameToIdMap,
+            plan, apiKey, cancellation, batch);
+    }
+
+    /**
+     * Liefert dieselbe Anfrage als Teil einer Stapelverarbeitung, für die die längeren
+     * Fristen des Modus BATCH gelten (AI4MBSE_DEADLINE_BATCH_MAX_MS und _TOTAL_MS).
+     *
+     * @return Die Anfrage mit Stapel-Fristen
+     */
+    public AllocationRequest asBatch() {
+        return batch ? this : new AllocationRequest(requirementElement, requirementText, subsystemNames,
+            subsystemNameToIdMap, plan, apiKey, cancellation, true);
+    }
+
+    /**
+     * @return Das ausgewählte Requirement-Element
+     */
+    public Element getRequirementElement() {
+        return requirementElement;
+    }
+
+    /**
+     * @return Der extrahierte Requirement-Text
+     */
+    public String getRequirementText() {
+        return requirementText;
+    }
+
+    /**
+     * @return Namen der verfügbaren Block-Subsysteme
+     */
+    public List<String> getSubsystemNames() {
+        return subsystemNames;
+    }
+
+    /**
+     * @return Zuordnung von Block-Namen zu IDs
+     */
+    public Map<String, String> getSubsystemNameToIdMap() {
+        return subsystemNameToIdMap;
+    }
+
+    /**
+     * @return Der fertige KI-Prompt
+     */
+    public String getPrompt() {
+        return plan.getPrompt();
+    }
+
+    /**
+     * @return Der vorbereitete Prompt mit Block-Katalog und Version
+     */
+    PromptPlan getPromptPlan() {
+        return plan;
+    }
+
+    /**
+     * @return Der API-Schlüssel
+     */
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    /**
+     * @return Das Abbruch-Token der Allokation
+     */
+    public AllocationCancellation getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * @return true, wenn die Anfrage zu einer Stapelverarbeitung gehört
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+}
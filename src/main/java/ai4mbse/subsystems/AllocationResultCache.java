@@ -0,0 +1,108 @@
+package ai4mbse.subsystems;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Begrenzter In-Memory-Cache für rohe KI-Antworten.
+ *
+ * Schlüssel ist der Prompt-Hash aus Requirement-Text, Block-Katalog, Modellname und
+ * Prompt-Version. Gespeichert wird der rohe Antworttext, damit jeder Treffer für das
+ * jeweils aktuelle Requirement-Element neu validiert werden kann. Die Verdrängung
+ * erfolgt nach LRU, begrenzt durch Eintragsanzahl und geschätzte Größe in Bytes.
+ */
+class AllocationResultCache {
+
+    /** Maximale Anzahl an Einträgen */
+    private final int maxEntries;
+
+    /** Maximale geschätzte Gesamtgröße aller Antworten in Bytes */
+    private final long maxBytes;
+
+    /** LRU-geordnete Einträge (Zugriffsreihenfolge) */
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Aktuelle geschätzte Gesamtgröße in Bytes */
+    private long currentBytes;
+
+    /** Zähler für Cache-Treffer */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Zähler für Cache-Fehlschläge */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Zähler für verdrängte Einträge */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries Maximale Anzahl an Einträgen
+     * @param maxBytes Maximale geschätzte Gesamtgröße in Bytes
+     */
+    AllocationResultCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Sucht eine gespeicherte Antwort und zählt Treffer bzw. Fehlschlag.
+     *
+     * @param key Der Prompt-Hash
+     * @return Die rohe KI-Antwort oder null
+     */
+    synchronized String get(String key) {
+        String response = entries.get(key);
+        if (response != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return response;
+    }
+
+    /**
+     * Speichert eine Antwort und verdrängt bei Bedarf die am längsten ungenutzten Einträge.
+     * Antworten, die allein das Größenlimit überschreiten, werden nicht gespeichert.
+     *
+     * @param key Der Prompt-Hash
+     * @param response Die rohe KI-Antwort
+     */
+    synchronized void put(String key, String response) {
+        long size = sizeOf(response);
+        if (maxEntries <= 0 || size > maxBytes) {
+            return;
+        }
+        String previous = entries.put(key, response);
+        if (previous != null) {
+            currentBytes -= sizeOf(previous);
+        }
+        currentBytes += size;
+
+        Iterator<Map.Entry<String, String>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || currentBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, String> eldest = it.next();
+            currentBytes -= sizeOf(eldest.getValue());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht mit Treffern, Fehlschlägen und Belegung
+     */
+    synchronized String getStatistics() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return String.format("Allocation cache: %d hits, %d misses (%.0f %% hit rate), %d evictions, %d/%d entries, %d/%d bytes",
+            h, misses.get(), total == 0 ? 0.0 : 100.0 * h / total, evictions.get(),
+            entries.size(), maxEntries, currentBytes, maxBytes);
+    }
+
+    /**
+     * Schätzt den Speicherbedarf einer Antwort (UTF-16, 2 Bytes pro Zeichen).
+     */
+    private static long sizeOf(String response) {
+        return 2L * response.length();
+    }
+}
@@ -0,0 +1,154 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Optionales Aufwärmen des Allokationspfads nach dem Öffnen eines Projekts.
+ *
+ * Die erste Allokation nach dem Start von MagicDraw zahlt sonst Klassenladen,
+ * DNS-Auflösung und TLS-Handshake. Im Hintergrund werden daher der API-Host aufgelöst,
+ * die Verbindung samt TLS-Sitzung zum Pool des {@link GeminiClient} aufgebaut, die
+ * JSON-Adapter einmal durchlaufen und die Swing-Klassen des Allokationsdialogs geladen.
+ * Fehler beim Aufwärmen werden nur protokolliert.
+ */
+final class AllocationWarmUp {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /** Aktiviert das Aufwärmen nach dem Öffnen eines Projekts */
+    private static final boolean WARMUP_ENABLED = ConfigurationService.getBooleanSetting("AI4MBSE_WARMUP", false);
+
+    /** Klassen des Allokationspfads, die vorab geladen und initialisiert werden */
+    private static final List<String> PRELOAD_CLASSES = List.of(
+        "ai4mbse.ui.AllocationDialog",
+        "ai4mbse.subsystems.AllocationRequest",
+        "ai4mbse.subsystems.PromptPlan",
+        "ai4mbse.subsystems.PromptBudgetGovernor",
+        "ai4mbse.subsystems.GeminiRateLimiter",
+        "ai4mbse.subsystems.GeminiRetryPolicy",
+        "ai4mbse.subsystems.GeminiCircuitBreaker",
+        "ai4mbse.subsystems.GeminiDeadline",
+        "ai4mbse.subsystems.GeminiHedgingPolicy",
+        "ai4mbse.subsystems.StreamingCandidateParser",
+        "ai4mbse.subsystems.GeminiRequestBody",
+        "ai4mbse.subsystems.GeminiCompression",
+        "ai4mbse.subsystems.PromptTemplate",
+        "ai4mbse.subsystems.TokenEstimator",
+        "javax.swing.JDialog",
+        "javax.swing.JTable",
+        "javax.swing.JScrollPane",
+        "javax.swing.JOptionPane",
+        "javax.swing.JProgressBar",
+        "javax.swing.table.DefaultTableModel",
+        "javax.swing.table.DefaultTableCellRenderer",
+        "java.util.zip.GZIPOutputStream",
+        "java.util.zip.GZIPInputStream");
+
+    /** Läuft gerade ein Aufwärmen */
+    private static final AtomicBoolean running = new AtomicBoolean();
+
+    /** Klassen und Adapter werden nur beim ersten Aufwärmen geladen */
+    private static boolean classesLoaded;
+
+    /** Statistik: Läufe, fehlgeschlagene Verbindungsaufbauten */
+    private static long runs, connectionFailures;
+
+    /** Statistik: Dauer der Schritte des letzten Laufs in Millisekunden */
+    private static long dnsMillis, connectMillis, jsonMillis, classMillis;
+
+    private AllocationWarmUp() {
+    }
+
+    /**
+     * @return true, wenn das Aufwärmen aktiviert ist
+     */
+    static boolean isEnabled() {
+        return WARMUP_ENABLED;
+    }
+
+    /**
+     * Wärmt den Allokationspfad auf. Läuft bereits ein Aufwärmen, kehrt der Aufruf
+     * sofort zurück. Verbindung und DNS werden bei jedem Projekt erneut aufgewärmt,
+     * da gepoolte Verbindungen inzwischen geschlossen sein können.
+     *
+     * @param extraStep Zusätzlicher Schritt des Aufrufers, z.B. das Öffnen des Platten-Caches
+     */
+    static void run(Runnable extraStep) {
+        if (!running.compareAndSet(false, true)) return;
+        try {
+            long start = System.nanoTime();
+            long dns = 0, connect = 0, json = 0, classes = 0;
+            boolean connected = true;
+
+            long step = System.nanoTime();
+            String host = URI.create(GeminiClient.modelUrl(null)).getHost();
+            try {
+                if (host != null) InetAddress.getAllByName(host);
+                dns = elapsedMillis(step);
+                step = System.nanoTime();
+                int status = GeminiClient.warmUpConnection();
+                connect = elapsedMillis(step);
+                logger.info("Verbindung zu " + host + " aufgewärmt (HTTP " + status + ", DNS " + dns + " ms, Verbindung "
+                    + connect + " ms).", "AllocationWarmUp");
+            } catch (IOException e) {
+                connected = false;
+                logger.warning("Aufwärmen der Verbindung zu " + host + " fehlgeschlagen: " + e.getMessage(), "AllocationWarmUp");
+            }
+
+            if (!classesLoaded) {
+                step = System.nanoTime();
+                AllocationCandidateCodec.writeList(AllocationCandidateCodec.readList(
+                    "[{\"subsystemName\":\"A\",\"score\":0.5,\"justification\":\"\"}]"));
+                AllocationCandidateCodec.readKeyedLists("{\"R1\":[]}");
+                json = elapsedMillis(step);
+
+                step = System.nanoTime();
+                ClassLoader loader = AllocationWarmUp.class.getClassLoader();
+                for (String className : PRELOAD_CLASSES) {
+                    try {
+                        Class.forName(className, true, loader);
+                    } catch (ClassNotFoundException | LinkageError e) {
+                        logger.warning("Klasse " + className + " konnte nicht vorab geladen werden: " + e, "AllocationWarmUp");
+                    }
+                }
+                if (extraStep != null) extraStep.run();
+                classes = elapsedMillis(step);
+                classesLoaded = true;
+            }
+
+            synchronized (AllocationWarmUp.class) {
+                runs++;
+                if (!connected) connectionFailures++;
+                dnsMillis = dns;
+                connectMillis = connect;
+                jsonMillis = json;
+                classMillis = classes;
+            }
+            logger.info("Allokationspfad in " + elapsedMillis(start) + " ms aufgewärmt.", "AllocationWarmUp");
+        } catch (RuntimeException e) {
+            logger.warning("Aufwärmen fehlgeschlagen: " + e.getMessage(), "AllocationWarmUp");
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über die Aufwärmläufe
+     */
+    static synchronized String getStatistics() {
+        return String.format("Warm-up %s: %d runs, %d connection failures, last run DNS %d ms, connection %d ms, JSON %d ms, classes %d ms",
+            isEnabled() ? "on" : "off", runs, connectionFailures, dnsMillis, connectMillis, jsonMillis, classMillis);
+    }
+}
@@ -0,0 +1,33 @@
+package ai4mbse.subsystems;
+
+import java.io.IOException;
+
+/**
+ * Fehlerantwort der Gemini API mit HTTP-Statuscode.
+ *
+ * Die Meldung behält das bisherige Format "API Error: ..." bei; der Statuscode
+ * erlaubt der {@link GeminiRetryPolicy}, Server- und Client-Fehler zu unterscheiden.
+ */
+class GeminiApiException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** HTTP-Statuscode der Fehlerantwort */
+    private final int statusCode;
+
+    /**
+     * @param statusCode HTTP-Statuscode der Antwort
+     * @param body Der Antwortkörper
+     */
+    GeminiApiException(int statusCode, String body) {
+        super("API Error: " + body);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return HTTP-Statuscode der Fehlerantwort
+     */
+    int getStatusCode() {
+        return statusCode;
+    }
+}
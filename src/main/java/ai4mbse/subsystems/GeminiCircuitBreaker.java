@@ -0,0 +1,241 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit Breaker für den Gemini-Transport.
+ *
+ * Im Zustand CLOSED werden die Ergebnisse der letzten Aufrufe in einem gleitenden Fenster
+ * gezählt. Überschreitet die Fehlerquote oder die Quote langsamer Aufrufe ihren Schwellwert,
+ * wechselt der Breaker nach OPEN: Aufrufe scheitern dann sofort mit
+ * {@link GeminiCircuitOpenException}, statt minutenlang auf Timeouts zu warten. Nach der
+ * Wartezeit lässt HALF_OPEN einige Probeaufrufe durch; gelingen alle, schließt der Breaker
+ * wieder, sonst öffnet er erneut.
+ *
+ * Die Dauer eines Aufrufs umfasst nur den HTTP-Austausch; das Warten auf Kontingent beim
+ * {@link GeminiRateLimiter} wird über {@link #excludeQuotaWait(long)} herausgerechnet.
+ *
+ * Nur Fehler, die auf einen gestörten Dienst hindeuten (Verbindung, Timeout, Netzwerk, 5xx,
+ * ungültige Antwort), zählen als Fehlschlag. Client-Fehler, Drosselung und Abbrüche durch
+ * den Benutzer werden nicht gewertet.
+ */
+class GeminiCircuitBreaker {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /**
+     * Zustände des Circuit Breakers.
+     */
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** Größe des gleitenden Fensters (Anzahl der letzten Aufrufe) */
+    private static final int WINDOW_SIZE =
+        (int) Math.max(1, ConfigurationService.getLongSetting("AI4MBSE_CIRCUIT_WINDOW", 20));
+
+    /** Mindestanzahl an Aufrufen im Fenster, bevor Quoten ausgewertet werden */
+    private static final int MINIMUM_CALLS =
+        (int) Math.min(WINDOW_SIZE, ConfigurationService.getLongSetting("AI4MBSE_CIRCUIT_MIN_CALLS", 5));
+
+    /** Fehlerquote in Prozent, ab der der Breaker öffnet */
+    private static final double FAILURE_RATE_THRESHOLD =
+        ConfigurationService.getDoubleSetting("AI4MBSE_CIRCUIT_FAILURE_RATE", 50);
+
+    /** Quote langsamer Aufrufe in Prozent, ab der der Breaker öffnet */
+    private static final double SLOW_CALL_RATE_THRESHOLD =
+        ConfigurationService.getDoubleSetting("AI4MBSE_CIRCUIT_SLOW_CALL_RATE", 80);
+
+    /** Dauer in Millisekunden, ab der ein Aufruf als langsam gilt */
+    private static final long SLOW_CALL_MILLIS =
+        ConfigurationService.getLongSetting("AI4MBSE_CIRCUIT_SLOW_CALL_MS", 30000);
+
+    /** Wartezeit im Zustand OPEN in Millisekunden */
+    private static final long OPEN_WAIT_MILLIS =
+        ConfigurationService.getLongSetting("AI4MBSE_CIRCUIT_OPEN_MS", 30000);
+
+    /** Anzahl der Probeaufrufe im Zustand HALF_OPEN */
+    private static final int HALF_OPEN_CALLS =
+        (int) Math.max(1, ConfigurationService.getLongSetting("AI4MBSE_CIRCUIT_HALF_OPEN_CALLS", 2));
+
+    /** Je Thread summierte Wartezeit auf Kontingent, die nicht zur Dauer eines Aufrufs zählt */
+    private static final ThreadLocal<long[]> quotaWaitNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    /** Gemeinsame Instanz für den Gemini-Endpunkt */
+    private static final GeminiCircuitBreaker instance = new GeminiCircuitBreaker();
+
+    /** Aktueller Zustand */
+    private State state = State.CLOSED;
+
+    /** Ringpuffer: Aufruf fehlgeschlagen */
+    private final boolean[] failedCalls = new boolean[WINDOW_SIZE];
+
+    /** Ringpuffer: Aufruf langsam */
+    private final boolean[] slowCalls = new boolean[WINDOW_SIZE];
+
+    /** Nächste Schreibposition und Belegung des Ringpuffers */
+    private int windowIndex, windowCount;
+
+    /** Zeitpunkt, ab dem im Zustand OPEN wieder geprobt werden darf */
+    private long openUntilNanos;
+
+    /** Im Zustand HALF_OPEN vergebene bzw. erfolgreich beendete Probeaufrufe */
+    private int halfOpenPermits, halfOpenSuccesses;
+
+    /** Statistik: Zustandswechsel nach OPEN und sofort abgewiesene Aufrufe */
+    private long timesOpened, rejectedCalls;
+
+    /**
+     * @return Der gemeinsame Circuit Breaker
+     */
+    static GeminiCircuitBreaker getInstance() {
+        return instance;
+    }
+
+    /**
+     * Führt einen einzelnen Aufruf unter Aufsicht des Breakers aus.
+     *
+     * @param attempt Der Aufruf
+     * @return Das Ergebnis des Aufrufs
+     * @throws GeminiCircuitOpenException Wenn der Breaker offen ist
+     * @throws IOException Fehler des Aufrufs
+     */
+    <T> T execute(GeminiRetryPolicy.Attempt<T> attempt) throws IOException {
+        acquirePermission();
+        long[] waited = quotaWaitNanos.get();
+        long waitedBefore = waited[0];
+        long start = System.nanoTime();
+        try {
+            T result = attempt.run();
+            onCompletion(System.nanoTime() - start - (waited[0] - waitedBefore), false, false);
+            return result;
+        } catch (IOException | JsonParseException e) {
+            boolean failed = isServiceFailure(e);
+            onCompletion(System.nanoTime() - start - (waited[0] - waitedBefore), failed, !failed);
+            throw e;
+        } catch (RuntimeException e) {
+            onCompletion(System.nanoTime() - start - (waited[0] - waitedBefore), false, true);
+            throw e;
+        }
+    }
+
+    /**
+     * Nimmt eine Wartezeit des aktuellen Threads aus der Dauer des laufenden Aufrufs heraus,
+     * z.B. das Warten auf Kontingent beim {@link GeminiRateLimiter} samt Pausen nach 429.
+     * Als langsam gilt ein Aufruf damit nur, wenn der HTTP-Austausch selbst langsam war.
+     *
+     * @param nanos Die Wartezeit
+     */
+    static void excludeQuotaWait(long nanos) {
+        quotaWaitNanos.get()[0] += nanos;
+    }
+
+    /**
+     * Prüft, ob ein Aufruf zugelassen wird, und wechselt ggf. von OPEN nach HALF_OPEN.
+     */
+    private synchronized void acquirePermission() throws GeminiCircuitOpenException {
+        long now = System.nanoTime();
+        if (state == State.OPEN && now - openUntilNanos >= 0) {
+            state = State.HALF_OPEN;
+            halfOpenPermits = 0;
+            halfOpenSuccesses = 0;
+            logger.info("Circuit Breaker halb offen - Probeaufrufe an Gemini werden zugelassen.", "GeminiCircuitBreaker");
+        }
+        if (state == State.CLOSED) return;
+        if (state == State.HALF_OPEN && halfOpenPermits < HALF_OPEN_CALLS) {
+            halfOpenPermits++;
+            return;
+        }
+        rejectedCalls++;
+        long remaining = state == State.OPEN ? TimeUnit.NANOSECONDS.toMillis(openUntilNanos - now) : 0;
+        throw new GeminiCircuitOpenException(remaining);
+    }
+
+    /**
+     * Wertet einen beendeten Aufruf aus.
+     *
+     * @param durationNanos Dauer des Aufrufs
+     * @param failed Ob der Aufruf auf einen gestörten Dienst hindeutet
+     * @param ignored Ob der Aufruf nicht gewertet wird (Client-Fehler, Drosselung, Abbruch)
+     */
+    private synchronized void onCompletion(long durationNanos, boolean failed, boolean ignored) {
+        boolean slow = TimeUnit.NANOSECONDS.toMillis(durationNanos) >= SLOW_CALL_MILLIS;
+        if (state == State.HALF_OPEN) {
+            if (ignored && !slow) {
+                halfOpenPermits--;
+            } else if (failed || slow) {
+                open("Probeaufruf " + (failed ? "fehlgeschlagen" : "zu langsam"));
+            } else if (++halfOpenSuccesses >= HALF_OPEN_CALLS) {
+                state = State.CLOSED;
+                windowIndex = 0;
+                windowCount = 0;
+                logger.info("Circuit Breaker geschlossen - Gemini antwortet wieder.", "GeminiCircuitBreaker");
+            }
+            return;
+        }
+        if (state != State.CLOSED || ignored) return;
+
+        failedCalls[windowIndex] = failed;
+        slowCalls[windowIndex] = slow;
+        windowIndex = (windowIndex + 1) % WINDOW_SIZE;
+        windowCount = Math.min(WINDOW_SIZE, windowCount + 1);
+        if (windowCount < MINIMUM_CALLS) return;
+
+        int failures = 0, slows = 0;
+        for (int i = 0; i < windowCount; i++) {
+            if (failedCalls[i]) failures++;
+            if (slowCalls[i]) slows++;
+        }
+        double failureRate = 100.0 * failures / windowCount;
+        double slowRate = 100.0 * slows / windowCount;
+        if (failureRate >= FAILURE_RATE_THRESHOLD) {
+            open(String.format("Fehlerquote %.0f %%", failureRate));
+        } else if (slowRate >= SLOW_CALL_RATE_THRESHOLD) {
+            open(String.format("Quote langsamer Aufrufe %.0f %%", slowRate));
+        }
+    }
+
+    /**
+     * Wechselt in den Zustand OPEN.
+     */
+    private void open(String reason) {
+        state = State.OPEN;
+        openUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(OPEN_WAIT_MILLIS);
+        timesOpened++;
+        logger.info("Circuit Breaker geöffnet (" + reason + ") - Gemini-Aufrufe scheitern für "
+            + OPEN_WAIT_MILLIS / 1000 + " s sofort.", "GeminiCircuitBreaker");
+    }
+
+    /**
+     * Fehler, die auf einen gestörten Dienst hindeuten.
+     */
+    private static boolean isServiceFailure(Exception e) {
+        switch (GeminiRetryPolicy.classify(e)) {
+            case CONNECT:
+            case TIMEOUT:
+            case NETWORK:
+            case SERVER:
+            case MALFORMED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return Der aktuelle Zustand
+     */
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über Zustand, Öffnungen und abgewiesene Aufrufe
+     */
+    synchronized String getStatistics() {
+        return String.format("Circuit breaker: %s, opened %d times, %d calls rejected", state, timesOpened, rejectedCalls);
+    }
+}
@@ -0,0 +1,30 @@
+package ai4mbse.subsystems;
+
+import java.io.IOException;
+
+/**
+ * Wird geworfen, wenn der {@link GeminiCircuitBreaker} einen Aufruf sofort abweist.
+ */
+class GeminiCircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Verbleibende Wartezeit bis zum nächsten Probeaufruf in Millisekunden */
+    private final long remainingMillis;
+
+    /**
+     * @param remainingMillis Verbleibende Wartezeit bis zum nächsten Probeaufruf
+     */
+    GeminiCircuitOpenException(long remainingMillis) {
+        super("Gemini ist derzeit nicht erreichbar, Anfragen werden vorübergehend nicht gesendet"
+            + (remainingMillis > 0 ? " (nächster Versuch in " + (remainingMillis + 999) / 1000 + " s)." : "."));
+        this.remainingMillis = remainingMillis;
+    }
+
+    /**
+     * @return Verbleibende Wartezeit bis zum nächsten Probeaufruf in Millisekunden
+     */
+    long getRemainingMillis() {
+        return remainingMillis;
+    }
+}
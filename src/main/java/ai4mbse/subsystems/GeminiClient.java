@@ -0,0 +1,836 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+import ai4mbse.logging.TokenUsage;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client für die Kommunikation mit der Google Gemini API.
+ *
+ * Alle Aufrufe laufen über einen gemeinsamen, langlebigen {@link HttpClient}.
+ * Dieser handelt HTTP/2 aus, multiplext parallele Anfragen über eine Verbindung
+ * und hält Verbindungen im Pool offen, sodass DNS-Auflösung, TCP- und
+ * TLS-Handshake nicht bei jeder Allokation erneut anfallen. Ein
+ * {@link GeminiRateLimiter} je API-Schlüssel hält die Aufrufe unter dem Kontingent,
+ * die {@link GeminiRetryPolicy} wiederholt vorübergehend fehlgeschlagene Aufrufe innerhalb
+ * der {@link GeminiDeadline} und der {@link GeminiCircuitBreaker} lässt Aufrufe bei
+ * gestörtem Dienst sofort scheitern.
+ * Request- und Antwortkörper werden über {@link GeminiCompression} mit gzip übertragen.
+ */
+class GeminiClient {
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /** Standard-URL für die Gemini API */
+    private static final String API_URL = System.getenv().getOrDefault("GEMINI_API_URL",
+        "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.5-flash:generateContent");
+
+    /** URL des Streaming-Endpunkts (Server-Sent Events) */
+    private static final String STREAM_API_URL = System.getenv().getOrDefault("GEMINI_STREAM_API_URL",
+        API_URL.replace(":generateContent", ":streamGenerateContent"));
+
+    /** Präfix einer Datenzeile im Server-Sent-Events-Format */
+    private static final String SSE_DATA_PREFIX = "data:";
+
+    /** Timeout für Ressourcen-Anfragen außerhalb von generateContent in Millisekunden */
+    private static final int TIMEOUT = 60000;
+
+    /** Maximale Anzahl erneuter Einreihungen nach 429/503, bevor der Fehler gemeldet wird */
+    private static final int MAX_THROTTLE_WAITS =
+        (int) ConfigurationService.getLongSetting("AI4MBSE_RATE_LIMIT_MAX_WAITS", 5);
+
+    /** Muster für "retryDelay" im RetryInfo-Detail einer Gemini-Fehlerantwort */
+    private static final Pattern RETRY_DELAY_PATTERN = Pattern.compile("\"retryDelay\"\\s*:\\s*\"([0-9.]+)s\"");
+
+    /** Executor für die Hintergrund-Threads des HTTP-Transports */
+    private static final ExecutorService httpExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "AI4MBSE-GeminiHttp");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Gemeinsamer HTTP/2-Transport mit Connection-Pooling für alle Gemini-Aufrufe */
+    private static final HttpClient httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(Duration.ofMillis(GeminiDeadline.CONNECT_TIMEOUT_MILLIS))
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .executor(httpExecutor)
+        .build();
+
+    /**
+     * Body-Handler für nicht gestreamte Antworten: Erfolgreiche Antworten werden als
+     * Byte-Stream durchgereicht und direkt geparst; Fehlerantworten werden gepuffert,
+     * damit Retry-Informationen und Fehlermeldung gelesen werden können. Komprimierte
+     * Fehlerantworten werden dabei entpackt; erfolgreiche entpackt erst der lesende Thread.
+     */
+    private static final HttpResponse.BodyHandler<InputStream> BODY_HANDLER = info -> info.statusCode() >= 400
+        ? HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(),
+            bytes -> GeminiCompression.decodeBuffered(info.headers(), bytes))
+        : HttpResponse.BodySubscribers.ofInputStream();
+
+    /** Latenzen der nicht gestreamten Gemini-Aufrufe */
+    static final LatencyHistogram latencies = new LatencyHistogram(200);
+
+    /** Hedging für nicht gestreamte Aufrufe */
+    static final GeminiHedgingPolicy hedgingPolicy = new GeminiHedgingPolicy(latencies);
+
+    /**
+     * Liefert den Modellnamen aus der konfigurierten API-URL (z.B. "gemini-2.5-flash").
+     *
+     * @return Der Modellname oder die vollständige URL, falls sie kein Modellsegment enthält
+     */
+    static String getModelName() {
+        int start = API_URL.indexOf("/models/");
+        int end = API_URL.lastIndexOf(':');
+        if (start < 0 || end <= start) return API_URL;
+        return API_URL.substring(start + "/models/".length(), end);
+    }
+
+    /**
+     * Liefert den Modellnamen einer Endpunkt-URL für die Token-Buchführung.
+     *
+     * @param url Die URL eines generateContent- oder streamGenerateContent-Endpunkts
+     * @return Der Modellname oder "unknown"
+     */
+    private static String modelOf(String url) {
+        int start = url.indexOf("/models/");
+        int end = url.indexOf(':', start + 1);
+        if (start < 0 || end < 0) return "unknown";
+        return url.substring(start + "/models/".length(), end);
+    }
+
+    /**
+     * Liefert die API-URL eines Modells, indem das Modellsegment der konfigurierten URL
+     * ersetzt wird.
+     *
+     * @param model Der Modellname oder null für das konfigurierte Modell
+     * @return Die URL des generateContent-Endpunkts
+     */
+    static String modelUrl(String model) {
+        int start = API_URL.indexOf("/models/");
+        int end = API_URL.lastIndexOf(':');
+        if (model == null || start < 0 || end <= start) return API_URL;
+        return API_URL.substring(0, start + "/models/".length()) + model + API_URL.substring(end);
+    }
+
+    /**
+     * Sendet eine Anfrage an eine Ressource der Gemini API außerhalb von generateContent,
+     * z.B. zum Anlegen, Verlängern und Löschen von Kontext-Caches. Solche Anfragen laufen
+     * über den gemeinsamen Transport, aber ohne Kontingent und Wiederholungen.
+     *
+     * @param method HTTP-Methode (POST, PATCH, DELETE)
+     * @param resourcePath Pfad relativ zur API-Version, z.B. "cachedContents/abc?updateMask=ttl"
+     * @param json Der JSON-Körper oder null
+     * @param apiKey Der API-Schlüssel
+     * @return Der Antwortkörper
+     * @throws IOException Bei Netzwerkfehlern oder einer Fehlerantwort
+     */
+    static String sendResourceRequest(String method, String resourcePath, String json, String apiKey)
+            throws IOException {
+        int models = API_URL.indexOf("/models/");
+        String base = models < 0 ? API_URL.substring(0, API_URL.lastIndexOf('/') + 1) : API_URL.substring(0, models + 1);
+        String url = base + resourcePath + (resourcePath.indexOf('?') < 0 ? "?key=" : "&key=") + apiKey;
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+            .timeout(Duration.ofMillis(TIMEOUT))
+            .header("Content-Type", "application/json; charset=utf-8")
+            .method(method, json == null ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+            .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            if (response.statusCode() >= 400) throw new GeminiApiException(response.statusCode(), response.body());
+            return response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Gemini-Aufruf unterbrochen");
+        }
+    }
+
+    /**
+     * Baut die Verbindung zum API-Host vorab auf (DNS, TCP, TLS-Handshake, HTTP/2) und
+     * durchläuft einmal den Antwort-Parser. Die erste Allokation verwendet danach die
+     * gepoolte Verbindung bzw. die gespeicherte TLS-Sitzung. Die Anfrage trägt keinen
+     * API-Schlüssel und zählt nicht gegen Rate-Limit oder Circuit Breaker; ihr Status
+     * ist unerheblich.
+     *
+     * @return Der HTTP-Status der Vorab-Anfrage
+     * @throws IOException Wenn der Host nicht erreichbar ist
+     */
+    static int warmUpConnection() throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(API_URL).resolve("/"))
+            .timeout(Duration.ofMillis(GeminiDeadline.CONNECT_TIMEOUT_MILLIS))
+            .method("HEAD", HttpRequest.BodyPublishers.noBody())
+            .build();
+        extractText("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"[]\"}]}}],"
+            + "\"usageMetadata\":{\"promptTokenCount\":1}}", new ResponseParts());
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Aufwärmen der Verbindung unterbrochen");
+        }
+    }
+
+    /**
+     * Führt einen API-Aufruf an Google Gemini durch.
+     *
+     * @param prompt Der Text-Prompt für die KI
+     * @param apiKey Der API-Schlüssel für die Authentifizierung
+     * @return Die von der KI generierte Antwort als String
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     * @throws JsonSyntaxException Bei fehlerhaften JSON-Antworten
+     */
+    public static String callGeminiAPI(String prompt, String apiKey) throws IOException, JsonSyntaxException {
+        return callGeminiAPI(prompt, apiKey, null);
+    }
+
+    /**
+     * Führt einen API-Aufruf an Google Gemini durch, auf Wunsch im strukturierten JSON-Modus.
+     *
+     * @param prompt Der Text-Prompt für die KI
+     * @param apiKey Der API-Schlüssel für die Authentifizierung
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null für freie Textantwort;
+     *                          mit Schema liefert Gemini reines JSON mit exakten Block-Namen
+     * @return Die von der KI generierte Antwort als String
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     * @throws JsonSyntaxException Bei fehlerhaften JSON-Antworten
+     */
+    public static String callGeminiAPI(String prompt, String apiKey, List<String> allowedSubsystems)
+            throws IOException, JsonSyntaxException {
+        return callGeminiModel(null, prompt, apiKey, allowedSubsystems);
+    }
+
+    /**
+     * Führt einen API-Aufruf an ein bestimmtes Gemini-Modell durch, z.B. für eine Stufe
+     * des {@link GeminiModelRouter}.
+     *
+     * @param model Der Modellname oder null für das konfigurierte Modell
+     * @param prompt Der Text-Prompt für die KI
+     * @param apiKey Der API-Schlüssel für die Authentifizierung
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null für freie Textantwort
+     * @return Die von der KI generierte Antwort als String
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     * @throws JsonSyntaxException Bei fehlerhaften JSON-Antworten
+     */
+    static String callGeminiModel(String model, String prompt, String apiKey, List<String> allowedSubsystems)
+            throws IOException, JsonSyntaxException {
+        return callGeminiModel(model, prompt, apiKey, allowedSubsystems, AllocationCancellation.NONE,
+            interactiveDeadline(allowedSubsystems));
+    }
+
+    /**
+     * Führt einen abbrechbaren API-Aufruf an ein bestimmtes Gemini-Modell durch.
+     *
+     * @param model Der Modellname oder null für das konfigurierte Modell
+     * @param prompt Der Text-Prompt für die KI
+     * @param apiKey Der API-Schlüssel für die Authentifizierung
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null für freie Textantwort
+     * @param cancellation Abbruch-Token der Allokation
+     * @param deadline Frist der Versuche und Gesamtbudget samt Wiederholungen
+     * @return Die von der KI generierte Antwort als String
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     * @throws JsonSyntaxException Bei fehlerhaften JSON-Antworten
+     */
+    static String callGeminiModel(String model, String prompt, String apiKey, List<String> allowedSubsystems,
+                                  AllocationCancellation cancellation, GeminiDeadline deadline)
+            throws IOException, JsonSyntaxException {
+        // Payload einmalig direkt in einen Byte-Puffer serialisieren
+        GeminiRequestBody body = GeminiRequestBody.write(allowedSubsystems, prompt);
+        return callGeminiModel(model, body, prompt, apiKey, TokenEstimator.estimateRequest(prompt, allowedSubsystems),
+            cancellation, deadline);
+    }
+
+    /**
+     * Deadline eines einzelnen interaktiven Aufrufs mit einem Requirement.
+     */
+    private static GeminiDeadline interactiveDeadline(List<String> allowedSubsystems) {
+        return GeminiDeadline.start(GeminiDeadline.Mode.INTERACTIVE, GeminiDeadline.expectedOutputTokens(1,
+            allowedSubsystems == null ? Integer.MAX_VALUE : allowedSubsystems.size()));
+    }
+
+    /**
+     * Führt einen API-Aufruf mit einem bereits serialisierten Request-Körper durch,
+     * z.B. für Prompts mit mehreren Requirements.
+     *
+     * @param model Der Modellname oder null für das konfigurierte Modell
+     * @param body Der serialisierte Request-Körper
+     * @param prompt Der Text-Prompt (für Kontingent und Logging)
+     * @param apiKey Der API-Schlüssel für die Authentifizierung
+     * @param estimatedTokens Die geschätzten Eingabe-Tokens
+     * @param cancellation Abbruch-Token; ein Abbruch beendet die laufende HTTP-Anfrage sofort
+     * @param deadline Frist der Versuche und Gesamtbudget samt Wiederholungen
+     * @return Die von der KI generierte Antwort als String
+     * @throws AllocationCancelledException Wenn die Allokation abgebrochen wurde
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     * @throws JsonSyntaxException Bei fehlerhaften JSON-Antworten
+     */
+    static String callGeminiModel(String model, GeminiRequestBody body, String prompt, String apiKey,
+                                  long estimatedTokens, AllocationCancellation cancellation, GeminiDeadline deadline)
+            throws IOException, JsonSyntaxException {
+        String url = modelUrl(model) + "?key=" + apiKey;
+        return runCancellable(cancellation, () -> GeminiRetryPolicy.getInstance().execute("generateContent",
+            () -> GeminiCircuitBreaker.getInstance().execute(
+                () -> sendAndExtract(url, body, prompt, apiKey, estimatedTokens, cancellation, deadline)),
+            () -> !cancellation.isCancelled(), deadline));
+    }
+
+    /**
+     * Führt einen Aufruf samt Wiederholungen so aus, dass ein Abbruch jedes Warten sofort
+     * beendet. Fehler, die erst durch den Abbruch entstehen (geschlossener Stream,
+     * unterbrochene Anfrage), werden als {@link AllocationCancelledException} gemeldet.
+     */
+    private static <T> T runCancellable(AllocationCancellation cancellation, GeminiRetryPolicy.Attempt<T> attempt)
+            throws IOException {
+        cancellation.throwIfCancelled();
+        AllocationCancellation.Registration interrupt = cancellation.interruptOnCancel();
+        try {
+            return attempt.run();
+        } catch (IOException | RuntimeException e) {
+            if (!cancellation.isCancelled() || e instanceof AllocationCancelledException) throw e;
+            AllocationCancelledException cancelled = new AllocationCancelledException();
+            cancelled.initCause(e);
+            throw cancelled;
+        } finally {
+            interrupt.close();
+        }
+    }
+
+    /**
+     * Ein einzelner, nicht wiederholter Versuch von
+     * {@link #callGeminiModel(String, GeminiRequestBody, String, String, long, AllocationCancellation, GeminiDeadline)}.
+     */
+    private static String sendAndExtract(String url, GeminiRequestBody body, String prompt, String apiKey,
+                                         long estimatedTokens, AllocationCancellation cancellation,
+                                         GeminiDeadline deadline) throws IOException {
+
+        // HTTP-Request über den gemeinsamen Transport senden, gedrosselt nach Kontingent
+        GeminiCompression.CallMetrics call = GeminiCompression.startCall(body);
+        HttpResponse<InputStream> response =
+            sendWithinQuota(url, call, apiKey, prompt, BODY_HANDLER, true, cancellation, deadline);
+
+        // Antwort lesen und verarbeiten
+        int code = response.statusCode();
+        if (code >= 400) throw new GeminiApiException(code, errorBody(response));
+
+        // Text in einem Durchlauf direkt aus dem (ggf. entpackten) Byte-Stream lesen, ohne JSON-Baum;
+        // ein Abbruch oder das Ende der Versuchsfrist schließt den Stream und beendet damit das Lesen
+        InputStream decoded = call.decode(response.headers(), response.body());
+        GeminiDeadline.Watch watch = deadline.watch(() -> closeQuietly(response.body()));
+        AllocationCancellation.Registration close = cancellation.onCancel(() -> closeQuietly(response.body()));
+        try (JsonReader reader = new JsonReader(new InputStreamReader(decoded, StandardCharsets.UTF_8))) {
+            ResponseParts parts = new ResponseParts();
+            readResponse(reader, parts);
+            if (parts.text == null) throw new JsonSyntaxException("Gemini-Antwort enthält keinen Text");
+            TokenEstimator.recordActual(estimatedTokens, parts.promptTokens);
+            TokenUsageScope.recordCall(modelOf(url), parts.toUsage());
+            return parts.text;
+        } catch (IllegalStateException | MalformedJsonException e) {
+            if (watch.isExpired()) throw attemptExpired(e);
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            if (watch.isExpired()) throw attemptExpired(e);
+            throw e;
+        } finally {
+            close.close();
+            watch.close();
+        }
+    }
+
+    /**
+     * Meldet das Ende der Versuchsfrist beim Lesen einer Antwort wie einen Request-Timeout,
+     * damit die {@link GeminiRetryPolicy} ihn als TIMEOUT einordnet.
+     */
+    private static HttpTimeoutException attemptExpired(Exception cause) {
+        HttpTimeoutException timeout = new HttpTimeoutException("Frist des Gemini-Aufrufs beim Lesen der Antwort abgelaufen");
+        timeout.initCause(cause);
+        return timeout;
+    }
+
+    /**
+     * Führt einen gestreamten API-Aufruf gegen den streamGenerateContent-Endpunkt durch.
+     * Jedes empfangene Textfragment wird sofort an den Konsumenten weitergereicht,
+     * während die KI noch generiert. Wiederholt wird nur, solange noch kein Fragment
+     * ausgeliefert wurde, damit der Konsument keinen Text doppelt erhält.
+     *
+     * @param prompt Der Text-Prompt für die KI
+     * @param apiKey Der API-Schlüssel für die Authentifizierung
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null für freie Textantwort
+     * @param textConsumer Empfänger für jedes Textfragment in Empfangsreihenfolge
+     * @return Der vollständige, zusammengesetzte Antworttext
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     * @throws JsonSyntaxException Bei fehlerhaften JSON-Ereignissen
+     */
+    public static String streamGeminiAPI(String prompt, String apiKey, List<String> allowedSubsystems,
+                                         Consumer<String> textConsumer) throws IOException, JsonSyntaxException {
+        return streamGeminiAPI(prompt, apiKey, allowedSubsystems, textConsumer, AllocationCancellation.NONE);
+    }
+
+    /**
+     * Führt einen abbrechbaren gestreamten API-Aufruf durch. Ein Abbruch schließt den
+     * Ereignis-Stream sofort; danach werden keine Fragmente mehr ausgeliefert.
+     *
+     * @param prompt Der Text-Prompt für die KI
+     * @param apiKey Der API-Schlüssel für die Authentifizierung
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null für freie Textantwort
+     * @param textConsumer Empfänger für jedes Textfragment in Empfangsreihenfolge
+     * @param cancellation Abbruch-Token der Allokation
+     * @return Der vollständige, zusammengesetzte Antworttext
+     * @throws AllocationCancelledException Wenn die Allokation abgebrochen wurde
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     * @throws JsonSyntaxException Bei fehlerhaften JSON-Ereignissen
+     */
+    public static String streamGeminiAPI(String prompt, String apiKey, List<String> allowedSubsystems,
+                                         Consumer<String> textConsumer, AllocationCancellation cancellation)
+            throws IOException, JsonSyntaxException {
+        return streamGeminiAPI(prompt, apiKey, allowedSubsystems, textConsumer, cancellation,
+            interactiveDeadline(allowedSubsystems));
+    }
+
+    /**
+     * Führt einen abbrechbaren gestreamten API-Aufruf innerhalb einer Deadline durch.
+     * Die Versuchsfrist umfasst das Lesen des gesamten Ereignis-Streams.
+     *
+     * @param prompt Der Text-Prompt für die KI
+     * @param apiKey Der API-Schlüssel für die Authentifizierung
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null für freie Textantwort
+     * @param textConsumer Empfänger für jedes Textfragment in Empfangsreihenfolge
+     * @param cancellation Abbruch-Token der Allokation
+     * @param deadline Frist der Versuche und Gesamtbudget samt Wiederholungen
+     * @return Der vollständige, zusammengesetzte Antworttext
+     * @throws AllocationCancelledException Wenn die Allokation abgebrochen wurde
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     * @throws JsonSyntaxException Bei fehlerhaften JSON-Ereignissen
+     */
+    static String streamGeminiAPI(String prompt, String apiKey, List<String> allowedSubsystems,
+                                  Consumer<String> textConsumer, AllocationCancellation cancellation,
+                                  GeminiDeadline deadline) throws IOException, JsonSyntaxException {
+        GeminiRequestBody body = GeminiRequestBody.write(allowedSubsystems, prompt);
+        String url = STREAM_API_URL + "?alt=sse&key=" + apiKey;
+        long estimatedTokens = TokenEstimator.estimateRequest(prompt, allowedSubsystems);
+        AtomicBoolean delivered = new AtomicBoolean();
+        Consumer<String> trackingConsumer = text -> {
+            delivered.set(true);
+            textConsumer.accept(text);
+        };
+        return runCancellable(cancellation, () -> GeminiRetryPolicy.getInstance().execute("streamGenerateContent",
+            () -> GeminiCircuitBreaker.getInstance().execute(
+                () -> streamOnce(url, body, prompt, apiKey, estimatedTokens, trackingConsumer, cancellation, deadline)),
+            () -> !delivered.get() && !cancellation.isCancelled(), deadline));
+    }
+
+    /**
+     * Ein einzelner, nicht wiederholter Versuch von
+     * {@link #streamGeminiAPI(String, String, List, Consumer, AllocationCancellation, GeminiDeadline)}.
+     */
+    private static String streamOnce(String url, GeminiRequestBody body, String prompt, String apiKey,
+                                     long estimatedTokens, Consumer<String> textConsumer,
+                                     AllocationCancellation cancellation, GeminiDeadline deadline) throws IOException {
+        GeminiCompression.CallMetrics call = GeminiCompression.startCall(body);
+        HttpResponse<InputStream> response =
+            sendWithinQuota(url, call, apiKey, prompt, BODY_HANDLER, false, cancellation, deadline);
+        if (response.statusCode() >= 400) throw new GeminiApiException(response.statusCode(), errorBody(response));
+
+        // Ereignisse fortlaufend entpacken und zeilenweise lesen
+        StringBuilder fullText = new StringBuilder();
+        ResponseParts parts = new ResponseParts();
+        InputStream decoded = call.decode(response.headers(), response.body());
+        GeminiDeadline.Watch watch = deadline.watch(() -> closeQuietly(response.body()));
+        AllocationCancellation.Registration close = cancellation.onCancel(() -> closeQuietly(response.body()));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(decoded, StandardCharsets.UTF_8))) {
+            // Jede SSE-Datenzeile enthält ein vollständiges GenerateContentResponse-Fragment
+            reader.lines().takeWhile(line -> !cancellation.isCancelled())
+                .filter(line -> line.startsWith(SSE_DATA_PREFIX))
+                .map(line -> line.substring(SSE_DATA_PREFIX.length()).trim())
+                .filter(data -> !data.isEmpty())
+                .forEach(data -> {
+                    String text = extractText(data, parts);
+                    if (text != null && !text.isEmpty()) {
+                        fullText.append(text);
+                        textConsumer.accept(text);
+                    }
+                });
+        } catch (UncheckedIOException e) {
+            // Lesefehler des Zeilen-Streams als geprüfte Ausnahme für die Retry-Policy
+            if (watch.isExpired()) throw attemptExpired(e.getCause());
+            throw e.getCause();
+        } finally {
+            close.close();
+            watch.close();
+        }
+        // Nach einem Abbruch ist der Text unvollständig und darf nicht als Antwort gelten
+        cancellation.throwIfCancelled();
+        if (watch.isExpired()) throw attemptExpired(new IOException("Ereignis-Stream geschlossen"));
+        // Eine Messung je Versuch: die Gesamtdauer, die auch die Versuchsfrist begrenzt
+        latencies.record(deadline.attemptElapsedMillis());
+        // Das letzte Ereignis trägt die vollständigen usageMetadata
+        TokenEstimator.recordActual(estimatedTokens, parts.promptTokens);
+        TokenUsageScope.recordCall(modelOf(url), parts.toUsage());
+        return fullText.toString();
+    }
+
+    /**
+     * Sendet einen Request innerhalb des Kontingents des API-Schlüssels.
+     * Vor jedem Versuch wird beim {@link GeminiRateLimiter} ein Platz reserviert. Antwortet
+     * der Server mit 429 oder 503, wird der Limiter gedrosselt und der Request nach der
+     * Retry-After-Pause erneut eingereiht, statt sofort als Fehler zu enden. Erst nach
+     * {@link #MAX_THROTTLE_WAITS} Drosselungen wird die letzte Antwort zurückgegeben.
+     * Lehnt der Server einen komprimierten Körper mit 415 ab, wird er unkomprimiert erneut gesendet.
+     *
+     * @param url Vollständige Ziel-URL inklusive API-Schlüssel
+     * @param call Messung des Aufrufs mit dem zu sendenden Request-Körper
+     * @param apiKey Der API-Schlüssel, dessen Kontingent gilt
+     * @param prompt Der Prompt für die Token-Schätzung
+     * @param bodyHandler Handler für den Antwortkörper
+     * @param hedgeable Ob der Request über die {@link GeminiHedgingPolicy} dupliziert werden darf
+     *                  (nicht bei Streaming, da Fragmente sonst doppelt ausgeliefert würden)
+     * @param cancellation Abbruch-Token; eine erst nach dem Abbruch eintreffende Antwort
+     *                     wird ungelesen verworfen
+     * @param deadline Deadline des Aufrufs; jeder gesendete Request beginnt einen Versuch
+     *                 und erhält dessen Frist als Timeout
+     * @return Die erste nicht gedrosselte (oder die letzte gedrosselte) Antwort
+     * @throws IOException Bei Netzwerkfehlern oder Unterbrechung
+     */
+    private static <T> HttpResponse<T> sendWithinQuota(String url, GeminiCompression.CallMetrics call,
+                                                       String apiKey, String prompt,
+                                                       HttpResponse.BodyHandler<T> bodyHandler,
+                                                       boolean hedgeable,
+                                                       AllocationCancellation cancellation,
+                                                       GeminiDeadline deadline) throws IOException {
+        GeminiRateLimiter limiter = GeminiRateLimiter.forApiKey(apiKey);
+        long estimatedTokens = GeminiRateLimiter.estimateTokens(prompt);
+        try {
+            for (int attempt = 0; ; attempt++) {
+                cancellation.throwIfCancelled();
+                long queued = System.nanoTime();
+                limiter.acquire(estimatedTokens);
+                GeminiCircuitBreaker.excludeQuotaWait(System.nanoTime() - queued);
+                HttpRequest request = buildRequest(url, call, deadline.beginAttempt());
+                HttpResponse<T> response = hedgeable
+                    ? hedgingPolicy.send(httpClient, request, bodyHandler, () -> limiter.tryAcquire(estimatedTokens))
+                    : await(httpClient.sendAsync(request, bodyHandler));
+                if (cancellation.isCancelled()) {
+                    discardBody(response);
+                    AllocationCancellation.recordDiscardedResponse();
+                    throw new AllocationCancelledException();
+                }
+                int code = response.statusCode();
+                if (code == 415 && call.isRequestCompressed()) {
+                    discardBody(response);
+                    call.requestGzipRejected();
+                    continue;
+                }
+                if (code != 429 && code != 503) {
+                    if (code < 400) limiter.onSuccess();
+                    return response;
+                }
+                long pause = limiter.onThrottled(parseRetryAfter(response));
+                if (attempt >= MAX_THROTTLE_WAITS) return response;
+                discardBody(response);
+                logger.info("Gemini-Kontingent erreicht (HTTP " + code + ") - Anfrage wird in "
+                    + pause + " ms erneut eingereiht.", "GeminiClient");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Gemini-Aufruf unterbrochen");
+        }
+    }
+
+    /**
+     * Wartet auf eine Antwort; bei Unterbrechung wird die HTTP-Anfrage abgebrochen.
+     */
+    private static <T> HttpResponse<T> await(CompletableFuture<HttpResponse<T>> exchange)
+            throws IOException, InterruptedException {
+        try {
+            return exchange.get();
+        } catch (InterruptedException e) {
+            exchange.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Gemini-Aufruf fehlgeschlagen: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Schließt einen Antwort-Stream ohne Fehlermeldung, z.B. beim Abbruch aus einem
+     * anderen Thread; ein blockiertes Lesen endet damit sofort.
+     */
+    private static void closeQuietly(Object body) {
+        if (body instanceof InputStream) {
+            try {
+                ((InputStream) body).close();
+            } catch (IOException ignored) {
+                // Der Stream wird ohnehin verworfen
+            }
+        }
+    }
+
+    /**
+     * Liest die Wartezeit aus dem Retry-After-Header (Sekunden oder HTTP-Datum) bzw.
+     * aus dem RetryInfo-Detail ("retryDelay": "32s") einer Gemini-Fehlerantwort.
+     *
+     * @param response Die gedrosselte Antwort
+     * @return Wartezeit in Millisekunden oder -1, falls keine Angabe vorliegt
+     */
+    private static long parseRetryAfter(HttpResponse<?> response) {
+        String header = response.headers().firstValue("Retry-After").orElse(null);
+        if (header != null) {
+            try {
+                return Math.max(0, Math.round(Double.parseDouble(header.trim()) * 1000));
+            } catch (NumberFormatException e) {
+                try {
+                    ZonedDateTime date = ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                    return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+                } catch (DateTimeParseException ignored) {
+                    // Unbekanntes Format - auf RetryInfo bzw. Standard-Backoff zurückfallen
+                }
+            }
+        }
+        String body = errorBody(response);
+        if (body != null) {
+            Matcher m = RETRY_DELAY_PATTERN.matcher(body);
+            if (m.find()) return Math.round(Double.parseDouble(m.group(1)) * 1000);
+        }
+        return -1;
+    }
+
+    /**
+     * Liefert den gepufferten Körper einer Fehlerantwort als Text.
+     * Fehlerantworten werden von {@link #BODY_HANDLER} vollständig gepuffert und können
+     * daher mehrfach gelesen werden.
+     *
+     * @param response Die Antwort
+     * @return Der Antworttext oder null, wenn der Körper nicht gepuffert ist
+     */
+    private static String errorBody(HttpResponse<?> response) {
+        Object body = response.body();
+        if (body instanceof String) return (String) body;
+        if (body instanceof ByteArrayInputStream) {
+            ByteArrayInputStream buffered = (ByteArrayInputStream) body;
+            buffered.reset();
+            return new String(buffered.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    /**
+     * Verwirft den Körper einer gedrosselten Antwort, damit die Verbindung frei wird.
+     */
+    private static void discardBody(HttpResponse<?> response) throws IOException {
+        if (response.body() instanceof InputStream) {
+            ((InputStream) response.body()).close();
+        }
+    }
+
+    /**
+     * Erstellt den HTTP-Request mit dem Gemini-JSON-Payload eines Aufrufs.
+     *
+     * @param url Vollständige Ziel-URL inklusive API-Schlüssel
+     * @param call Messung des Aufrufs mit dem zu sendenden Request-Körper
+     * @param timeout Frist bis zum Eintreffen der Antwort
+     * @return Der versandfertige Request
+     */
+    private static HttpRequest buildRequest(String url, GeminiCompression.CallMetrics call, Duration timeout) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+            .timeout(timeout)
+            .header("Content-Type", "application/json; charset=utf-8")
+            .POST(call.requestBody().publisher());
+        if (call.isRequestCompressed()) builder.header("Content-Encoding", "gzip");
+        if (GeminiCompression.RESPONSE_GZIP) builder.header("Accept-Encoding", "gzip");
+        return builder.build();
+    }
+
+    /**
+     * Extrahiert den Text des ersten Kandidaten aus einem gestreamten Antwortfragment.
+     * Fragmente ohne Textanteil (z.B. nur Metadaten) liefern null.
+     *
+     * @param data Die JSON-Daten einer SSE-Zeile
+     * @param usage Nimmt die Tokenzahlen aus usageMetadata auf, sofern enthalten
+     * @return Der Textanteil oder null
+     */
+    private static String extractText(String data, ResponseParts usage) {
+        try (JsonReader reader = new JsonReader(new StringReader(data))) {
+            ResponseParts parts = new ResponseParts();
+            readResponse(reader, parts);
+            if (parts.promptTokens >= 0) {
+                // Spätere Fragmente tragen die fortgeschriebenen Zahlen
+                usage.promptTokens = parts.promptTokens;
+                usage.outputTokens = parts.outputTokens;
+                usage.cachedTokens = parts.cachedTokens;
+                usage.thoughtTokens = parts.thoughtTokens;
+            }
+            return parts.text;
+        } catch (IllegalStateException | IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Gelesene Teile einer GenerateContentResponse.
+     */
+    private static final class ResponseParts {
+        /** candidates[0].content.parts[0].text oder null */
+        String text;
+
+        /** usageMetadata.promptTokenCount oder -1 */
+        long promptTokens = -1;
+
+        /** usageMetadata.candidatesTokenCount, cachedContentTokenCount und thoughtsTokenCount */
+        long outputTokens, cachedTokens, thoughtTokens;
+
+        /**
+         * @return Der Verbrauch eines Aufrufs laut usageMetadata (ohne Angabe 0 Tokens)
+         */
+        TokenUsage toUsage() {
+            return new TokenUsage(1, Math.max(0, promptTokens), outputTokens, cachedTokens, thoughtTokens);
+        }
+    }
+
+    /**
+     * Liest candidates[0].content.parts[0].text und die Tokenzahlen aus usageMetadata aus
+     * einer GenerateContentResponse. Alle übrigen Felder werden übersprungen, ohne
+     * Objekte anzulegen.
+     *
+     * @param reader Reader, der vor dem Antwortobjekt steht
+     * @param parts Nimmt die gelesenen Werte auf
+     * @throws IOException Bei Lesefehlern oder fehlerhaftem JSON
+     */
+    private static void readResponse(JsonReader reader, ResponseParts parts) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("candidates") && parts.text == null) {
+                parts.text = readCandidateText(reader);
+            } else if (name.equals("usageMetadata") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readUsage(reader, parts);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Liest die Tokenzahlen aus dem usageMetadata-Objekt; fehlende Ausgabe-, Cache- und
+     * Denk-Tokens bleiben 0, ein fehlender promptTokenCount -1.
+     */
+    private static void readUsage(JsonReader reader, ResponseParts parts) throws IOException {
+        long prompt = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() != JsonToken.NUMBER) {
+                reader.skipValue();
+            } else if (name.equals("promptTokenCount")) {
+                prompt = reader.nextLong();
+            } else if (name.equals("candidatesTokenCount")) {
+                parts.outputTokens = reader.nextLong();
+            } else if (name.equals("cachedContentTokenCount")) {
+                parts.cachedTokens = reader.nextLong();
+            } else if (name.equals("thoughtsTokenCount")) {
+                parts.thoughtTokens = reader.nextLong();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        parts.promptTokens = prompt;
+    }
+
+    /**
+     * Liest den Text des ersten Kandidaten aus dem candidates-Array.
+     *
+     * @param reader Reader, der vor dem candidates-Array steht
+     * @return Der Text oder null, wenn der Pfad fehlt
+     * @throws IOException Bei Lesefehlern oder fehlerhaftem JSON
+     */
+    private static String readCandidateText(JsonReader reader) throws IOException {
+        return readFirst(reader, candidate ->
+            readField(candidate, "content", content ->
+                readField(content, "parts", parts ->
+                    readFirst(parts, part ->
+                        readField(part, "text", JsonReader::nextString)))));
+    }
+
+    /**
+     * Leser für einen Teilbaum der Antwort.
+     */
+    @FunctionalInterface
+    private interface ValueReader {
+        String read(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * Liest ein Objekt vollständig und wertet nur das angegebene Feld aus.
+     */
+    private static String readField(JsonReader reader, String field, ValueReader valueReader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (value == null && name.equals(field) && reader.peek() != JsonToken.NULL) {
+                value = valueReader.read(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    /**
+     * Liest ein Array vollständig und wertet nur das erste Element aus.
+     */
+    private static String readFirst(JsonReader reader, ValueReader elementReader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        String value = null;
+        reader.beginArray();
+        if (reader.hasNext()) value = elementReader.read(reader);
+        while (reader.hasNext()) reader.skipValue();
+        reader.endArray();
+        return value;
+    }
+}
@@ -0,0 +1,240 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * gzip-Kompression für den Gemini-Transport.
+ *
+ * Request-Körper ab {@link #MIN_REQUEST_BYTES} werden komprimiert gesendet
+ * (Content-Encoding: gzip). Lehnt der Server das mit HTTP 415 ab, wird die Kompression
+ * von Anfragen für die Sitzung abgeschaltet. Antworten werden mit Accept-Encoding: gzip
+ * angefordert und beim Lesen fortlaufend entpackt, auch bei Server-Sent Events.
+ *
+ * Je Aufruf werden Roh- und Übertragungsgröße beider Richtungen sowie die Zeit für
+ * Packen und Entpacken gemessen. Die eingesparte Übertragungszeit wird grob aus dem
+ * Durchsatz der Antwort ab ihrem ersten Byte geschätzt.
+ */
+final class GeminiCompression {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /** Komprimiert Request-Körper */
+    private static final boolean REQUEST_GZIP = ConfigurationService.getBooleanSetting("AI4MBSE_GZIP_REQUESTS", true);
+
+    /** Fordert komprimierte Antworten an */
+    static final boolean RESPONSE_GZIP = ConfigurationService.getBooleanSetting("AI4MBSE_GZIP_RESPONSES", true);
+
+    /** Mindestgröße eines Request-Körpers, ab der komprimiert wird */
+    private static final int MIN_REQUEST_BYTES = 1024;
+
+    /** Gesetzt, sobald der Server komprimierte Anfragen abgelehnt hat */
+    private static volatile boolean requestGzipRejected;
+
+    /** Summen über alle Aufrufe */
+    private static long calls, rawBytes, wireBytes, codecNanos;
+
+    /** Summe der geschätzten eingesparten Übertragungszeit in Millisekunden */
+    private static double savedMillis;
+
+    private GeminiCompression() {
+    }
+
+    /**
+     * @param body Der unkomprimierte Request-Körper
+     * @return true, wenn der Körper komprimiert gesendet werden soll
+     */
+    static boolean shouldCompress(GeminiRequestBody body) {
+        return REQUEST_GZIP && !requestGzipRejected && body.length() >= MIN_REQUEST_BYTES;
+    }
+
+    /**
+     * Schaltet die Kompression von Anfragen ab, nachdem der Server sie abgelehnt hat.
+     */
+    static void markRequestGzipRejected() {
+        if (!requestGzipRejected) {
+            requestGzipRejected = true;
+            logger.info("Server akzeptiert keine gzip-Anfragen (HTTP 415) - Anfragen werden unkomprimiert gesendet.", "GeminiCompression");
+        }
+    }
+
+    /**
+     * @param headers Header einer Antwort
+     * @return true, wenn der Körper gzip-kodiert ist
+     */
+    static boolean isGzip(HttpHeaders headers) {
+        return headers.firstValue("Content-Encoding").map(v -> v.trim().equalsIgnoreCase("gzip")).orElse(false);
+    }
+
+    /**
+     * Entpackt einen vollständig gepufferten Körper (z.B. einer Fehlerantwort).
+     *
+     * @param headers Header der Antwort
+     * @param bytes Der empfangene Körper
+     * @return Der entpackte Körper als wiederholt lesbarer Stream
+     */
+    static ByteArrayInputStream decodeBuffered(HttpHeaders headers, byte[] bytes) {
+        if (!isGzip(headers)) return new ByteArrayInputStream(bytes);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new ByteArrayInputStream(in.readAllBytes());
+        } catch (IOException e) {
+            // Nicht entpackbar: Rohdaten liefern, damit die Fehlermeldung erhalten bleibt
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    /**
+     * Bereitet den Request-Körper eines Aufrufs vor und startet dessen Messung.
+     * Der Körper wird komprimiert, sofern {@link #shouldCompress(GeminiRequestBody)} zutrifft.
+     *
+     * @param body Der unkomprimierte Request-Körper
+     * @return Die Messung des Aufrufs mit dem zu sendenden Körper
+     */
+    static CallMetrics startCall(GeminiRequestBody body) {
+        if (!shouldCompress(body)) return new CallMetrics(body, body, 0);
+        long start = System.nanoTime();
+        GeminiRequestBody compressed = body.gzip();
+        return new CallMetrics(body, compressed, System.nanoTime() - start);
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über eingesparte Bytes und Zeit
+     */
+    static synchronized String getStatistics() {
+        return String.format("Compression: %d calls, %d KB raw, %d KB on the wire (%.0f %% saved), %d ms codec time, ~%.0f ms transfer saved",
+            calls, rawBytes / 1024, wireBytes / 1024, rawBytes == 0 ? 0.0 : 100.0 * (rawBytes - wireBytes) / rawBytes,
+            TimeUnit.NANOSECONDS.toMillis(codecNanos), savedMillis);
+    }
+
+    /**
+     * Messung eines einzelnen Aufrufs.
+     */
+    static final class CallMetrics {
+        private final GeminiRequestBody rawRequest;
+        private volatile GeminiRequestBody sentRequest;
+        private long rawResponseBytes, wireResponseBytes, codecNanos;
+        private boolean finished;
+
+        private CallMetrics(GeminiRequestBody rawRequest, GeminiRequestBody sentRequest, long compressNanos) {
+            this.rawRequest = rawRequest;
+            this.sentRequest = sentRequest;
+            this.codecNanos = compressNanos;
+        }
+
+        /**
+         * @return Der zu sendende Request-Körper
+         */
+        GeminiRequestBody requestBody() {
+            return sentRequest;
+        }
+
+        /**
+         * @return true, wenn der Request-Körper komprimiert gesendet wird
+         */
+        boolean isRequestCompressed() {
+            return sentRequest != rawRequest;
+        }
+
+        /**
+         * Der Server hat den komprimierten Körper abgelehnt (HTTP 415): Kompression für die
+         * Sitzung abschalten und den Körper unkomprimiert senden.
+         */
+        void requestGzipRejected() {
+            markRequestGzipRejected();
+            sentRequest = rawRequest;
+        }
+
+        /**
+         * Verpackt den Antwortkörper: entpackt gzip fortlaufend und zählt Bytes vor und
+         * nach dem Entpacken. Beim Schließen des Streams wird die Messung abgeschlossen.
+         *
+         * @param headers Header der Antwort
+         * @param body Der Antwortkörper wie empfangen
+         * @return Der lesbare, ggf. entpackte Körper
+         * @throws IOException Wenn der gzip-Header nicht gelesen werden kann
+         */
+        InputStream decode(HttpHeaders headers, InputStream body) throws IOException {
+            CountingInputStream wire = new CountingInputStream(body);
+            boolean gzip = isGzip(headers);
+            return new CountingInputStream(gzip ? new GZIPInputStream(wire) : wire) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        // Entpackzeit = Lesezeit oberhalb abzüglich Wartezeit auf die Leitung
+                        finish(wire.count, wire.transferNanos, count, gzip ? Math.max(0, nanos - wire.nanos) : 0);
+                    }
+                }
+            };
+        }
+
+        private synchronized void finish(long wireBytesRead, long wireTransferNanos, long decodedBytes, long decompressNanos) {
+            if (finished) return;
+            finished = true;
+            wireResponseBytes = wireBytesRead;
+            rawResponseBytes = decodedBytes;
+            codecNanos += decompressNanos;
+            long rawRequestBytes = rawRequest.length(), wireRequestBytes = sentRequest.length();
+            long wireTotal = wireRequestBytes + wireResponseBytes;
+            long rawTotal = rawRequestBytes + rawResponseBytes;
+            // Durchsatz der Antwort nach dem ersten Byte; daraus die Zeit für die eingesparten Bytes
+            double saved = rawTotal > wireTotal && wireTransferNanos > 0
+                ? (rawTotal - wireTotal) * (wireTransferNanos / 1e6) / wireResponseBytes : 0;
+            synchronized (GeminiCompression.class) {
+                calls++;
+                rawBytes += rawTotal;
+                wireBytes += wireTotal;
+                GeminiCompression.codecNanos += codecNanos;
+                savedMillis += saved;
+            }
+            if (rawTotal > wireTotal) {
+                logger.info(String.format("Kompression: Anfrage %d -> %d Bytes, Antwort %d -> %d Bytes, %.1f ms Packen/Entpacken, ~%.0f ms Übertragung gespart",
+                    rawRequestBytes, wireRequestBytes, rawResponseBytes, wireResponseBytes, codecNanos / 1e6, saved), "GeminiCompression");
+            }
+        }
+    }
+
+    /**
+     * Zählt gelesene Bytes und die mit Lesen verbrachte Zeit, gesamt und ab dem ersten Byte
+     * (ohne die Wartezeit auf den Beginn der Antwort).
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count, nanos, transferNanos;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = in.read();
+            track(System.nanoTime() - start);
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int n = in.read(b, off, len);
+            track(System.nanoTime() - start);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        private void track(long elapsed) {
+            nanos += elapsed;
+            if (count > 0) transferNanos += elapsed;
+        }
+    }
+}
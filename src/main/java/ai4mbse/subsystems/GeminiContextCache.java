@@ -0,0 +1,358 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Verwaltet Gemini-Kontext-Caches (cachedContents) für den statischen Teil der Prompts.
+ *
+ * Anweisungen und Block-Katalog sind für alle Requirements eines Pakets gleich. Sie werden
+ * einmal je Modell, API-Schlüssel und Prompt-Inhalt als Kontext-Cache angelegt; jeder
+ * Aufruf sendet danach nur noch den Verweis und das Requirement. Zum Lebenszyklus gehören:
+ * <ul>
+ *   <li>Verlängern der TTL, sobald weniger als ein Viertel der Laufzeit übrig ist,</li>
+ *   <li>Neuanlage, wenn der Cache lokal abgelaufen ist oder Gemini ihn nicht mehr kennt,</li>
+ *   <li>Löschen aller Caches anderer Pakete, sobald ein neues Paket analysiert wird,</li>
+ *   <li>Löschen der am längsten ungenutzten Caches über der Höchstzahl und beim Beenden.</li>
+ * </ul>
+ * Prompts unter der Mindestgröße für Kontext-Caches sowie Prompts, deren Anlage Gemini
+ * ablehnt, werden unverändert vollständig gesendet.
+ */
+final class GeminiContextCache {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /** Aktiviert Kontext-Caches */
+    private static final boolean CONTEXT_CACHE_ENABLED = ConfigurationService.getBooleanSetting("AI4MBSE_CONTEXT_CACHE", false);
+
+    /** Lebensdauer eines Kontext-Caches in Sekunden */
+    private static final long TTL_SECONDS = Math.max(60, ConfigurationService.getLongSetting("AI4MBSE_CONTEXT_CACHE_TTL_SECONDS", 3600));
+
+    /** Mindestgröße des statischen Teils in Tokens; kleinere Prompts lehnt Gemini ab */
+    private static final long MIN_TOKENS = ConfigurationService.getLongSetting("AI4MBSE_CONTEXT_CACHE_MIN_TOKENS", 1024);
+
+    /** Höchstzahl gleichzeitig gehaltener Kontext-Caches */
+    private static final int MAX_ENTRIES = (int) Math.max(1, ConfigurationService.getLongSetting("AI4MBSE_CONTEXT_CACHE_MAX_ENTRIES", 8));
+
+    /** Anteil der TTL, unter dem die Laufzeit verlängert wird */
+    private static final double REFRESH_FRACTION = 0.25;
+
+    /** Sicherheitsabstand vor dem Ablauf, ab dem ein Cache nicht mehr verwendet wird */
+    private static final long EXPIRY_MARGIN_MILLIS = 30_000;
+
+    /**
+     * Ein angelegter bzw. anzulegender Kontext-Cache.
+     */
+    private static final class Entry {
+        private final String key;
+        private final String model;
+        private final String apiKey;
+        private final String packageFingerprint;
+        private final long prefixTokens;
+
+        /** Name bei Gemini, z.B. "cachedContents/abc123"; null, solange nicht angelegt */
+        private String name;
+
+        /** Lokal angenommener Ablaufzeitpunkt */
+        private long expiresAtMillis;
+
+        private Entry(String key, String model, String apiKey, String packageFingerprint, long prefixTokens) {
+            this.key = key;
+            this.model = model;
+            this.apiKey = apiKey;
+            this.packageFingerprint = packageFingerprint;
+            this.prefixTokens = prefixTokens;
+        }
+    }
+
+    /** Kontext-Caches nach Schlüssel, in Zugriffsreihenfolge (LRU) */
+    private static final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Schlüssel statischer Teile, deren Anlage Gemini abgelehnt hat */
+    private static final Set<String> rejected = ConcurrentHashMap.newKeySet();
+
+    /** Fingerprint des zuletzt analysierten Pakets */
+    private static String currentPackage;
+
+    /** Statistik */
+    private static long calls, created, refreshed, recreated, evicted, fallbacks, tooSmall, cachedTokens;
+
+    private GeminiContextCache() {
+    }
+
+    /**
+     * @return true, wenn Kontext-Caches verwendet werden
+     */
+    static boolean isEnabled() {
+        return CONTEXT_CACHE_ENABLED;
+    }
+
+    /**
+     * Führt generateContent mit gecachtem statischem Teil aus und legt den Kontext-Cache
+     * bei Bedarf an oder verlängert ihn.
+     *
+     * @param model Der Modellname oder null für das konfigurierte Modell
+     * @param apiKey Der API-Schlüssel
+     * @param packageFingerprint Fingerprint des Block-Katalogs des Pakets
+     * @param prefix Der statische Teil des Prompts
+     * @param requirementPart Der je Aufruf gesendete Teil
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null
+     * @param cancellation Abbruch-Token der Allokation
+     * @param deadline Deadline des Aufrufs
+     * @return Die Antwort oder null, wenn der Kontext-Cache nicht verwendet werden kann
+     *         und der vollständige Prompt gesendet werden muss
+     * @throws IOException Bei Netzwerk- oder API-Fehlern des eigentlichen Aufrufs
+     */
+    static String generate(String model, String apiKey, String packageFingerprint, String prefix,
+                           String requirementPart, List<String> allowedSubsystems,
+                           AllocationCancellation cancellation, GeminiDeadline deadline) throws IOException {
+        String modelName = model != null ? model : GeminiClient.getModelName();
+        long prefixTokens = TokenEstimator.estimate(prefix);
+        if (prefixTokens < MIN_TOKENS) {
+            synchronized (GeminiContextCache.class) {
+                tooSmall++;
+            }
+            return null;
+        }
+        String key = AIIntegrationService.sha256Hex(modelName + '\u0000' + apiKey + '\u0000' + prefix);
+        if (rejected.contains(key)) return null;
+
+        Entry entry = acquire(key, modelName, apiKey, packageFingerprint, prefix, prefixTokens);
+        if (entry == null) return null;
+
+        // Ein gleichzeitiges delete() kann den Namen inzwischen entfernt haben
+        String name;
+        synchronized (entry) {
+            name = entry.name;
+        }
+        if (name == null) {
+            synchronized (GeminiContextCache.class) {
+                fallbacks++;
+            }
+            return null;
+        }
+
+        GeminiRequestBody body = GeminiRequestBody.writeCached(name, allowedSubsystems, requirementPart);
+        long estimatedTokens = prefixTokens + TokenEstimator.estimateRequest(requirementPart, allowedSubsystems);
+        try {
+            String text = GeminiClient.callGeminiModel(model, body, prefix + requirementPart, apiKey, estimatedTokens,
+                cancellation, deadline);
+            synchronized (GeminiContextCache.class) {
+                calls++;
+                cachedTokens += prefixTokens;
+            }
+            return text;
+        } catch (GeminiApiException e) {
+            if (!isCacheMissing(e)) throw e;
+            // Gemini kennt den Cache nicht mehr: verwerfen und diesmal vollständig senden
+            logger.info("Kontext-Cache " + name + " nicht mehr verfügbar - vollständiger Prompt wird gesendet.", "GeminiContextCache");
+            synchronized (GeminiContextCache.class) {
+                entries.remove(entry.key, entry);
+                fallbacks++;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Liefert einen gültigen Kontext-Cache für den statischen Teil: legt ihn an, ersetzt
+     * einen abgelaufenen oder verlängert einen bald ablaufenden.
+     *
+     * @return Der Eintrag oder null, wenn der Cache nicht angelegt werden konnte
+     */
+    private static Entry acquire(String key, String model, String apiKey, String packageFingerprint,
+                                 String prefix, long prefixTokens) {
+        List<Entry> victims = new ArrayList<>();
+        Entry entry;
+        synchronized (GeminiContextCache.class) {
+            // Neues Paket: Caches des bisherigen Pakets werden nicht mehr gebraucht
+            if (currentPackage != null && !currentPackage.equals(packageFingerprint)) {
+                for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                    Entry old = it.next();
+                    if (!old.packageFingerprint.equals(packageFingerprint)) {
+                        victims.add(old);
+                        it.remove();
+                    }
+                }
+            }
+            currentPackage = packageFingerprint;
+
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, model, apiKey, packageFingerprint, prefixTokens);
+                entries.put(key, entry);
+                for (Iterator<Entry> it = entries.values().iterator(); entries.size() > MAX_ENTRIES && it.hasNext(); ) {
+                    Entry oldest = it.next();
+                    if (oldest == entry) continue;
+                    victims.add(oldest);
+                    it.remove();
+                }
+            }
+            evicted += victims.size();
+        }
+        for (Entry victim : victims) delete(victim);
+
+        synchronized (entry) {
+            try {
+                long remaining = entry.expiresAtMillis - System.currentTimeMillis();
+                if (entry.name == null || remaining <= EXPIRY_MARGIN_MILLIS) {
+                    if (entry.name != null) {
+                        synchronized (GeminiContextCache.class) {
+                            recreated++;
+                        }
+                    }
+                    create(entry, prefix);
+                } else if (remaining < TTL_SECONDS * 1000 * REFRESH_FRACTION) {
+                    refresh(entry, prefix);
+                }
+                return entry;
+            } catch (GeminiApiException e) {
+                if (e.getStatusCode() == 400) {
+                    // z.B. zu klein oder vom Modell nicht unterstützt: nicht erneut versuchen
+                    rejected.add(key);
+                }
+                logger.warning("Kontext-Cache konnte nicht angelegt werden (HTTP " + e.getStatusCode()
+                    + ") - vollständiger Prompt wird gesendet.", "GeminiContextCache");
+            } catch (IOException e) {
+                logger.warning("Kontext-Cache konnte nicht angelegt werden: " + e.getMessage()
+                    + " - vollständiger Prompt wird gesendet.", "GeminiContextCache");
+            }
+            synchronized (GeminiContextCache.class) {
+                entries.remove(key, entry);
+                fallbacks++;
+            }
+            entry.name = null;
+            return null;
+        }
+    }
+
+    /**
+     * Legt den Kontext-Cache bei Gemini an.
+     */
+    private static void create(Entry entry, String prefix) throws IOException {
+        StringWriter json = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(json)) {
+            writer.beginObject();
+            writer.name("model").value("models/" + entry.model);
+            writer.name("displayName").value("ai4mbse-" + entry.key.substring(0, 12));
+            writer.name("contents").beginArray().beginObject();
+            writer.name("role").value("user");
+            writer.name("parts").beginArray().beginObject().name("text").value(prefix).endObject().endArray();
+            writer.endObject().endArray();
+            writer.name("ttl").value(TTL_SECONDS + "s");
+            writer.endObject();
+        } catch (IOException e) {
+            // Schreiben in einen Speicherpuffer schlägt nicht fehl
+            throw new UncheckedIOException(e);
+        }
+        long now = System.currentTimeMillis();
+        String name = readName(GeminiClient.sendResourceRequest("POST", "cachedContents", json.toString(), entry.apiKey));
+        if (name == null) throw new IOException("Antwort auf cachedContents enthält keinen Namen");
+        entry.name = name;
+        entry.expiresAtMillis = now + TTL_SECONDS * 1000;
+        synchronized (GeminiContextCache.class) {
+            created++;
+        }
+        logger.info("Kontext-Cache " + name + " angelegt (~" + entry.prefixTokens + " Tokens, TTL " + TTL_SECONDS + " s).", "GeminiContextCache");
+    }
+
+    /**
+     * Verlängert die TTL eines Kontext-Caches; kennt Gemini ihn nicht mehr, wird er neu angelegt.
+     */
+    private static void refresh(Entry entry, String prefix) throws IOException {
+        long now = System.currentTimeMillis();
+        try {
+            GeminiClient.sendResourceRequest("PATCH", entry.name + "?updateMask=ttl",
+                "{\"ttl\":\"" + TTL_SECONDS + "s\"}", entry.apiKey);
+            entry.expiresAtMillis = now + TTL_SECONDS * 1000;
+            synchronized (GeminiContextCache.class) {
+                refreshed++;
+            }
+        } catch (GeminiApiException e) {
+            if (!isCacheMissing(e)) throw e;
+            synchronized (GeminiContextCache.class) {
+                recreated++;
+            }
+            create(entry, prefix);
+        }
+    }
+
+    /**
+     * Löscht einen Kontext-Cache bei Gemini; Fehler werden nur protokolliert, da der Cache
+     * spätestens mit Ablauf der TTL verschwindet.
+     */
+    private static void delete(Entry entry) {
+        String name;
+        synchronized (entry) {
+            name = entry.name;
+            entry.name = null;
+        }
+        if (name == null) return;
+        try {
+            GeminiClient.sendResourceRequest("DELETE", name, null, entry.apiKey);
+        } catch (IOException e) {
+            logger.warning("Kontext-Cache " + name + " konnte nicht gelöscht werden: " + e.getMessage(), "GeminiContextCache");
+        }
+    }
+
+    /**
+     * Löscht alle Kontext-Caches, z.B. beim Beenden des Plugins.
+     */
+    static void shutdown() {
+        List<Entry> all;
+        synchronized (GeminiContextCache.class) {
+            all = new ArrayList<>(entries.values());
+            entries.clear();
+            currentPackage = null;
+        }
+        for (Entry entry : all) delete(entry);
+    }
+
+    /**
+     * @return true, wenn die Fehlerantwort einen unbekannten oder abgelaufenen Kontext-Cache meldet
+     */
+    private static boolean isCacheMissing(GeminiApiException e) {
+        int code = e.getStatusCode();
+        return code == 404 || code == 403
+            || (code == 400 && e.getMessage() != null && e.getMessage().toLowerCase().contains("cachedcontent"));
+    }
+
+    /**
+     * Liest das Feld "name" aus der Antwort auf das Anlegen eines Kontext-Caches.
+     */
+    private static String readName(String json) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("name")) return reader.nextString();
+                reader.skipValue();
+            }
+            return null;
+        } catch (IllegalStateException e) {
+            throw new IOException("Ungültige Antwort auf cachedContents: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über Kontext-Caches
+     */
+    static synchronized String getStatistics() {
+        return String.format("Context cache %s (TTL %d s): %d calls, ~%d cached input tokens, %d created, %d refreshed, %d recreated, %d evicted, %d held, %d fallbacks, %d prompts too small",
+            CONTEXT_CACHE_ENABLED ? "on" : "off", TTL_SECONDS, calls, cachedTokens, created, refreshed, recreated,
+            evicted, entries.size(), fallbacks, tooSmall);
+    }
+}
@@ -0,0 +1,259 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline eines Gemini-Aufrufs samt seiner Wiederholungen.
+ *
+ * Die Frist eines einzelnen Versuchs ergibt sich aus dem p99 der zuletzt beobachteten
+ * Latenzen mal einem Sicherheitsfaktor, mindestens aber aus der geschätzten Ausgabegröße
+ * mal der Zeit je Ausgabe-Token, begrenzt auf das Minimum und Maximum des Modus. Über alle
+ * Versuche gilt zusätzlich ein Gesamtbudget: jeder Versuch erhält höchstens die Restzeit,
+ * und eine Wiederholung wird nur gestartet, wenn danach noch ein Versuch Platz hat.
+ * Interaktive Allokationen haben kürzere Fristen als Stapelverarbeitung. Solange zu wenige
+ * Messungen vorliegen, gilt die bisherige feste Frist, mindestens aber das Maximum des Modus.
+ * Gemessen wird je Versuch eine Dauer: bei blockierenden Aufrufen bis zur Antwort, bei
+ * Streams bis zum letzten Ereignis.
+ */
+final class GeminiDeadline {
+
+    /**
+     * Art der Arbeit, für die eigene Fristen gelten.
+     */
+    enum Mode {
+        /** Einzelne Allokation, auf die der Benutzer wartet */
+        INTERACTIVE(20000, 60000),
+        /** Stapelverarbeitung, z.B. gepackte Prompts */
+        BATCH(60000, 180000);
+
+        /** Höchstfrist eines Versuchs in Millisekunden */
+        private final long maxAttemptMillis;
+
+        /** Gesamtbudget über alle Versuche in Millisekunden */
+        private final long totalMillis;
+
+        Mode(long defaultMaxAttemptMillis, long defaultTotalMillis) {
+            this.maxAttemptMillis = ConfigurationService.getLongSetting(
+                "AI4MBSE_DEADLINE_" + name() + "_MAX_MS", defaultMaxAttemptMillis);
+            this.totalMillis = ConfigurationService.getLongSetting(
+                "AI4MBSE_DEADLINE_" + name() + "_TOTAL_MS", defaultTotalMillis);
+        }
+    }
+
+    /** Passt die Fristen an die beobachtete Latenz an; sonst gilt die bisherige feste Frist */
+    private static final boolean ADAPTIVE = ConfigurationService.getBooleanSetting("AI4MBSE_ADAPTIVE_DEADLINES", true);
+
+    /** Feste Frist je Versuch, ohne Gesamtbudget wenn die Anpassung ausgeschaltet ist, sonst bis genug Messungen vorliegen */
+    private static final long FIXED_ATTEMPT_MILLIS = 60000;
+
+    /** Timeout für den Verbindungsaufbau (gilt für den gemeinsamen HTTP-Client) */
+    static final long CONNECT_TIMEOUT_MILLIS = ConfigurationService.getLongSetting("AI4MBSE_CONNECT_TIMEOUT_MS", 10000);
+
+    /** Untergrenze der Frist eines Versuchs */
+    private static final long MIN_ATTEMPT_MILLIS = ConfigurationService.getLongSetting("AI4MBSE_DEADLINE_MIN_MS", 5000);
+
+    /** Sicherheitsfaktor auf das beobachtete p99 */
+    private static final double MULTIPLIER = ConfigurationService.getDoubleSetting("AI4MBSE_DEADLINE_MULTIPLIER", 2.0);
+
+    /** Angenommene Generierungszeit je Ausgabe-Token */
+    private static final double MILLIS_PER_OUTPUT_TOKEN =
+        ConfigurationService.getDoubleSetting("AI4MBSE_DEADLINE_MS_PER_OUTPUT_TOKEN", 10);
+
+    /** Perzentil der Latenz, auf dem die Frist aufsetzt */
+    private static final double PERCENTILE = 99;
+
+    /** Mindestanzahl an Messungen, bevor die Frist angepasst wird */
+    private static final int MIN_SAMPLES = 20;
+
+    /** Geschätzte Ausgabe-Tokens je Kandidat und Höchstzahl an Kandidaten je Requirement */
+    private static final int TOKENS_PER_CANDIDATE = 60, MAX_CANDIDATES = 5;
+
+    /** Überwacht das Lesen von Antwortkörpern, für die der Request-Timeout nicht mehr gilt */
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "AI4MBSE-Deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Statistik je Modus: Deadlines, summierte Versuchsfristen */
+    private static final long[] deadlines = new long[Mode.values().length];
+    private static final long[] attemptMillisSum = new long[Mode.values().length];
+
+    /** Statistik: abgelaufene Versuche, wegen erschöpften Budgets unterlassene Wiederholungen */
+    private static long expiredAttempts, refusedRetries;
+
+    /**
+     * Überwachung eines Versuchs; {@link #close()} beendet sie.
+     */
+    static final class Watch implements AutoCloseable {
+        private final ScheduledFuture<?> timer;
+        private volatile boolean expired;
+
+        private Watch(Runnable onExpiry, long millis) {
+            this.timer = watchdog.schedule(() -> {
+                expired = true;
+                synchronized (GeminiDeadline.class) {
+                    expiredAttempts++;
+                }
+                onExpiry.run();
+            }, millis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @return true, wenn die Frist abgelaufen ist und die Ablauf-Aktion lief
+         */
+        boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public void close() {
+            timer.cancel(false);
+        }
+    }
+
+    private final Mode mode;
+    private final long attemptMillis;
+    private final long deadlineNanos;
+
+    /** Beginn und Ende der Frist des laufenden Versuchs */
+    private volatile long attemptStartNanos, attemptEndNanos;
+
+    private GeminiDeadline(Mode mode, long attemptMillis, long totalMillis) {
+        this.mode = mode;
+        this.attemptMillis = attemptMillis;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(totalMillis);
+        this.attemptStartNanos = System.nanoTime();
+        this.attemptEndNanos = deadlineNanos;
+    }
+
+    /**
+     * Beginnt die Deadline eines Aufrufs.
+     *
+     * @param mode Interaktive oder Stapelverarbeitung
+     * @param expectedOutputTokens Geschätzte Ausgabe-Tokens, siehe {@link #expectedOutputTokens}
+     * @return Die Deadline
+     */
+    static GeminiDeadline start(Mode mode, long expectedOutputTokens) {
+        LatencyHistogram latencies = GeminiClient.latencies;
+        long attempt;
+        long total;
+        if (!ADAPTIVE) {
+            attempt = FIXED_ATTEMPT_MILLIS;
+            total = TimeUnit.DAYS.toMillis(1);
+        } else {
+            attempt = Math.max(FIXED_ATTEMPT_MILLIS, mode.maxAttemptMillis);
+            if (latencies.getSampleCount() >= MIN_SAMPLES) {
+                long observed = (long) (latencies.percentile(PERCENTILE) * MULTIPLIER);
+                long generation = (long) (expectedOutputTokens * MILLIS_PER_OUTPUT_TOKEN);
+                attempt = Math.min(mode.maxAttemptMillis, Math.max(MIN_ATTEMPT_MILLIS, Math.max(observed, generation)));
+            }
+            total = Math.max(attempt, mode.totalMillis);
+        }
+        synchronized (GeminiDeadline.class) {
+            deadlines[mode.ordinal()]++;
+            attemptMillisSum[mode.ordinal()] += attempt;
+        }
+        return new GeminiDeadline(mode, attempt, total);
+    }
+
+    /**
+     * Schätzt die Ausgabegröße einer Allokation.
+     *
+     * @param requirements Anzahl der Requirements im Prompt
+     * @param subsystems Anzahl der Blöcke im Katalog
+     * @return Geschätzte Ausgabe-Tokens
+     */
+    static long expectedOutputTokens(int requirements, int subsystems) {
+        return (long) requirements * Math.max(1, Math.min(MAX_CANDIDATES, subsystems)) * TOKENS_PER_CANDIDATE;
+    }
+
+    /**
+     * @return Der Modus der Deadline
+     */
+    Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return Verbleibende Zeit des Gesamtbudgets in Millisekunden (mindestens 0)
+     */
+    long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Beginnt einen Versuch, z.B. beim Senden eines HTTP-Requests.
+     *
+     * @return Frist des Versuchs: die Versuchsfrist, höchstens die Restzeit
+     */
+    Duration beginAttempt() {
+        Duration timeout = Duration.ofMillis(Math.max(1, Math.min(attemptMillis, remainingMillis())));
+        attemptStartNanos = System.nanoTime();
+        attemptEndNanos = attemptStartNanos + timeout.toNanos();
+        return timeout;
+    }
+
+    /**
+     * @return Seit Beginn des laufenden Versuchs vergangene Zeit in Millisekunden
+     */
+    long attemptElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - attemptStartNanos);
+    }
+
+    /**
+     * Prüft, ob nach einer Pause noch ein sinnvoller Versuch in das Gesamtbudget passt.
+     *
+     * @param delayMillis Die Pause vor der Wiederholung
+     * @return true, wenn die Wiederholung gestartet werden darf
+     */
+    boolean allowsRetry(long delayMillis) {
+        boolean allowed = remainingMillis() - delayMillis >= Math.min(MIN_ATTEMPT_MILLIS, attemptMillis);
+        if (!allowed) {
+            synchronized (GeminiDeadline.class) {
+                refusedRetries++;
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * @return Längste Pause vor einer Wiederholung, nach der noch ein Versuch in das Budget passt
+     */
+    long maxRetryDelayMillis() {
+        return Math.max(0, remainingMillis() - Math.min(MIN_ATTEMPT_MILLIS, attemptMillis));
+    }
+
+    /**
+     * Überwacht den laufenden Versuch über den Request-Timeout hinaus, der nur bis zum
+     * Eintreffen der Header gilt, z.B. beim Lesen des Antwortkörpers oder eines Streams.
+     *
+     * @param onExpiry Aktion bei Ablauf der Versuchsfrist, z.B. das Schließen des Antwort-Streams
+     * @return Die Überwachung
+     */
+    Watch watch(Runnable onExpiry) {
+        return new Watch(onExpiry, Math.max(0, TimeUnit.NANOSECONDS.toMillis(attemptEndNanos - System.nanoTime())));
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über Fristen und abgelaufene Versuche
+     */
+    static synchronized String getStatistics() {
+        StringBuilder report = new StringBuilder(String.format("Deadlines %s (connect %d ms):",
+            ADAPTIVE ? "adaptive" : "fixed", CONNECT_TIMEOUT_MILLIS));
+        for (Mode mode : Mode.values()) {
+            long count = deadlines[mode.ordinal()];
+            report.append(String.format(" %s %d calls avg %d ms (max %d ms, total %d ms);",
+                mode.name().toLowerCase(java.util.Locale.ROOT), count,
+                count == 0 ? 0 : attemptMillisSum[mode.ordinal()] / count, mode.maxAttemptMillis, mode.totalMillis));
+        }
+        return report.append(String.format(" %d attempts expired, %d retries refused by budget",
+            expiredAttempts, refusedRetries)).toString();
+    }
+}
@@ -0,0 +1,201 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Hedging für nicht gestreamte Gemini-Aufrufe.
+ *
+ * Liegt nach dem konfigurierten Perzentil der letzten Latenzen noch keine Antwort vor,
+ * wird eine zweite, identische Anfrage gesendet. Die erste erfolgreiche Antwort gewinnt,
+ * die andere Anfrage wird abgebrochen. Ein Budget begrenzt die Zusatzlast auf einen Anteil
+ * der Erstanfragen; zusätzlich muss der Rate-Limiter sofort freie Kapazität haben.
+ */
+class GeminiHedgingPolicy {
+
+    /** Aktiviert das Hedging */
+    private static final boolean HEDGING_ENABLED = ConfigurationService.getBooleanSetting("AI4MBSE_HEDGING", false);
+
+    /** Perzentil der letzten Latenzen, nach dem die zweite Anfrage gesendet wird */
+    private static final double HEDGE_PERCENTILE = ConfigurationService.getDoubleSetting("AI4MBSE_HEDGE_PERCENTILE", 95);
+
+    /** Untergrenze der Hedge-Verzögerung in Millisekunden */
+    private static final long MIN_HEDGE_DELAY_MILLIS = ConfigurationService.getLongSetting("AI4MBSE_HEDGE_MIN_DELAY_MS", 1000);
+
+    /** Maximale Zusatzlast als Anteil der Erstanfragen */
+    private static final double MAX_EXTRA_LOAD = ConfigurationService.getDoubleSetting("AI4MBSE_HEDGE_MAX_EXTRA_LOAD", 0.1);
+
+    /** Mindestanzahl an Messungen, bevor das Perzentil als Verzögerung dient */
+    private static final int MIN_SAMPLES = 20;
+
+    /** Obergrenze des angesparten Hedge-Budgets */
+    private static final double BUDGET_MAX = 5;
+
+    /** Latenzen der gesendeten Anfragen */
+    private final LatencyHistogram latencies;
+
+    /** Verfügbares Hedge-Budget */
+    private double budget;
+
+    /** Statistik: Erstanfragen, gesendete Hedges, gewonnene Hedges, mangels Budget ausgelassene Hedges */
+    private long requests, hedgesSent, hedgeWins, hedgesSkipped;
+
+    /**
+     * @param latencies Gemeinsames Histogramm der Gemini-Latenzen
+     */
+    GeminiHedgingPolicy(LatencyHistogram latencies) {
+        this.latencies = latencies;
+    }
+
+    /**
+     * Sendet einen Request, bei Bedarf mit einer zweiten, verzögerten Kopie.
+     *
+     * @param client Der HTTP-Transport
+     * @param request Der versandfertige Request
+     * @param bodyHandler Handler für den Antwortkörper
+     * @param reserveCapacity Reserviert Kontingent für die zweite Anfrage ohne zu warten
+     * @return Die erste erfolgreiche Antwort
+     * @throws IOException Wenn alle gesendeten Anfragen fehlschlagen
+     * @throws InterruptedException Wenn der wartende Thread unterbrochen wird
+     */
+    <T> HttpResponse<T> send(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+                             BooleanSupplier reserveCapacity) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<T>> primary = client.sendAsync(request, bodyHandler);
+        CompletableFuture<HttpResponse<T>> hedge = null;
+        try {
+            HttpResponse<T> response = null;
+            long delay = hedgeDelayMillis();
+            if (delay >= 0) {
+                try {
+                    response = primary.get(delay, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (reserveHedge() && reserveCapacity.getAsBoolean()) {
+                        hedge = client.sendAsync(request, bodyHandler);
+                        synchronized (this) {
+                            hedgesSent++;
+                        }
+                    }
+                }
+            }
+            if (response == null) {
+                response = hedge == null ? primary.get() : firstSuccess(primary, hedge).get();
+            }
+            latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (hedge != null && response.statusCode() < 400 && hedge.isDone() && !hedge.isCompletedExceptionally()
+                    && hedge.join() == response) {
+                synchronized (this) {
+                    hedgeWins++;
+                }
+            }
+            return response;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Gemini-Aufruf fehlgeschlagen: " + cause.getMessage(), cause);
+        } finally {
+            // Die unterlegene bzw. bei Unterbrechung jede offene Anfrage abbrechen
+            primary.cancel(true);
+            if (hedge != null) hedge.cancel(true);
+        }
+    }
+
+    /**
+     * Verzögerung bis zur zweiten Anfrage oder -1, wenn nicht gehedged wird.
+     */
+    private long hedgeDelayMillis() {
+        synchronized (this) {
+            requests++;
+            budget = Math.min(BUDGET_MAX, budget + MAX_EXTRA_LOAD);
+        }
+        if (!HEDGING_ENABLED || latencies.getSampleCount() < MIN_SAMPLES) return -1;
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, latencies.percentile(HEDGE_PERCENTILE));
+    }
+
+    /**
+     * Entnimmt dem Hedge-Budget eine Anfrage, sofern vorhanden.
+     */
+    private synchronized boolean reserveHedge() {
+        if (budget < 1) {
+            hedgesSkipped++;
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+
+    /**
+     * Liefert die erste erfolgreiche Antwort (Status unter 400). Eine Fehlerantwort wie 429
+     * oder 503 beendet das Rennen nicht, da die andere Kopie noch gesund sein kann; erst
+     * wenn beide ohne Erfolg fertig sind, gilt die letzte Fehlerantwort bzw. der letzte Fehler.
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> firstSuccess(CompletableFuture<HttpResponse<T>> a,
+                                                                       CompletableFuture<HttpResponse<T>> b) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        List<HttpResponse<T>> errorResponses = new ArrayList<>(2);
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<HttpResponse<T>> future : List.of(a, b)) {
+            future.whenComplete((response, error) -> {
+                synchronized (result) {
+                    if (error == null && response.statusCode() < 400) {
+                        if (!result.complete(response)) discard(response);
+                        // Zurückgehaltene Fehlerantworten werden nicht mehr gebraucht
+                        errorResponses.forEach(GeminiHedgingPolicy::discard);
+                        errorResponses.clear();
+                        return;
+                    }
+                    if (result.isDone()) {
+                        if (response != null) discard(response);
+                        return;
+                    }
+                    if (response != null) errorResponses.add(response);
+                    if (failures.incrementAndGet() < 2) return;
+                    if (errorResponses.isEmpty()) {
+                        result.completeExceptionally(error);
+                        return;
+                    }
+                    // Die letzte Fehlerantwort liefern, damit der Aufrufer ihren Status auswertet
+                    HttpResponse<T> last = errorResponses.remove(errorResponses.size() - 1);
+                    errorResponses.forEach(GeminiHedgingPolicy::discard);
+                    errorResponses.clear();
+                    result.complete(last);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Schließt den Körper einer unterlegenen Antwort, damit ihr Stream freigegeben wird.
+     */
+    private static void discard(HttpResponse<?> response) {
+        if (response.body() instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) response.body()).close();
+            } catch (Exception ignored) {
+                // Unterlegene Antwort wird ohnehin verworfen
+            }
+        }
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über Hedges, Gewinne und Latenz-Perzentile
+     */
+    synchronized String getStatistics() {
+        return String.format("Hedging %s: %d requests, %d hedges sent (%d won), %d skipped by budget, latency %s",
+            HEDGING_ENABLED ? "on" : "off", requests, hedgesSent, hedgeWins, hedgesSkipped, latencies.getSummary());
+    }
+}
@@ -0,0 +1,246 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+import ai4mbse.model.AllocationCandidate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Leitet Allokationen über gestufte Gemini-Modelle.
+ *
+ * Jede Allokation geht zuerst an das günstigste, schnellste Modell der Liste
+ * AI4MBSE_MODEL_TIERS. Liegt die Konfidenz des besten Kandidaten oder ihr Abstand zum
+ * zweitbesten unter der jeweiligen Schwelle, wird die Allokation an das nächststärkere
+ * Modell eskaliert; das letzte Modell antwortet immer abschließend. Je Stufe werden
+ * Latenz, Eskalationsrate und die geschätzten Kosten aus Eingabe- und erwarteten
+ * Ausgabe-Tokens erfasst; bei den Pro-Modellen dominiert der Ausgabepreis.
+ */
+class GeminiModelRouter {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /**
+     * Ein einzelner Aufruf auf einer Modellstufe.
+     */
+    @FunctionalInterface
+    interface TierCall<T> {
+        T call(String model) throws IOException;
+    }
+
+    /** Aktiviert das gestufte Routing */
+    private static final boolean ROUTER_ENABLED = ConfigurationService.getBooleanSetting("AI4MBSE_MODEL_ROUTER", false);
+
+    /**
+     * Modellstufen vom günstigsten zum stärksten, je "Modell:Eingabepreis:Ausgabepreis" in USD
+     * pro Million Tokens; ohne Ausgabepreis gilt der Eingabepreis auch für die Ausgabe
+     */
+    private static final String MODEL_TIERS = ConfigurationService.getSetting("AI4MBSE_MODEL_TIERS",
+        "gemini-2.5-flash-lite:0.10:0.40,gemini-2.5-flash:0.30:2.50");
+
+    /** Mindest-Konfidenz des besten Kandidaten, unter der eskaliert wird */
+    private static final double MIN_CONFIDENCE = ConfigurationService.getDoubleSetting("AI4MBSE_ESCALATION_MIN_CONFIDENCE", 0.6);
+
+    /** Mindestabstand zwischen bestem und zweitbestem Kandidaten, unter dem eskaliert wird */
+    private static final double MIN_MARGIN = ConfigurationService.getDoubleSetting("AI4MBSE_ESCALATION_MIN_MARGIN", 0.15);
+
+    private static final GeminiModelRouter instance = new GeminiModelRouter(MODEL_TIERS);
+
+    /**
+     * Eine Modellstufe mit ihrer Statistik.
+     */
+    private static final class Tier {
+        private final String model;
+        private final double inputPricePerMillion, outputPricePerMillion;
+        private final LatencyHistogram latencies = new LatencyHistogram(200);
+        private long calls, escalations, inputTokens, outputTokens;
+
+        private Tier(String model, double inputPricePerMillion, double outputPricePerMillion) {
+            this.model = model;
+            this.inputPricePerMillion = inputPricePerMillion;
+            this.outputPricePerMillion = outputPricePerMillion;
+        }
+
+        private double cost(long inputTokens, long outputTokens) {
+            return (inputTokens * inputPricePerMillion + outputTokens * outputPricePerMillion) / 1_000_000.0;
+        }
+    }
+
+    /** Die Modellstufen vom günstigsten zum stärksten */
+    private final List<Tier> tiers = new ArrayList<>();
+
+    /** Statistik: geroutete Aufrufe */
+    private long routedCalls;
+
+    /** Kosten, wenn jede Allokation direkt an die stärkste Stufe gegangen wäre */
+    private double baselineCost;
+
+    private GeminiModelRouter(String modelTiers) {
+        for (String entry : modelTiers.split(",")) {
+            String[] fields = entry.trim().split(":");
+            if (fields[0].trim().isEmpty()) continue;
+            double inputPrice = 0, outputPrice = 0;
+            try {
+                if (fields.length > 1) inputPrice = outputPrice = Double.parseDouble(fields[1].trim());
+                if (fields.length > 2) outputPrice = Double.parseDouble(fields[2].trim());
+            } catch (NumberFormatException e) {
+                logger.warning("Ungültiger Preis in AI4MBSE_MODEL_TIERS: '" + entry.trim() + "' - Preis 0 angenommen.", "GeminiModelRouter");
+                inputPrice = outputPrice = 0;
+            }
+            tiers.add(new Tier(fields[0].trim(), inputPrice, outputPrice));
+        }
+    }
+
+    /**
+     * @return Der gemeinsame Router
+     */
+    static GeminiModelRouter getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return true, wenn das Routing aktiv ist und mindestens zwei Stufen konfiguriert sind
+     */
+    boolean isEnabled() {
+        return ROUTER_ENABLED && tiers.size() > 1;
+    }
+
+    /**
+     * @param tier Die Stufe (0 = günstigste)
+     * @return Der Modellname der Stufe
+     */
+    String getModel(int tier) {
+        return tiers.get(tier).model;
+    }
+
+    /**
+     * @return Beschreibung von Stufen und Schwellen für den Cache-Schlüssel, da das
+     *         Ergebnis vom Routing abhängt
+     */
+    String getDescriptor() {
+        StringBuilder descriptor = new StringBuilder("router:");
+        for (Tier tier : tiers) descriptor.append(tier.model).append('>');
+        return descriptor.append(MIN_CONFIDENCE).append('/').append(MIN_MARGIN).toString();
+    }
+
+    /**
+     * Führt eine Allokation ab einer Stufe aus und eskaliert, bis das Ergebnis sicher
+     * genug ist oder die stärkste Stufe geantwortet hat. Fehler einer Stufe werden
+     * weitergegeben und nicht eskaliert.
+     *
+     * @param firstTier Die erste zu verwendende Stufe
+     * @param estimatedTokens Die geschätzten Eingabe-Tokens eines Aufrufs
+     * @param expectedOutputTokens Die erwarteten Ausgabe-Tokens eines Aufrufs
+     * @param call Der Aufruf für ein Modell
+     * @param candidatesOf Liefert die validierten Kandidaten eines Ergebnisses
+     * @return Das Ergebnis der letzten ausgeführten Stufe
+     * @throws IOException Bei Netzwerk- oder API-Fehlern
+     */
+    <T> T route(int firstTier, long estimatedTokens, long expectedOutputTokens, TierCall<T> call,
+                Function<T, List<AllocationCandidate>> candidatesOf) throws IOException {
+        if (firstTier == 0) recordBaseline(estimatedTokens, expectedOutputTokens);
+        for (int tier = firstTier; ; tier++) {
+            long start = System.nanoTime();
+            T result = call.call(getModel(tier));
+            recordCall(tier, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), estimatedTokens,
+                expectedOutputTokens);
+            if (tier == tiers.size() - 1) return result;
+            String reason = escalationReason(candidatesOf.apply(result));
+            if (reason == null) return result;
+            recordEscalation(tier, reason);
+        }
+    }
+
+    /**
+     * Prüft, ob das Ergebnis einer Stufe eskaliert werden muss.
+     *
+     * @param candidates Die validierten Kandidaten
+     * @return Der Grund der Eskalation oder null, wenn das Ergebnis sicher genug ist
+     */
+    String escalationReason(List<AllocationCandidate> candidates) {
+        if (candidates == null || candidates.isEmpty()) return "keine gültigen Kandidaten";
+        double top = 0, second = 0;
+        for (AllocationCandidate candidate : candidates) {
+            double confidence = candidate.getConfidence();
+            if (confidence > top) {
+                second = top;
+                top = confidence;
+            } else if (confidence > second) {
+                second = confidence;
+            }
+        }
+        if (top < MIN_CONFIDENCE) {
+            return String.format("beste Konfidenz %.2f < %.2f", top, MIN_CONFIDENCE);
+        }
+        if (top - second < MIN_MARGIN) {
+            return String.format("Abstand der besten Kandidaten %.2f < %.2f", top - second, MIN_MARGIN);
+        }
+        return null;
+    }
+
+    /**
+     * Erfasst einen neu gerouteten Aufruf und seine Kosten auf der stärksten Stufe als
+     * Vergleichswert.
+     *
+     * @param estimatedTokens Die geschätzten Eingabe-Tokens
+     * @param expectedOutputTokens Die erwarteten Ausgabe-Tokens
+     */
+    synchronized void recordBaseline(long estimatedTokens, long expectedOutputTokens) {
+        routedCalls++;
+        baselineCost += tiers.get(tiers.size() - 1).cost(estimatedTokens, expectedOutputTokens);
+    }
+
+    /**
+     * Erfasst einen Aufruf auf einer Stufe, z.B. einen gepackten Aufruf außerhalb von
+     * {@link #route}.
+     *
+     * @param tier Die Stufe
+     * @param millis Latenz in Millisekunden
+     * @param estimatedTokens Die geschätzten Eingabe-Tokens
+     * @param expectedOutputTokens Die erwarteten Ausgabe-Tokens
+     */
+    void recordCall(int tier, long millis, long estimatedTokens, long expectedOutputTokens) {
+        Tier stats = tiers.get(tier);
+        stats.latencies.record(millis);
+        synchronized (this) {
+            stats.calls++;
+            stats.inputTokens += estimatedTokens;
+            stats.outputTokens += expectedOutputTokens;
+        }
+    }
+
+    /**
+     * Erfasst die Eskalation einer Allokation an die nächste Stufe.
+     *
+     * @param tier Die Stufe, deren Ergebnis verworfen wurde
+     * @param reason Der Grund der Eskalation
+     */
+    void recordEscalation(int tier, String reason) {
+        synchronized (this) {
+            tiers.get(tier).escalations++;
+        }
+        logger.info("Ergebnis von " + getModel(tier) + " unsicher (" + reason + ") - Eskalation an " + getModel(tier + 1) + ".", "GeminiModelRouter");
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht mit Latenz, Eskalationsrate und Kosten je Stufe
+     */
+    synchronized String getStatistics() {
+        StringBuilder report = new StringBuilder(String.format("Model router %s: %d routed calls, thresholds confidence %.2f / margin %.2f",
+            isEnabled() ? "on" : "off", routedCalls, MIN_CONFIDENCE, MIN_MARGIN));
+        double totalCost = 0;
+        for (Tier tier : tiers) {
+            double cost = tier.cost(tier.inputTokens, tier.outputTokens);
+            totalCost += cost;
+            report.append(String.format("%n  %s: %d calls, %d escalated (%.0f %%), ~%d input / ~%d output tokens, ~$%.4f, %s",
+                tier.model, tier.calls, tier.escalations, tier.calls == 0 ? 0.0 : 100.0 * tier.escalations / tier.calls,
+                tier.inputTokens, tier.outputTokens, cost, tier.latencies.getSummary()));
+        }
+        report.append(String.format("%n  Estimated cost ~$%.4f vs ~$%.4f with the strongest tier only", totalCost, baselineCost));
+        return report.toString();
+    }
+}
@@ -0,0 +1,235 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptiver Token-Bucket-Limiter für Gemini-Aufrufe, je API-Schlüssel eine Instanz.
+ *
+ * Zwei Buckets begrenzen Anfragen pro Minute (RPM) und geschätzte Tokens pro Minute (TPM).
+ * Aufrufer warten in {@link #acquire(long)}, bis beide Budgets reichen, statt mit einem
+ * 429-Fehler abzubrechen. Meldet der Server trotzdem 429/503, halbiert
+ * {@link #onThrottled(long)} die effektive Rate und pausiert alle Aufrufer bis zum
+ * Retry-After-Zeitpunkt; jeder erfolgreiche Aufruf hebt die Rate schrittweise wieder an.
+ */
+class GeminiRateLimiter {
+
+    /** Konfiguriertes Anfrage-Budget pro Minute */
+    private static final double REQUESTS_PER_MINUTE =
+        Math.max(1, ConfigurationService.getDoubleSetting("AI4MBSE_RATE_LIMIT_RPM", 10));
+
+    /** Konfiguriertes Token-Budget pro Minute */
+    private static final double TOKENS_PER_MINUTE =
+        Math.max(1, ConfigurationService.getDoubleSetting("AI4MBSE_RATE_LIMIT_TPM", 250000));
+
+    /** Zeitraum in Sekunden, dessen Budget maximal als Burst angespart werden kann */
+    private static final double BURST_SECONDS = 10;
+
+    /** Untergrenze des Drosselungsfaktors nach wiederholten 429-Antworten */
+    private static final double MIN_RATE_FACTOR = 0.1;
+
+    /** Schrittweite, um die der Drosselungsfaktor pro Erfolg wieder steigt */
+    private static final double RECOVERY_STEP = 0.05;
+
+    /** Obergrenze der Pause ohne Retry-After-Angabe in Millisekunden */
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    /** Limiter je API-Schlüssel */
+    private static final Map<String, GeminiRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    /** Aktueller Drosselungsfaktor (1.0 = volles konfiguriertes Budget) */
+    private double rateFactor = 1.0;
+
+    /** Verfügbare Anfragen im Bucket */
+    private double requestBucket;
+
+    /** Verfügbare Tokens im Bucket (negativ = Schuld eines großen Prompts) */
+    private double tokenBucket;
+
+    /** Zeitpunkt der letzten Auffüllung in Nanosekunden */
+    private long lastRefillNanos = System.nanoTime();
+
+    /** Bis zu diesem Zeitpunkt sind alle Aufrufe pausiert (nach 429/503) */
+    private long pausedUntilNanos = lastRefillNanos;
+
+    /** Anzahl aufeinanderfolgender Drosselungen ohne Erfolg dazwischen */
+    private int consecutiveThrottles;
+
+    /** Statistik: erteilte Freigaben */
+    private long grantedCalls;
+
+    /** Statistik: empfangene 429/503-Antworten */
+    private long throttledResponses;
+
+    /** Statistik: summierte Wartezeit aller Aufrufer in Millisekunden */
+    private long totalWaitMillis;
+
+    private GeminiRateLimiter() {
+        this.requestBucket = burstCapacity(REQUESTS_PER_MINUTE);
+        this.tokenBucket = burstCapacity(TOKENS_PER_MINUTE);
+    }
+
+    /**
+     * @param apiKey Der API-Schlüssel, dessen Kontingent begrenzt wird
+     * @return Der gemeinsame Limiter für diesen Schlüssel
+     */
+    static GeminiRateLimiter forApiKey(String apiKey) {
+        return limiters.computeIfAbsent(apiKey == null ? "" : apiKey, k -> new GeminiRateLimiter());
+    }
+
+    /**
+     * Token-Schätzung für einen Prompt über den {@link TokenEstimator}.
+     *
+     * @param prompt Der Text-Prompt
+     * @return Geschätzte Anzahl an Eingabe-Tokens
+     */
+    static long estimateTokens(String prompt) {
+        return TokenEstimator.estimate(prompt);
+    }
+
+    /**
+     * Blockiert, bis Anfrage- und Token-Budget für einen Aufruf reichen, und verbraucht sie.
+     * Prompts, die größer als der Burst sind, werden zugelassen, sobald der Bucket voll ist,
+     * und belasten ihn anschließend mit einer Schuld.
+     *
+     * @param estimatedTokens Geschätzte Tokens des Aufrufs
+     * @throws InterruptedException Wenn der wartende Thread unterbrochen wird
+     */
+    synchronized void acquire(long estimatedTokens) throws InterruptedException {
+        long start = System.nanoTime();
+        while (true) {
+            long now = System.nanoTime();
+            refill(now);
+            double requiredTokens = Math.min(estimatedTokens, burstCapacity(TOKENS_PER_MINUTE));
+
+            long waitNanos = pausedUntilNanos - now;
+            if (waitNanos <= 0) {
+                waitNanos = Math.max(nanosUntil(requestBucket, 1, REQUESTS_PER_MINUTE),
+                                     nanosUntil(tokenBucket, requiredTokens, TOKENS_PER_MINUTE));
+            }
+            if (waitNanos <= 0) {
+                requestBucket -= 1;
+                tokenBucket -= estimatedTokens;
+                grantedCalls++;
+                totalWaitMillis += TimeUnit.NANOSECONDS.toMillis(now - start);
+                return;
+            }
+            // wait() gibt den Monitor frei, damit Rückmeldungen anderer Aufrufe die Rate anpassen können
+            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        }
+    }
+
+    /**
+     * Verbraucht Budget für einen Aufruf nur, wenn es sofort verfügbar ist.
+     * Für optionale Zusatzaufrufe (z.B. Hedging), die nicht warten sollen.
+     *
+     * @param estimatedTokens Geschätzte Tokens des Aufrufs
+     * @return true, wenn der Aufruf sofort erfolgen darf
+     */
+    synchronized boolean tryAcquire(long estimatedTokens) {
+        long now = System.nanoTime();
+        refill(now);
+        if (pausedUntilNanos - now > 0 || requestBucket < 1 || tokenBucket < estimatedTokens) {
+            return false;
+        }
+        requestBucket -= 1;
+        tokenBucket -= estimatedTokens;
+        grantedCalls++;
+        return true;
+    }
+
+    /**
+     * Schätzt, wie viele Aufrufe sofort ohne Warten zugelassen würden, z.B. um parallele
+     * Zusatzaufrufe an das verfügbare Kontingent anzupassen. Verbraucht kein Budget.
+     *
+     * @param estimatedTokens Geschätzte Tokens eines Aufrufs
+     * @return Anzahl der sofort möglichen Aufrufe (0 während einer Pause nach 429/503)
+     */
+    synchronized int availableCalls(long estimatedTokens) {
+        long now = System.nanoTime();
+        refill(now);
+        if (pausedUntilNanos - now > 0) return 0;
+        double byTokens = estimatedTokens <= 0 ? requestBucket : tokenBucket / estimatedTokens;
+        return (int) Math.max(0, Math.floor(Math.min(requestBucket, byTokens)));
+    }
+
+    /**
+     * Meldet einen erfolgreichen Aufruf und hebt die gedrosselte Rate schrittweise wieder an.
+     */
+    synchronized void onSuccess() {
+        consecutiveThrottles = 0;
+        rateFactor = Math.min(1.0, rateFactor + RECOVERY_STEP);
+    }
+
+    /**
+     * Meldet eine 429/503-Antwort. Halbiert die Rate, leert den Anfrage-Bucket und pausiert
+     * alle Aufrufer bis Retry-After bzw. einem exponentiell wachsenden Standardintervall.
+     *
+     * @param retryAfterMillis Vom Server angegebene Wartezeit oder -1, falls keine vorliegt
+     * @return Die tatsächlich verhängte Pause in Millisekunden
+     */
+    synchronized long onThrottled(long retryAfterMillis) {
+        throttledResponses++;
+        consecutiveThrottles++;
+        refill(System.nanoTime());
+        rateFactor = Math.max(MIN_RATE_FACTOR, rateFactor * 0.5);
+        requestBucket = Math.min(requestBucket, 0);
+
+        long pauseMillis = retryAfterMillis >= 0 ? retryAfterMillis
+            : Math.min(MAX_BACKOFF_MILLIS, 1000L << Math.min(consecutiveThrottles - 1, 6));
+        pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+        notifyAll();
+        return pauseMillis;
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über Freigaben, Drosselungen und Wartezeit
+     */
+    synchronized String getStatistics() {
+        return String.format("Rate limiter: %d calls, %d throttled (429/503), %d ms queued, rate %.0f %% of %.0f RPM / %.0f TPM",
+            grantedCalls, throttledResponses, totalWaitMillis, 100 * rateFactor, REQUESTS_PER_MINUTE, TOKENS_PER_MINUTE);
+    }
+
+    /**
+     * @return Statistik aller Limiter (ein Eintrag je API-Schlüssel)
+     */
+    static String getAllStatistics() {
+        StringBuilder sb = new StringBuilder();
+        for (GeminiRateLimiter limiter : limiters.values()) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(limiter.getStatistics());
+        }
+        return sb.length() > 0 ? sb.toString() : "Rate limiter: no calls";
+    }
+
+    /**
+     * Füllt beide Buckets gemäß verstrichener Zeit und aktuellem Drosselungsfaktor auf.
+     */
+    private void refill(long now) {
+        double elapsedMinutes = (now - lastRefillNanos) / 60e9;
+        lastRefillNanos = now;
+        if (elapsedMinutes <= 0) return;
+        requestBucket = Math.min(burstCapacity(REQUESTS_PER_MINUTE),
+            requestBucket + elapsedMinutes * REQUESTS_PER_MINUTE * rateFactor);
+        tokenBucket = Math.min(burstCapacity(TOKENS_PER_MINUTE),
+            tokenBucket + elapsedMinutes * TOKENS_PER_MINUTE * rateFactor);
+    }
+
+    /**
+     * Berechnet die Wartezeit, bis ein Bucket den benötigten Stand erreicht.
+     */
+    private long nanosUntil(double available, double required, double perMinute) {
+        if (available >= required) return 0;
+        return (long) Math.ceil((required - available) / (perMinute * rateFactor) * 60e9);
+    }
+
+    /**
+     * Burst-Kapazität eines Buckets; mindestens eine Einheit, damit jeder Aufruf durchkommt.
+     */
+    private double burstCapacity(double perMinute) {
+        return Math.max(1, perMinute * rateFactor * BURST_SECONDS / 60);
+    }
+}
@@ -0,0 +1,252 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialisierter Request-Körper eines generateContent-Aufrufs.
+ *
+ * Der Payload wird mit einem {@link JsonWriter} direkt als UTF-8 in einen Byte-Puffer
+ * geschrieben: Prompt-Teile und Block-Namen werden an Ort und Stelle escaped, ohne
+ * JsonObject-Baum und ohne Zwischen-String. Der Puffer wird einmal erzeugt und von
+ * Wiederholungen und Hedges gemeinsam gesendet.
+ *
+ * Für die Fehlersuche kann der zuletzt gesendete Payload für den Diagnose-Bericht
+ * mitgeschnitten werden; das ist nur mit AI4MBSE_DEBUG_CAPTURE_BYTES &gt; 0 aktiv und auf
+ * diese Länge gekürzt.
+ */
+final class GeminiRequestBody {
+
+    /** Maximale Länge des Debug-Mitschnitts in Bytes (0 = aus) */
+    private static final int DEBUG_CAPTURE_BYTES =
+        (int) Math.max(0, ConfigurationService.getLongSetting("AI4MBSE_DEBUG_CAPTURE_BYTES", 0));
+
+    /** Gekürzter Mitschnitt des zuletzt erzeugten Payloads oder null */
+    private static volatile String lastCapturedPayload;
+
+    /** Puffer mit dem serialisierten Payload */
+    private final byte[] buffer;
+
+    /** Anzahl gültiger Bytes im Puffer */
+    private final int length;
+
+    private GeminiRequestBody(byte[] buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /**
+     * Serialisiert den Payload für einen Prompt.
+     *
+     * Mit einer Liste erlaubter Subsysteme wird der strukturierte Ausgabemodus angefordert:
+     * Gemini liefert dann reines JSON gemäß Antwortschema, ohne Markdown-Umrahmung und nur
+     * mit exakten Block-Namen.
+     *
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null
+     * @param promptParts Die Prompt-Teile; jeder wird als eigener Text-Part geschrieben
+     * @return Der serialisierte Request-Körper
+     */
+    static GeminiRequestBody write(List<String> allowedSubsystems, String... promptParts) {
+        return write(null, allowedSubsystems, Double.NaN, null, promptParts);
+    }
+
+    /**
+     * Serialisiert den Payload für einen Prompt mit eigener Sampling-Temperatur, z.B. für
+     * die Varianten eines Ensembles.
+     *
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null
+     * @param temperature Die Sampling-Temperatur
+     * @param promptParts Die Prompt-Teile
+     * @return Der serialisierte Request-Körper
+     */
+    static GeminiRequestBody write(List<String> allowedSubsystems, double temperature, String... promptParts) {
+        return write(null, allowedSubsystems, temperature, null, promptParts);
+    }
+
+    /**
+     * Serialisiert den Payload für einen Prompt, dessen Antwort ein JSON-Objekt mit je
+     * einem Kandidaten-Array pro Schlüssel ist (mehrere Requirements in einem Aufruf).
+     * Die JSON-Ausgabe wird immer angefordert, das Schema nur mit erlaubten Subsystemen.
+     *
+     * @param keys Die Schlüssel der Antwort, z.B. Requirement-IDs
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null
+     * @param promptParts Die Prompt-Teile
+     * @return Der serialisierte Request-Körper
+     */
+    static GeminiRequestBody writeKeyed(List<String> keys, List<String> allowedSubsystems, String... promptParts) {
+        return write(keys, allowedSubsystems, Double.NaN, null, promptParts);
+    }
+
+    /**
+     * Serialisiert den Payload für einen Prompt, dessen statischer Teil bereits als
+     * Gemini-Kontext-Cache vorliegt; gesendet werden nur der Verweis und die übrigen Teile.
+     *
+     * @param cachedContent Name des Kontext-Caches, z.B. "cachedContents/abc123"
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null
+     * @param promptParts Die nicht gecachten Prompt-Teile
+     * @return Der serialisierte Request-Körper
+     */
+    static GeminiRequestBody writeCached(String cachedContent, List<String> allowedSubsystems, String... promptParts) {
+        return write(null, allowedSubsystems, Double.NaN, cachedContent, promptParts);
+    }
+
+    /**
+     * @param temperature Die Sampling-Temperatur oder NaN für die Voreinstellung des Modells
+     * @param cachedContent Name des Kontext-Caches oder null
+     */
+    private static GeminiRequestBody write(List<String> keys, List<String> allowedSubsystems, double temperature,
+                                           String cachedContent, String[] promptParts) {
+        int estimate = 256;
+        for (String part : promptParts) estimate += part.length() + 16;
+        if (allowedSubsystems != null) {
+            for (String name : allowedSubsystems) estimate += name.length() + 4;
+            if (keys != null) estimate += keys.size() * 200;
+        }
+        ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream(estimate);
+
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            if (cachedContent != null) writer.name("cachedContent").value(cachedContent);
+            writer.name("contents").beginArray().beginObject();
+            writer.name("parts").beginArray();
+            for (String part : promptParts) {
+                writer.beginObject().name("text").value(part).endObject();
+            }
+            writer.endArray();
+            writer.endObject().endArray();
+            if (allowedSubsystems != null || keys != null || !Double.isNaN(temperature)) {
+                writer.name("generationConfig").beginObject();
+                if (!Double.isNaN(temperature)) writer.name("temperature").value(temperature);
+                if (allowedSubsystems != null || keys != null) writer.name("responseMimeType").value("application/json");
+                if (allowedSubsystems != null) {
+                    writer.name("responseSchema");
+                    if (keys != null) {
+                        writeKeyedSchema(writer, keys, allowedSubsystems);
+                    } else {
+                        writeResponseSchema(writer, allowedSubsystems);
+                    }
+                }
+                writer.endObject();
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            // Schreiben in einen Speicherpuffer schlägt nicht fehl
+            throw new UncheckedIOException(e);
+        }
+
+        GeminiRequestBody body = new GeminiRequestBody(out.buffer(), out.size());
+        if (DEBUG_CAPTURE_BYTES > 0) {
+            lastCapturedPayload = new String(body.buffer, 0, Math.min(body.length, DEBUG_CAPTURE_BYTES),
+                StandardCharsets.UTF_8);
+        }
+        return body;
+    }
+
+    /**
+     * Schreibt das Antwortschema: ein Array von Objekten mit subsystemName (Enum der
+     * exakten Block-Namen), score und justification in genau dieser Reihenfolge.
+     */
+    private static void writeResponseSchema(JsonWriter writer, List<String> allowedSubsystems) throws IOException {
+        writer.beginObject();
+        writer.name("type").value("ARRAY");
+        writer.name("items").beginObject();
+        writer.name("type").value("OBJECT");
+        writer.name("properties").beginObject();
+        writer.name("subsystemName").beginObject();
+        writer.name("type").value("STRING");
+        writer.name("enum").beginArray();
+        for (String name : allowedSubsystems) writer.value(name);
+        writer.endArray();
+        writer.endObject();
+        writer.name("score").beginObject().name("type").value("NUMBER").endObject();
+        writer.name("justification").beginObject().name("type").value("STRING").endObject();
+        writer.endObject();
+        for (String key : new String[] { "required", "propertyOrdering" }) {
+            writer.name(key).beginArray().value("subsystemName").value("score").value("justification").endArray();
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    /**
+     * Schreibt das Schema einer Antwort mit mehreren Requirements: ein Objekt mit je
+     * einem Kandidaten-Array pro Schlüssel, alle Schlüssel verpflichtend.
+     */
+    private static void writeKeyedSchema(JsonWriter writer, List<String> keys, List<String> allowedSubsystems)
+            throws IOException {
+        writer.beginObject();
+        writer.name("type").value("OBJECT");
+        writer.name("properties").beginObject();
+        for (String key : keys) {
+            writer.name(key);
+            writeResponseSchema(writer, allowedSubsystems);
+        }
+        writer.endObject();
+        for (String field : new String[] { "required", "propertyOrdering" }) {
+            writer.name(field).beginArray();
+            for (String key : keys) writer.value(key);
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Komprimiert den Payload mit gzip.
+     *
+     * @return Der komprimierte Request-Körper
+     */
+    GeminiRequestBody gzip() {
+        ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream(Math.max(64, length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            gzip.write(buffer, 0, length);
+        } catch (IOException e) {
+            // Schreiben in einen Speicherpuffer schlägt nicht fehl
+            throw new UncheckedIOException(e);
+        }
+        return new GeminiRequestBody(out.buffer(), out.size());
+    }
+
+    /**
+     * @return Publisher, der den Puffer ohne weitere Kopie sendet
+     */
+    HttpRequest.BodyPublisher publisher() {
+        return HttpRequest.BodyPublishers.ofByteArray(buffer, 0, length);
+    }
+
+    /**
+     * @return Länge des Payloads in Bytes
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * @return Gekürzter Mitschnitt des zuletzt erzeugten Payloads oder null, wenn der
+     *         Mitschnitt deaktiviert ist
+     */
+    static String getLastCapturedPayload() {
+        return lastCapturedPayload;
+    }
+
+    /**
+     * ByteArrayOutputStream, dessen interner Puffer ohne Kopie übergeben werden kann.
+     */
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Wiederholungslogik für Gemini-Aufrufe.
+ *
+ * Jeder Fehler wird einer {@link ErrorClass} zugeordnet, für die eine eigene Höchstzahl an
+ * Wiederholungen gilt (konfigurierbar über AI4MBSE_RETRY_&lt;KLASSE&gt;). Die Wartezeit
+ * folgt "decorrelated jitter": zufällig zwischen Basis und dem Dreifachen der letzten Pause,
+ * begrenzt durch eine Obergrenze. Ein globales Retry-Budget erlaubt Wiederholungen nur im
+ * Verhältnis zu den Erstversuchen, damit Retries einen Ausfall nicht verstärken. Mit einer
+ * {@link GeminiDeadline} enden Wiederholungen spätestens mit deren Gesamtbudget.
+ * Jeder Versuch wird mit Latenz und Ergebnis protokolliert.
+ */
+class GeminiRetryPolicy {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /**
+     * Fehlerklassen mit ihrer Standard-Höchstzahl an Wiederholungen.
+     */
+    enum ErrorClass {
+        /** Verbindungsaufbau fehlgeschlagen (DNS, TCP, TLS) */
+        CONNECT(4),
+        /** Zeitüberschreitung beim Verbinden oder Warten auf die Antwort */
+        TIMEOUT(2),
+        /** Sonstiger Netzwerkfehler, z.B. abgebrochene Verbindung */
+        NETWORK(3),
+        /** HTTP 5xx */
+        SERVER(3),
+        /** HTTP 429 - der Rate-Limiter hat bereits gewartet */
+        THROTTLED(0),
+        /** HTTP 4xx außer 429 - Anfrage ist fehlerhaft */
+        CLIENT(0),
+        /** Antwort ist kein gültiges Gemini-JSON */
+        MALFORMED(1),
+        /** Aufruf wurde unterbrochen bzw. abgebrochen */
+        INTERRUPTED(0),
+        /** Circuit Breaker ist offen - Aufruf wurde gar nicht gesendet */
+        CIRCUIT_OPEN(0);
+
+        private final int defaultMaxRetries;
+
+        ErrorClass(int defaultMaxRetries) {
+            this.defaultMaxRetries = defaultMaxRetries;
+        }
+    }
+
+    /**
+     * Ein einzelner Versuch eines Gemini-Aufrufs.
+     */
+    @FunctionalInterface
+    interface Attempt<T> {
+        T run() throws IOException;
+    }
+
+    /** Basis-Wartezeit vor der ersten Wiederholung in Millisekunden */
+    private static final long BASE_DELAY_MILLIS = ConfigurationService.getLongSetting("AI4MBSE_RETRY_BASE_DELAY_MS", 500);
+
+    /** Obergrenze einer einzelnen Wartezeit in Millisekunden */
+    private static final long MAX_DELAY_MILLIS = ConfigurationService.getLongSetting("AI4MBSE_RETRY_MAX_DELAY_MS", 20000);
+
+    /** Anteil an Wiederholungen, den jeder Erstversuch dem Budget gutschreibt */
+    private static final double BUDGET_RATIO = ConfigurationService.getDoubleSetting("AI4MBSE_RETRY_BUDGET_RATIO", 0.2);
+
+    /** Grundreserve an Wiederholungen, die zeitbasiert (eine pro Sekunde) wieder aufgefüllt wird */
+    private static final double BUDGET_RESERVE = 10;
+
+    /** Obergrenze des Budgets */
+    private static final double BUDGET_MAX = 50;
+
+    /** Anzahl der vorgehaltenen Versuchs-Protokolleinträge */
+    private static final int ATTEMPT_LOG_SIZE = 20;
+
+    /** Gemeinsame Instanz für alle Gemini-Aufrufe */
+    private static final GeminiRetryPolicy instance = new GeminiRetryPolicy();
+
+    /** Höchstzahl an Wiederholungen je Fehlerklasse */
+    private final Map<ErrorClass, Integer> maxRetries = new EnumMap<>(ErrorClass.class);
+
+    /** Verfügbares Retry-Budget */
+    private double budget = BUDGET_RESERVE;
+
+    /** Zeitpunkt der letzten zeitbasierten Budget-Auffüllung */
+    private long lastBudgetRefillNanos = System.nanoTime();
+
+    /** Zuletzt protokollierte Versuche (älteste zuerst) */
+    private final ArrayDeque<String> attemptLog = new ArrayDeque<>();
+
+    /** Fehler je Klasse */
+    private final Map<ErrorClass, Long> failuresByClass = new EnumMap<>(ErrorClass.class);
+
+    /** Statistik: Aufrufe, Versuche, Wiederholungen, Budget-Ablehnungen, summierte Latenz */
+    private long calls, attempts, retries, budgetRejections, totalLatencyMillis;
+
+    private GeminiRetryPolicy() {
+        for (ErrorClass errorClass : ErrorClass.values()) {
+            maxRetries.put(errorClass, (int) ConfigurationService.getLongSetting(
+                "AI4MBSE_RETRY_" + errorClass.name(), errorClass.defaultMaxRetries));
+        }
+    }
+
+    /**
+     * @return Die gemeinsame Retry-Policy
+     */
+    static GeminiRetryPolicy getInstance() {
+        return instance;
+    }
+
+    /**
+     * Führt einen Aufruf mit Wiederholungen aus.
+     *
+     * @param operation Bezeichnung für Protokoll und Statistik (z.B. "generateContent")
+     * @param attempt Der einzelne Versuch
+     * @param retryable Liefert false, sobald eine Wiederholung nicht mehr zulässig ist
+     *                  (z.B. weil bereits gestreamte Fragmente ausgeliefert wurden)
+     * @return Das Ergebnis des ersten erfolgreichen Versuchs
+     * @throws IOException Der Fehler des letzten Versuchs, frühere Fehler als suppressed
+     */
+    <T> T execute(String operation, Attempt<T> attempt, BooleanSupplier retryable) throws IOException {
+        return execute(operation, attempt, retryable, null);
+    }
+
+    /**
+     * Führt einen Aufruf mit Wiederholungen innerhalb einer {@link GeminiDeadline} aus.
+     * Die Pause vor einer Wiederholung wird auf die Restzeit gekürzt; passt danach kein
+     * Versuch mehr in das Gesamtbudget, wird nicht wiederholt.
+     *
+     * @param operation Bezeichnung für Protokoll und Statistik (z.B. "generateContent")
+     * @param attempt Der einzelne Versuch
+     * @param retryable Liefert false, sobald eine Wiederholung nicht mehr zulässig ist
+     * @param deadline Die Deadline des Aufrufs oder null ohne Gesamtbudget
+     * @return Das Ergebnis des ersten erfolgreichen Versuchs
+     * @throws IOException Der Fehler des letzten Versuchs, frühere Fehler als suppressed
+     */
+    <T> T execute(String operation, Attempt<T> attempt, BooleanSupplier retryable, GeminiDeadline deadline)
+            throws IOException {
+        synchronized (this) {
+            calls++;
+            budget = Math.min(BUDGET_MAX, budget + BUDGET_RATIO);
+        }
+        List<Exception> earlier = new ArrayList<>();
+        long previousDelay = BASE_DELAY_MILLIS;
+        for (int attemptNo = 1; ; attemptNo++) {
+            long start = System.nanoTime();
+            Exception failure;
+            try {
+                T result = attempt.run();
+                record(operation, attemptNo, start, null);
+                return result;
+            } catch (IOException | JsonParseException e) {
+                failure = e;
+            }
+
+            ErrorClass errorClass = classify(failure);
+            record(operation, attemptNo, start, errorClass);
+            long delay = Math.min(MAX_DELAY_MILLIS,
+                ThreadLocalRandom.current().nextLong(BASE_DELAY_MILLIS, Math.max(BASE_DELAY_MILLIS, previousDelay * 3) + 1));
+            if (deadline != null) delay = Math.min(delay, deadline.maxRetryDelayMillis());
+            if (attemptNo > maxRetries.get(errorClass) || !retryable.getAsBoolean()
+                    || (deadline != null && !deadline.allowsRetry(delay)) || !tryWithdrawBudget()) {
+                for (Exception e : earlier) failure.addSuppressed(e);
+                if (attemptNo > 1) {
+                    logger.info(operation + " nach " + attemptNo + " Versuchen fehlgeschlagen (" + errorClass + ").", "GeminiRetryPolicy");
+                }
+                if (failure instanceof IOException) throw (IOException) failure;
+                throw (JsonParseException) failure;
+            }
+            earlier.add(failure);
+            previousDelay = Math.max(BASE_DELAY_MILLIS, delay);
+            logger.info(operation + " Versuch " + attemptNo + " fehlgeschlagen (" + errorClass + ": "
+                + failure.getMessage() + ") - neuer Versuch in " + delay + " ms.", "GeminiRetryPolicy");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Gemini-Aufruf unterbrochen");
+            }
+        }
+    }
+
+    /**
+     * Ordnet einen Fehler seiner Fehlerklasse zu.
+     *
+     * @param failure Der aufgetretene Fehler
+     * @return Die Fehlerklasse
+     */
+    static ErrorClass classify(Exception failure) {
+        if (failure instanceof GeminiCircuitOpenException) return ErrorClass.CIRCUIT_OPEN;
+        if (failure instanceof GeminiApiException) {
+            int code = ((GeminiApiException) failure).getStatusCode();
+            if (code == 429) return ErrorClass.THROTTLED;
+            return code >= 500 ? ErrorClass.SERVER : ErrorClass.CLIENT;
+        }
+        if (failure instanceof JsonParseException) return ErrorClass.MALFORMED;
+        if (Thread.currentThread().isInterrupted()) return ErrorClass.INTERRUPTED;
+        if (failure instanceof HttpConnectTimeoutException || failure instanceof ConnectException
+                || failure instanceof UnknownHostException) {
+            return ErrorClass.CONNECT;
+        }
+        if (failure instanceof HttpTimeoutException || failure instanceof SocketTimeoutException) {
+            return ErrorClass.TIMEOUT;
+        }
+        if (failure instanceof InterruptedIOException) return ErrorClass.INTERRUPTED;
+        return ErrorClass.NETWORK;
+    }
+
+    /**
+     * Entnimmt dem Retry-Budget eine Wiederholung, sofern vorhanden.
+     */
+    private synchronized boolean tryWithdrawBudget() {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastBudgetRefillNanos) / 1e9;
+        lastBudgetRefillNanos = now;
+        if (budget < BUDGET_RESERVE) {
+            budget = Math.min(BUDGET_RESERVE, budget + elapsedSeconds);
+        }
+        if (budget < 1) {
+            budgetRejections++;
+            logger.info("Retry-Budget erschöpft - keine weitere Wiederholung.", "GeminiRetryPolicy");
+            return false;
+        }
+        budget -= 1;
+        retries++;
+        return true;
+    }
+
+    /**
+     * Protokolliert einen Versuch mit Latenz und Ergebnis.
+     */
+    private synchronized void record(String operation, int attemptNo, long startNanos, ErrorClass errorClass) {
+        long latency = (System.nanoTime() - startNanos) / 1_000_000;
+        attempts++;
+        totalLatencyMillis += latency;
+        if (errorClass != null) failuresByClass.merge(errorClass, 1L, Long::sum);
+        if (attemptLog.size() >= ATTEMPT_LOG_SIZE) attemptLog.removeFirst();
+        attemptLog.addLast(String.format("%tT %s #%d %d ms %s", System.currentTimeMillis(), operation, attemptNo,
+            latency, errorClass == null ? "OK" : errorClass.name()));
+    }
+
+    /**
+     * @return Statistik über Aufrufe, Versuche, Wiederholungen, Fehlerklassen und Latenz,
+     *         gefolgt von den zuletzt protokollierten Versuchen (ältester zuerst)
+     */
+    synchronized String getStatistics() {
+        StringBuilder report = new StringBuilder(String.format(
+            "Retries: %d calls, %d attempts, %d retries, %d budget rejections, avg %d ms/attempt, failures %s",
+            calls, attempts, retries, budgetRejections, attempts == 0 ? 0 : totalLatencyMillis / attempts, failuresByClass));
+        for (String attempt : attemptLog) report.append("\n  ").append(attempt);
+        return report.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package ai4mbse.subsystems;
+
+/**
+ * Gleitendes Latenz-Histogramm über die letzten Aufrufe.
+ *
+ * Die Buckets wachsen logarithmisch um je 10 %, sodass Perzentile von einer Millisekunde
+ * bis zu mehreren Minuten mit gleichbleibender relativer Genauigkeit abgelesen werden.
+ * Ein Ringpuffer der letzten Messwerte sorgt dafür, dass alte Messungen aus dem
+ * Histogramm herausfallen und Perzentile der aktuellen Lage folgen.
+ */
+class LatencyHistogram {
+
+    /** Wachstumsfaktor zwischen benachbarten Buckets */
+    private static final double BUCKET_GROWTH = 1.1;
+
+    /** Anzahl der Buckets (1.1^200 ms deckt weit mehr als zehn Minuten ab) */
+    private static final int BUCKET_COUNT = 200;
+
+    /** Häufigkeit je Bucket */
+    private final int[] buckets = new int[BUCKET_COUNT];
+
+    /** Ringpuffer der Bucket-Indizes der letzten Messungen */
+    private final int[] window;
+
+    /** Nächste Schreibposition und Belegung des Ringpuffers */
+    private int windowIndex, windowCount;
+
+    /**
+     * @param windowSize Anzahl der Messungen, über die Perzentile gebildet werden
+     */
+    LatencyHistogram(int windowSize) {
+        this.window = new int[Math.max(1, windowSize)];
+    }
+
+    /**
+     * Erfasst eine Latenz; bei vollem Fenster fällt die älteste Messung heraus.
+     *
+     * @param millis Gemessene Latenz in Millisekunden
+     */
+    synchronized void record(long millis) {
+        int bucket = bucketOf(millis);
+        if (windowCount == window.length) {
+            buckets[window[windowIndex]]--;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = bucket;
+        windowIndex = (windowIndex + 1) % window.length;
+        buckets[bucket]++;
+    }
+
+    /**
+     * Liefert die obere Bucket-Grenze des angefragten Perzentils.
+     *
+     * @param percentile Perzentil zwischen 0 und 100
+     * @return Latenz in Millisekunden oder -1, solange keine Messung vorliegt
+     */
+    synchronized long percentile(double percentile) {
+        if (windowCount == 0) return -1;
+        long rank = (long) Math.ceil(windowCount * Math.min(100, Math.max(0, percentile)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(1, rank)) return upperBound(i);
+        }
+        return upperBound(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * @return Anzahl der Messungen im Fenster
+     */
+    synchronized int getSampleCount() {
+        return windowCount;
+    }
+
+    /**
+     * @return Kurzer Bericht mit Median, p95 und p99
+     */
+    String getSummary() {
+        return String.format("p50 %d ms, p95 %d ms, p99 %d ms over %d calls",
+            percentile(50), percentile(95), percentile(99), getSampleCount());
+    }
+
+    private static int bucketOf(long millis) {
+        if (millis <= 1) return 0;
+        int bucket = (int) Math.ceil(Math.log(millis) / Math.log(BUCKET_GROWTH));
+        return Math.min(BUCKET_COUNT - 1, bucket);
+    }
+
+    private static long upperBound(int bucket) {
+        return (long) Math.ceil(Math.pow(BUCKET_GROWTH, bucket));
+    }
+}
@@ -0,0 +1,116 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.model.AllocationCandidate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lokale Ersatzbewertung, solange Gemini nicht erreichbar ist.
+ *
+ * Bewertet jedes Subsystem nach dem Anteil seiner Namensbestandteile, die im
+ * Requirement-Text vorkommen (CamelCase, Unterstriche und Ziffern trennen Bestandteile;
+ * Wortstämme ab vier Zeichen zählen als Präfix-Treffer). Das Ergebnis ist eine grobe
+ * Vorauswahl, die im Dialog als lokale Schätzung gekennzeichnet wird.
+ */
+class LocalFallbackScorer {
+
+    /** Minimale Länge eines Bestandteils, der als Präfix verglichen wird */
+    private static final int MIN_STEM_LENGTH = 4;
+
+    /** Maximale Anzahl vorgeschlagener Subsysteme */
+    private static final int MAX_CANDIDATES = 5;
+
+    /** Obergrenze der Konfidenz, damit die Schätzung nie sicherer als die KI wirkt */
+    private static final double MAX_CONFIDENCE = 0.6;
+
+    /**
+     * Bewertet die Subsysteme für einen Requirement-Text.
+     *
+     * @param requirementText Der Requirement-Text
+     * @param subsystemNames Namen der verfügbaren Block-Subsysteme
+     * @return Kandidaten mit Treffern, absteigend nach Konfidenz
+     */
+    static List<AllocationCandidate> score(String requirementText, List<String> subsystemNames) {
+        Set<String> requirementTokens = tokenize(requirementText);
+        List<AllocationCandidate> candidates = new ArrayList<>();
+        for (String subsystemName : subsystemNames) {
+            Set<String> nameTokens = tokenize(subsystemName);
+            if (nameTokens.isEmpty()) continue;
+
+            List<String> matches = matchingTokens(nameTokens, requirementTokens);
+            if (matches.isEmpty()) continue;
+
+            double confidence = MAX_CONFIDENCE * matches.size() / nameTokens.size();
+            candidates.add(new AllocationCandidate(subsystemName, confidence,
+                "Lokale Schätzung (Gemini nicht erreichbar): gemeinsame Begriffe " + String.join(", ", matches)));
+        }
+        candidates.sort(Comparator.comparingDouble(AllocationCandidate::getConfidence).reversed());
+        return candidates.size() > MAX_CANDIDATES ? new ArrayList<>(candidates.subList(0, MAX_CANDIDATES)) : candidates;
+    }
+
+    /**
+     * Ordnet die Subsysteme absteigend nach dem Anteil ihrer Namensbestandteile, die im
+     * Requirement-Text vorkommen. Gleich bewertete Subsysteme behalten ihre Reihenfolge.
+     *
+     * @param requirementText Der Requirement-Text
+     * @param subsystemNames Namen der verfügbaren Block-Subsysteme
+     * @return Die Namen in Rangfolge
+     */
+    static List<String> rank(String requirementText, List<String> subsystemNames) {
+        Set<String> requirementTokens = tokenize(requirementText);
+        Map<String, Double> relevance = new HashMap<>();
+        for (String subsystemName : subsystemNames) {
+            Set<String> nameTokens = tokenize(subsystemName);
+            relevance.put(subsystemName, nameTokens.isEmpty() ? 0.0
+                : (double) matchingTokens(nameTokens, requirementTokens).size() / nameTokens.size());
+        }
+        List<String> ranked = new ArrayList<>(subsystemNames);
+        ranked.sort(Comparator.comparingDouble((String name) -> relevance.get(name)).reversed());
+        return ranked;
+    }
+
+    /**
+     * Liefert die Namensbestandteile, die im Requirement vorkommen.
+     */
+    private static List<String> matchingTokens(Set<String> nameTokens, Set<String> requirementTokens) {
+        List<String> matches = new ArrayList<>();
+        for (String nameToken : nameTokens) {
+            if (matches(nameToken, requirementTokens)) matches.add(nameToken);
+        }
+        return matches;
+    }
+
+    /**
+     * Prüft, ob ein Namensbestandteil exakt oder als Wortstamm im Requirement vorkommt.
+     */
+    private static boolean matches(String nameToken, Set<String> requirementTokens) {
+        if (requirementTokens.contains(nameToken)) return true;
+        if (nameToken.length() < MIN_STEM_LENGTH) return false;
+        for (String token : requirementTokens) {
+            if (token.length() >= MIN_STEM_LENGTH && (token.startsWith(nameToken) || nameToken.startsWith(token))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Zerlegt einen Text in kleingeschriebene Bestandteile.
+     */
+    private static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) return tokens;
+        String separated = text.replaceAll("([a-zäöü])([A-ZÄÖÜ])", "$1 $2");
+        for (String token : separated.toLowerCase(Locale.ROOT).split("[^\\p{L}]+")) {
+            if (token.length() > 1) tokens.add(token);
+        }
+        return tokens;
+    }
+}
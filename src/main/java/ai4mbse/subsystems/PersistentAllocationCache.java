@@ -0,0 +1,684 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.logging.LoggingService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistenter Cache für rohe KI-Antworten, der MagicDraw-Neustarts überdauert.
+ *
+ * Aufbau im Cache-Verzeichnis:
+ * - segment-NNNNNN.log: Append-only Segment-Logs mit Datensätzen
+ *   [Magic][32-Byte-Schlüssel][Zeitstempel][Länge][UTF-8-Antwort][CRC32]
+ * - index-NNNNNN.bin: Speicher-abgebildeter (mmap) Hash-Index mit offener Adressierung.
+ *   Jeder Slot verweist auf Segment und Offset eines Datensatzes, sodass ein
+ *   Lookup unabhängig von der Cache-Größe eine einzige Leseoperation benötigt.
+ *   Jede Kompaktierung schreibt eine neue Index-Generation, weil eine abgebildete
+ *   Datei unter Windows nicht ersetzt werden kann.
+ *
+ * Überschriebene Einträge bleiben als toter Speicher in alten Segmenten liegen.
+ * Eine Kompaktierung im Hintergrund kopiert die lebenden Datensätze in ein neues
+ * Segment, entfernt bei Überschreitung des Größenlimits die ältesten Einträge und
+ * ersetzt anschließend Index und Segmente.
+ */
+class PersistentAllocationCache {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /** Kennung eines Datensatzes im Segment-Log */
+    private static final int RECORD_MAGIC = 0xA14B5E01;
+
+    /** Kennung und Version der Index-Datei */
+    private static final int INDEX_MAGIC = 0xA14B1D01;
+    private static final int INDEX_VERSION = 1;
+
+    /** Größe des Index-Headers in Bytes */
+    private static final int INDEX_HEADER_SIZE = 32;
+
+    /** Größe eines Index-Slots: Schlüsselpräfix, Segment, Datensatzlänge, Offset */
+    private static final int SLOT_SIZE = 24;
+
+    /** Länge eines Schlüssels (SHA-256) in Bytes */
+    private static final int KEY_SIZE = 32;
+
+    /** Größe eines Datensatzes ohne Antworttext */
+    private static final int RECORD_OVERHEAD = 4 + KEY_SIZE + 8 + 4 + 4;
+
+    /** Anfängliche Anzahl an Index-Slots (Zweierpotenz) */
+    private static final int INITIAL_SLOTS = 4096;
+
+    /** Maximaler Füllgrad des Index, bevor er bei der Kompaktierung vergrößert wird */
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    /** Maximale Größe eines Segments, bevor ein neues begonnen wird */
+    private static final long MAX_SEGMENT_BYTES = 8L * 1024 * 1024;
+
+    /** Dateinamenmuster der Index-Generationen */
+    private static final String INDEX_FILE_PATTERN = "index-%06d.bin";
+
+    /** Cache-Verzeichnis */
+    private final Path directory;
+
+    /** Obergrenze für die Summe der lebenden Datensätze in Bytes */
+    private final long maxBytes;
+
+    /** Executor für die Kompaktierung im Hintergrund */
+    private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "AI4MBSE-CacheCompaction");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** true, solange eine Kompaktierung geplant oder aktiv ist */
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+
+    /** Zähler für Treffer und Fehlschläge */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Speicher-abgebildeter Index */
+    private MappedByteBuffer index;
+
+    /** Generation der aktuell verwendeten Index-Datei */
+    private int indexGeneration;
+
+    /** Anzahl der Slots im Index */
+    private int slotCount;
+
+    /** Anzahl der belegten Slots */
+    private int entryCount;
+
+    /** Geöffnete Segment-Kanäle nach Segment-ID */
+    private final Map<Integer, FileChannel> segments = new HashMap<>();
+
+    /** ID und Kanal des aktiven (beschreibbaren) Segments */
+    private int activeSegmentId;
+    private FileChannel activeSegment;
+
+    /** Summe aller Datensatz-Bytes in den Segmenten (lebend und tot) */
+    private long totalBytes;
+
+    /** Summe der Bytes, die durch Überschreiben tot sind */
+    private long deadBytes;
+
+    /** true nach close() */
+    private boolean closed;
+
+    /**
+     * Öffnet bzw. erstellt den Cache im angegebenen Verzeichnis.
+     *
+     * @param directory Cache-Verzeichnis
+     * @param maxBytes Obergrenze für lebende Daten in Bytes
+     * @throws IOException Wenn Verzeichnis, Segmente oder Index nicht geöffnet werden können
+     */
+    PersistentAllocationCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Sucht die gespeicherte Antwort zu einem Prompt-Hash.
+     *
+     * @param hexKey Hex-kodierter SHA-256-Schlüssel
+     * @return Die rohe KI-Antwort oder null
+     */
+    synchronized String get(String hexKey) {
+        if (closed) return null;
+        byte[] key = decodeKey(hexKey);
+        int slot = findSlot(key);
+        if (slot < 0 || isEmptySlot(slot)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            String value = readRecord(slotSegment(slot), slotOffset(slot), key);
+            if (value == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return value;
+        } catch (IOException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Hängt eine Antwort an das aktive Segment an und aktualisiert den Index.
+     *
+     * @param hexKey Hex-kodierter SHA-256-Schlüssel
+     * @param response Die rohe KI-Antwort
+     * @throws IOException Bei Schreibfehlern
+     */
+    synchronized void put(String hexKey, String response) throws IOException {
+        if (closed) return;
+        byte[] key = decodeKey(hexKey);
+        byte[] value = response.getBytes(StandardCharsets.UTF_8);
+        int recordLength = RECORD_OVERHEAD + value.length;
+        if (recordLength > maxBytes) return;
+
+        if (activeSegment.size() + recordLength > MAX_SEGMENT_BYTES && activeSegment.size() > 0) {
+            rollSegment();
+        }
+        long offset = activeSegment.size();
+        activeSegment.write(encodeRecord(key, value), offset);
+        totalBytes += recordLength;
+
+        if (!insertSlot(key, activeSegmentId, recordLength, offset)) {
+            // Index voll: Eintrag geht bis zur Kompaktierung verloren, Datensatz bleibt im Log
+            deadBytes += recordLength;
+        }
+        maybeScheduleCompaction();
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht
+     */
+    synchronized String getStatistics() {
+        return String.format("Persistent cache: %d hits, %d misses, %d entries, %d live/%d total bytes, %d segments",
+            hits.get(), misses.get(), entryCount, totalBytes - deadBytes, totalBytes, segments.size());
+    }
+
+    /**
+     * Schreibt den Index auf die Platte und schließt alle Dateien.
+     */
+    void close() {
+        compactionExecutor.shutdown();
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            index.force();
+            for (FileChannel channel : segments.values()) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Schließen ist Best-Effort
+                }
+            }
+            segments.clear();
+        }
+    }
+
+    // --- Öffnen und Wiederherstellen ---
+
+    /**
+     * Öffnet vorhandene Segmente und den Index; ein fehlender oder beschädigter
+     * Index wird durch einen Scan aller Segmente neu aufgebaut.
+     */
+    private void open() throws IOException {
+        List<Integer> ids = listSegmentIds();
+        for (int id : ids) {
+            FileChannel channel = FileChannel.open(segmentPath(id), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segments.put(id, channel);
+            totalBytes += channel.size();
+        }
+        if (ids.isEmpty()) {
+            activeSegmentId = 1;
+            activeSegment = openSegment(activeSegmentId);
+        } else {
+            activeSegmentId = ids.get(ids.size() - 1);
+            activeSegment = segments.get(activeSegmentId);
+        }
+
+        if (!loadIndex()) {
+            rebuildIndex(ids);
+        }
+        deleteStaleIndexFiles();
+        deadBytes = Math.max(0, totalBytes - liveBytes());
+    }
+
+    /**
+     * Bildet die neueste vorhandene Index-Generation in den Speicher ab.
+     *
+     * @return false, wenn kein Index existiert oder er ungültig ist
+     */
+    private boolean loadIndex() throws IOException {
+        List<Integer> generations = listIndexGenerations();
+        if (generations.isEmpty()) return false;
+        indexGeneration = generations.get(generations.size() - 1);
+        Path indexPath = indexPath(indexGeneration);
+        if (Files.size(indexPath) < INDEX_HEADER_SIZE) return false;
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int slots = mapped.getInt(8);
+            if (mapped.getInt(0) != INDEX_MAGIC || mapped.getInt(4) != INDEX_VERSION
+                    || Integer.bitCount(slots) != 1
+                    || channel.size() != INDEX_HEADER_SIZE + (long) slots * SLOT_SIZE) {
+                return false;
+            }
+            index = mapped;
+            slotCount = slots;
+            entryCount = mapped.getInt(12);
+            return true;
+        }
+    }
+
+    /**
+     * Baut den Index durch sequentielles Lesen aller Segmente neu auf.
+     * Spätere Datensätze überschreiben frühere mit gleichem Schlüssel.
+     */
+    private void rebuildIndex(List<Integer> ids) throws IOException {
+        int slots = INITIAL_SLOTS;
+        List<Object[]> records = new ArrayList<>();
+        for (int id : ids) {
+            scanSegment(id, records);
+        }
+        while (records.size() > slots * MAX_LOAD_FACTOR) slots <<= 1;
+        indexGeneration++;
+        index = createIndexFile(indexPath(indexGeneration), slots);
+        slotCount = slots;
+        entryCount = 0;
+        for (Object[] r : records) {
+            insertSlot((byte[]) r[0], (Integer) r[1], (Integer) r[2], (Long) r[3]);
+        }
+    }
+
+    /**
+     * Liest alle gültigen Datensätze eines Segments; ein beschädigtes Ende
+     * (z.B. nach einem Absturz) wird abgeschnitten.
+     */
+    private void scanSegment(int id, List<Object[]> into) throws IOException {
+        FileChannel channel = segments.get(id);
+        long offset = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(4 + KEY_SIZE + 8 + 4);
+        while (offset + RECORD_OVERHEAD <= size) {
+            header.clear();
+            channel.read(header, offset);
+            header.flip();
+            if (header.getInt() != RECORD_MAGIC) break;
+            byte[] key = new byte[KEY_SIZE];
+            header.get(key);
+            header.getLong();
+            int length = header.getInt();
+            int recordLength = RECORD_OVERHEAD + length;
+            if (length < 0 || offset + recordLength > size || readRecord(id, offset, key) == null) break;
+            into.add(new Object[] { key, id, recordLength, offset });
+            offset += recordLength;
+        }
+        if (offset < size) {
+            totalBytes -= size - offset;
+            channel.truncate(offset);
+        }
+    }
+
+    // --- Kompaktierung ---
+
+    /**
+     * Plant eine Kompaktierung, wenn mehr als die Hälfte der Segmentdaten tot ist,
+     * das Größenlimit überschritten wurde oder der Index zu voll ist.
+     */
+    private void maybeScheduleCompaction() {
+        boolean tooMuchGarbage = deadBytes > MAX_SEGMENT_BYTES / 2 && deadBytes * 2 > totalBytes;
+        boolean overLimit = totalBytes - deadBytes > maxBytes;
+        boolean indexFull = entryCount > slotCount * MAX_LOAD_FACTOR;
+        if ((tooMuchGarbage || overLimit || indexFull) && compactionScheduled.compareAndSet(false, true)) {
+            compactionExecutor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    logger.warning("Cache-Kompaktierung fehlgeschlagen: " + e.getMessage(), "PersistentAllocationCache");
+                } finally {
+                    compactionScheduled.set(false);
+                }
+                // Während der Kompaktierung geschriebene Daten erneut prüfen
+                synchronized (this) {
+                    if (!closed) maybeScheduleCompaction();
+                }
+            });
+        }
+    }
+
+    /**
+     * Kompaktiert alle versiegelten Segmente in ein neues Segment.
+     *
+     * Ablauf: Unter Sperre wird das aktive Segment versiegelt und eine Momentaufnahme
+     * der lebenden Einträge erstellt. Das Kopieren läuft ohne Sperre, da versiegelte
+     * Segmente unveränderlich sind. Abschließend wird unter Sperre ein neuer Index
+     * aufgebaut, der nur Einträge übernimmt, die seit der Momentaufnahme nicht
+     * überschrieben wurden.
+     */
+    private void compact() throws IOException {
+        List<long[]> live = new ArrayList<>();
+        List<byte[]> liveKeys = new ArrayList<>();
+        int compactedId;
+        synchronized (this) {
+            if (closed) return;
+            rollSegment();
+            compactedId = activeSegmentId;
+            rollSegment();
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (!isEmptySlot(slot) && slotSegment(slot) < compactedId) {
+                    live.add(new long[] { slotSegment(slot), slotOffset(slot), slotLength(slot) });
+                    liveKeys.add(readKey(slotSegment(slot), slotOffset(slot)));
+                }
+            }
+        }
+
+        // Älteste Einträge (kleinste Segment-ID/Offset) verwerfen, bis das Limit eingehalten wird
+        TreeMap<Long, Integer> order = new TreeMap<>();
+        long liveTotal = 0;
+        for (int i = 0; i < live.size(); i++) {
+            order.put((live.get(i)[0] << 40) | live.get(i)[1], i);
+            liveTotal += live.get(i)[2];
+        }
+        boolean[] dropped = new boolean[live.size()];
+        for (int i : order.values()) {
+            if (liveTotal <= maxBytes * 3 / 4) break;
+            dropped[i] = true;
+            liveTotal -= live.get(i)[2];
+        }
+
+        // Lebende Datensätze ohne Sperre in das kompaktierte Segment kopieren
+        FileChannel target;
+        synchronized (this) {
+            target = segments.get(compactedId);
+        }
+        long[] newOffsets = new long[live.size()];
+        long writeOffset = 0;
+        for (int i : order.values()) {
+            if (dropped[i]) continue;
+            long[] rec = live.get(i);
+            FileChannel source;
+            synchronized (this) {
+                source = segments.get((int) rec[0]);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) rec[2]);
+            source.read(buffer, rec[1]);
+            buffer.flip();
+            newOffsets[i] = writeOffset;
+            target.write(buffer, writeOffset);
+            writeOffset += rec[2];
+        }
+        target.force(false);
+
+        synchronized (this) {
+            if (closed) return;
+            totalBytes += writeOffset;
+            Map<String, Integer> moved = new HashMap<>();
+            for (int i = 0; i < live.size(); i++) {
+                moved.put(live.get(i)[0] + ":" + live.get(i)[1], i);
+            }
+            List<Object[]> entries = new ArrayList<>();
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (isEmptySlot(slot)) continue;
+                int segment = slotSegment(slot);
+                if (segment < compactedId) {
+                    Integer i = moved.get(segment + ":" + slotOffset(slot));
+                    if (i != null && !dropped[i]) {
+                        entries.add(new Object[] { liveKeys.get(i), compactedId, slotLength(slot), newOffsets[i] });
+                    }
+                } else {
+                    entries.add(new Object[] { readKey(segment, slotOffset(slot)), segment, slotLength(slot), slotOffset(slot) });
+                }
+            }
+
+            int slots = INITIAL_SLOTS;
+            while (entries.size() > slots * MAX_LOAD_FACTOR / 2) slots <<= 1;
+            // Neue Index-Generation aufbauen; der Header wird erst nach allen Slots gültig
+            Path newIndexPath = indexPath(indexGeneration + 1);
+            MappedByteBuffer newIndex = createIndexFile(newIndexPath, slots);
+            newIndex.putInt(0, 0);
+            index.force();
+            index = newIndex;
+            indexGeneration++;
+            slotCount = slots;
+            entryCount = 0;
+            for (Object[] e : entries) {
+                insertSlot((byte[]) e[0], (Integer) e[1], (Integer) e[2], (Long) e[3]);
+            }
+            index.putInt(0, INDEX_MAGIC);
+            index.force();
+            deleteStaleIndexFiles();
+
+            // Versiegelte Alt-Segmente entfernen
+            List<Integer> obsolete = new ArrayList<>();
+            for (int id : segments.keySet()) {
+                if (id < compactedId) obsolete.add(id);
+            }
+            for (int id : obsolete) {
+                FileChannel channel = segments.remove(id);
+                totalBytes -= channel.size();
+                channel.close();
+                Files.deleteIfExists(segmentPath(id));
+            }
+            deadBytes = Math.max(0, totalBytes - liveBytes());
+        }
+    }
+
+    // --- Segmente ---
+
+    /**
+     * Beginnt ein neues aktives Segment.
+     */
+    private void rollSegment() throws IOException {
+        activeSegmentId++;
+        activeSegment = openSegment(activeSegmentId);
+    }
+
+    private FileChannel openSegment(int id) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(id),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(id, channel);
+        return channel;
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("segment-%06d.log", id));
+    }
+
+    private List<Integer> listSegmentIds() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                .filter(n -> n.matches("segment-\\d{6}\\.log"))
+                .forEach(n -> ids.add(Integer.parseInt(n.substring(8, 14))));
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    // --- Datensätze ---
+
+    private static ByteBuffer encodeRecord(byte[] key, byte[] value) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + value.length);
+        buffer.putInt(RECORD_MAGIC).put(key).putLong(System.currentTimeMillis()).putInt(value.length).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, buffer.position() - 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Liest einen Datensatz und prüft Magic, Schlüssel und Prüfsumme.
+     *
+     * @return Der Antworttext oder null bei ungültigem Datensatz
+     */
+    private String readRecord(int segmentId, long offset, byte[] expectedKey) throws IOException {
+        FileChannel channel = segments.get(segmentId);
+        if (channel == null || offset + RECORD_OVERHEAD > channel.size()) return null;
+        ByteBuffer header = ByteBuffer.allocate(4 + KEY_SIZE + 8 + 4);
+        channel.read(header, offset);
+        header.flip();
+        if (header.getInt() != RECORD_MAGIC) return null;
+        byte[] key = new byte[KEY_SIZE];
+        header.get(key);
+        if (!java.util.Arrays.equals(key, expectedKey)) return null;
+        header.getLong();
+        int length = header.getInt();
+        if (length < 0 || offset + RECORD_OVERHEAD + length > channel.size()) return null;
+
+        ByteBuffer body = ByteBuffer.allocate(length + 4);
+        channel.read(body, offset + header.capacity());
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 4, header.capacity() - 4);
+        crc.update(body.array(), 0, length);
+        if ((int) crc.getValue() != body.getInt(length)) return null;
+        return new String(body.array(), 0, length, StandardCharsets.UTF_8);
+    }
+
+    private byte[] readKey(int segmentId, long offset) throws IOException {
+        ByteBuffer key = ByteBuffer.allocate(KEY_SIZE);
+        segments.get(segmentId).read(key, offset + 4);
+        return key.array();
+    }
+
+    // --- Index ---
+
+    private Path indexPath(int generation) {
+        return directory.resolve(String.format(INDEX_FILE_PATTERN, generation));
+    }
+
+    private List<Integer> listIndexGenerations() throws IOException {
+        List<Integer> generations = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                .filter(n -> n.matches("index-\\d{6}\\.bin"))
+                .forEach(n -> generations.add(Integer.parseInt(n.substring(6, 12))));
+        }
+        generations.sort(null);
+        return generations;
+    }
+
+    /**
+     * Löscht ältere Index-Generationen. Unter Windows schlägt das fehl, solange eine
+     * alte Abbildung noch existiert; die Datei wird dann beim nächsten Öffnen entfernt.
+     */
+    private void deleteStaleIndexFiles() {
+        try {
+            for (int generation : listIndexGenerations()) {
+                if (generation != indexGeneration) {
+                    try {
+                        Files.deleteIfExists(indexPath(generation));
+                    } catch (IOException e) {
+                        // Noch abgebildet - nächster Versuch beim nächsten Öffnen
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Aufräumen ist Best-Effort
+        }
+    }
+
+    private static MappedByteBuffer createIndexFile(Path path, int slots) throws IOException {
+        Files.deleteIfExists(path);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                INDEX_HEADER_SIZE + (long) slots * SLOT_SIZE);
+            mapped.putInt(0, INDEX_MAGIC);
+            mapped.putInt(4, INDEX_VERSION);
+            mapped.putInt(8, slots);
+            mapped.putInt(12, 0);
+            return mapped;
+        }
+    }
+
+    /**
+     * Sucht per linearer Sondierung den Slot eines Schlüssels bzw. den ersten freien Slot.
+     *
+     * @return Slot-Index oder -1, wenn der Index voll ist
+     */
+    private int findSlot(byte[] key) {
+        long prefix = keyPrefix(key);
+        int mask = slotCount - 1;
+        int start = (int) (prefix ^ (prefix >>> 32)) & mask;
+        for (int i = 0; i < slotCount; i++) {
+            int slot = (start + i) & mask;
+            long stored = index.getLong(slotPosition(slot));
+            if (stored == 0 || stored == prefix) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Trägt einen Datensatz in den Index ein.
+     *
+     * @return false, wenn kein Slot mehr frei ist
+     */
+    private boolean insertSlot(byte[] key, int segmentId, int recordLength, long offset) {
+        int slot = findSlot(key);
+        if (slot < 0) return false;
+        int pos = slotPosition(slot);
+        if (isEmptySlot(slot)) {
+            entryCount++;
+            index.putInt(12, entryCount);
+        } else {
+            deadBytes += slotLength(slot);
+        }
+        index.putInt(pos + 8, segmentId);
+        index.putInt(pos + 12, recordLength);
+        index.putLong(pos + 16, offset);
+        index.putLong(pos, keyPrefix(key));
+        return true;
+    }
+
+    private boolean isEmptySlot(int slot) {
+        return index.getLong(slotPosition(slot)) == 0;
+    }
+
+    private int slotSegment(int slot) {
+        return index.getInt(slotPosition(slot) + 8);
+    }
+
+    private int slotLength(int slot) {
+        return index.getInt(slotPosition(slot) + 12);
+    }
+
+    private long slotOffset(int slot) {
+        return index.getLong(slotPosition(slot) + 16);
+    }
+
+    private static int slotPosition(int slot) {
+        return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private long liveBytes() {
+        long live = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (!isEmptySlot(slot)) live += slotLength(slot);
+        }
+        return live;
+    }
+
+    /**
+     * Erste 8 Bytes des Schlüssels als Slot-Kennung; 0 ist für freie Slots reserviert.
+     */
+    private static long keyPrefix(byte[] key) {
+        long prefix = ByteBuffer.wrap(key, 0, 8).getLong();
+        return prefix == 0 ? 1 : prefix;
+    }
+
+    private static byte[] decodeKey(String hexKey) {
+        byte[] key = new byte[KEY_SIZE];
+        for (int i = 0; i < KEY_SIZE; i++) {
+            key[i] = (byte) Integer.parseInt(hexKey.substring(2 * i, 2 * i + 2), 16);
+        }
+        return key;
+    }
+}
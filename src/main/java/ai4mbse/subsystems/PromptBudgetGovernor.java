@@ -0,0 +1,210 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hält Prompts unter einem Budget an Eingabe-Tokens.
+ *
+ * Vor dem Senden wird der Prompt mit dem {@link TokenEstimator} geschätzt. Liegt er über
+ * dem Budget, werden nacheinander und nur so weit wie nötig angewendet:
+ * <ol>
+ *   <li>doppelte Block-Namen entfernen und überlange Namen kürzen,</li>
+ *   <li>die Beispielantwort weglassen,</li>
+ *   <li>die Blöcke nach Namensübereinstimmung mit dem Requirement ordnen und den Katalog
+ *       auf die relevantesten kürzen.</li>
+ * </ol>
+ */
+final class PromptBudgetGovernor {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /** Budget an Eingabe-Tokens je Aufruf (0 = unbegrenzt) */
+    private static final long MAX_INPUT_TOKENS = ConfigurationService.getLongSetting("AI4MBSE_MAX_INPUT_TOKENS", 16000);
+
+    /** Maximale Länge eines Block-Namens im gekürzten Prompt */
+    private static final int MAX_NAME_LENGTH = 48;
+
+    /** Mindestanzahl an Blöcken, die beim Kürzen des Katalogs erhalten bleibt */
+    private static final int MIN_CATALOG_SIZE = 5;
+
+    /** Geschätzte Tokens eines Alias (S17) */
+    private static final int ALIAS_TOKENS = 2;
+
+    /** Statistik: Prompts, gekürzte Prompts je Strategie, trotz Kürzung zu große Prompts */
+    private static long plans, trimmed, namesShortened, examplesDropped, catalogsTruncated, overBudget;
+
+    private PromptBudgetGovernor() {
+    }
+
+    /**
+     * Erstellt den Prompt für ein Requirement innerhalb des Token-Budgets.
+     *
+     * @param requirementText Der Text des Requirements
+     * @param subsystemNames Die Block-Namen des Modells
+     * @param withSchema Ob die Block-Namen zusätzlich als Antwortschema gesendet werden
+     * @param aliased Ob die KI Blöcke über Aliase statt über Namen benennt
+     * @return Der vorbereitete Prompt
+     */
+    static PromptPlan plan(String requirementText, List<String> subsystemNames, boolean withSchema, boolean aliased) {
+        PromptTemplate template = aliased ? PromptTemplate.ALIASED : PromptTemplate.ADVANCED;
+        List<String> catalog = subsystemNames;
+        Map<String, String> modelNames = Collections.emptyMap();
+        long estimate = estimate(template, requirementText, catalog, withSchema);
+        synchronized (PromptBudgetGovernor.class) {
+            plans++;
+        }
+        if (MAX_INPUT_TOKENS <= 0 || estimate <= MAX_INPUT_TOKENS) {
+            return new PromptPlan(template.render(requirementText, catalog), catalog, modelNames,
+                aliasTable(template, catalog, modelNames), template.getVersion(), estimate);
+        }
+
+        long original = estimate;
+        List<String> applied = new ArrayList<>();
+        boolean shortened = false, exampleDropped = false, truncated = false;
+
+        // 1. Doppelte Namen entfernen, Leerraum vereinheitlichen, überlange Namen kürzen
+        Map<String, String> promptToModel = shortenNames(catalog);
+        if (promptToModel.size() < catalog.size() || !promptToModel.keySet().containsAll(catalog)) {
+            catalog = new ArrayList<>(promptToModel.keySet());
+            modelNames = new HashMap<>();
+            for (Map.Entry<String, String> entry : promptToModel.entrySet()) {
+                if (!entry.getKey().equals(entry.getValue())) modelNames.put(entry.getKey(), entry.getValue());
+            }
+            estimate = estimate(template, requirementText, catalog, withSchema);
+            applied.add("Namen bereinigt");
+            shortened = true;
+        }
+
+        // 2. Beispielantwort weglassen
+        if (estimate > MAX_INPUT_TOKENS) {
+            template = aliased ? PromptTemplate.ALIASED_WITHOUT_EXAMPLE : PromptTemplate.ADVANCED_WITHOUT_EXAMPLE;
+            estimate = estimate(template, requirementText, catalog, withSchema);
+            applied.add("Beispiel entfernt");
+            exampleDropped = true;
+        }
+
+        // 3. Katalog nach Relevanz ordnen und kürzen
+        if (estimate > MAX_INPUT_TOKENS && catalog.size() > MIN_CATALOG_SIZE) {
+            int before = catalog.size();
+            catalog = truncateCatalog(template, requirementText, catalog, withSchema);
+            estimate = estimate(template, requirementText, catalog, withSchema);
+            applied.add("Katalog auf " + catalog.size() + " von " + before + " Blöcken gekürzt");
+            truncated = true;
+        }
+
+        synchronized (PromptBudgetGovernor.class) {
+            if (!applied.isEmpty()) trimmed++;
+            if (shortened) namesShortened++;
+            if (exampleDropped) examplesDropped++;
+            if (truncated) catalogsTruncated++;
+            if (estimate > MAX_INPUT_TOKENS) overBudget++;
+        }
+        logger.info("Prompt über dem Token-Budget (~" + original + " > " + MAX_INPUT_TOKENS + "): "
+            + String.join(", ", applied) + " - jetzt ~" + estimate + " Tokens.", "PromptBudgetGovernor");
+        if (estimate > MAX_INPUT_TOKENS) {
+            logger.warning("Prompt bleibt über dem Token-Budget und wird dennoch gesendet.", "PromptBudgetGovernor");
+        }
+        return new PromptPlan(template.render(requirementText, catalog), catalog, modelNames,
+            aliasTable(template, catalog, modelNames), template.getVersion() + "+budget" + MAX_INPUT_TOKENS, estimate);
+    }
+
+    /**
+     * Legt die Aliase des gesendeten Katalogs an, sofern die Vorlage Aliase verwendet.
+     */
+    private static SubsystemAliasTable aliasTable(PromptTemplate template, List<String> catalog,
+                                                  Map<String, String> modelNames) {
+        if (!template.isAliased()) return null;
+        List<String> models = new ArrayList<>(catalog.size());
+        for (String name : catalog) models.add(modelNames.getOrDefault(name, name));
+        return new SubsystemAliasTable(models);
+    }
+
+    /**
+     * Schätzt die Eingabe-Tokens eines Prompts, ohne den Block-Katalog zu rendern.
+     */
+    private static long estimate(PromptTemplate template, String requirementText, List<String> catalog,
+                                 boolean withSchema) {
+        long tokens = TokenEstimator.estimateRequest(template.render(requirementText, List.of()),
+            withSchema ? List.of() : null);
+        for (String name : catalog) tokens += nameCost(name, withSchema, template.isAliased());
+        return tokens;
+    }
+
+    /**
+     * Geschätzte Tokens eines Block-Namens in Liste und Antwortschema; im Alias-Modus
+     * steht im Schema nur der Alias.
+     */
+    private static long nameCost(String name, boolean withSchema, boolean aliased) {
+        long tokens = TokenEstimator.estimate(name) + (aliased ? ALIAS_TOKENS + 3 : 2);
+        if (!withSchema) return tokens;
+        return tokens + (aliased ? ALIAS_TOKENS + 1 : tokens - 1);
+    }
+
+    /**
+     * Entfernt doppelte Namen, vereinheitlicht Leerraum und kürzt überlange Namen
+     * eindeutig.
+     *
+     * @return Zuordnung der Prompt-Namen zu Modellnamen in Katalogreihenfolge
+     */
+    private static Map<String, String> shortenNames(List<String> catalog) {
+        Map<String, String> promptToModel = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        for (String name : catalog) {
+            if (!seen.add(name)) continue;
+            String shortName = name.trim().replaceAll("\\s+", " ");
+            if (shortName.length() > MAX_NAME_LENGTH) {
+                shortName = shortName.substring(0, MAX_NAME_LENGTH - 1).trim() + "…";
+            }
+            String unique = shortName;
+            for (int i = 2; promptToModel.containsKey(unique); i++) unique = shortName + " #" + i;
+            promptToModel.put(unique, name);
+        }
+        return promptToModel;
+    }
+
+    /**
+     * Behält die nach Namensübereinstimmung relevantesten Blöcke, die ins Budget passen,
+     * in ihrer ursprünglichen Reihenfolge.
+     */
+    private static List<String> truncateCatalog(PromptTemplate template, String requirementText,
+                                                List<String> catalog, boolean withSchema) {
+        long remaining = MAX_INPUT_TOKENS - estimate(template, requirementText, List.of(), withSchema);
+        Set<String> kept = new HashSet<>();
+        for (String name : LocalFallbackScorer.rank(requirementText, catalog)) {
+            long cost = nameCost(name, withSchema, template.isAliased());
+            if (kept.size() >= MIN_CATALOG_SIZE && cost > remaining) break;
+            kept.add(name);
+            remaining -= cost;
+        }
+        List<String> truncated = new ArrayList<>(kept.size());
+        for (String name : catalog) {
+            if (kept.contains(name)) truncated.add(name);
+        }
+        return truncated;
+    }
+
+    /**
+     * @return Budget an Eingabe-Tokens je Aufruf (0 = unbegrenzt)
+     */
+    static long getMaxInputTokens() {
+        return MAX_INPUT_TOKENS;
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über gekürzte Prompts
+     */
+    static synchronized String getStatistics() {
+        return String.format("Prompt budget %d tokens: %d prompts, %d trimmed (names %d, example %d, catalog %d), %d still over budget",
+            MAX_INPUT_TOKENS, plans, trimmed, namesShortened, examplesDropped, catalogsTruncated, overBudget);
+    }
+}
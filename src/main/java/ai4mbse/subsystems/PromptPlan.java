@@ -0,0 +1,112 @@
+package ai4mbse.subsystems;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ein für das Senden vorbereiteter Prompt samt dem Block-Katalog, wie er im Prompt steht.
+ *
+ * Wurden Block-Namen für den Prompt gekürzt, hält der Plan die Zuordnung zurück zu den
+ * Modellnamen, damit Kandidaten der KI-Antwort wieder an die richtigen Blöcke gebunden
+ * werden. Im Alias-Modus liefert die KI statt Namen die Aliase der
+ * {@link SubsystemAliasTable}.
+ */
+final class PromptPlan {
+
+    /** Der fertige Prompt */
+    private final String prompt;
+
+    /** Block-Namen, wie sie im Prompt stehen */
+    private final List<String> subsystemNames;
+
+    /** Zuordnung gekürzter Prompt-Namen zu Modellnamen (nur abweichende Namen) */
+    private final Map<String, String> modelNames;
+
+    /** Aliase der Blöcke oder null, wenn die KI Block-Namen liefert */
+    private final SubsystemAliasTable aliasTable;
+
+    /** Werte, die die KI als subsystemName liefern soll */
+    private final List<String> responseNames;
+
+    /** Version des Prompt-Aufbaus für den Cache-Schlüssel */
+    private final String version;
+
+    /** Geschätzte Eingabe-Tokens */
+    private final long estimatedTokens;
+
+    /**
+     * @param prompt Der fertige Prompt
+     * @param subsystemNames Block-Namen, wie sie im Prompt stehen
+     * @param modelNames Zuordnung gekürzter Prompt-Namen zu Modellnamen
+     * @param aliasTable Aliase der Blöcke oder null
+     * @param version Version des Prompt-Aufbaus
+     * @param estimatedTokens Geschätzte Eingabe-Tokens
+     */
+    PromptPlan(String prompt, List<String> subsystemNames, Map<String, String> modelNames,
+               SubsystemAliasTable aliasTable, String version, long estimatedTokens) {
+        this.prompt = prompt;
+        this.subsystemNames = subsystemNames;
+        this.modelNames = modelNames;
+        this.aliasTable = aliasTable;
+        this.responseNames = aliasTable != null ? aliasTable.aliases() : subsystemNames;
+        this.version = version;
+        this.estimatedTokens = estimatedTokens;
+    }
+
+    /**
+     * @return Der fertige Prompt
+     */
+    String getPrompt() {
+        return prompt;
+    }
+
+    /**
+     * @return Block-Namen, wie sie im Prompt stehen
+     */
+    List<String> getSubsystemNames() {
+        return subsystemNames;
+    }
+
+    /**
+     * @return Werte, die die KI als subsystemName liefern soll (Aliase oder Block-Namen),
+     *         für das Antwortschema
+     */
+    List<String> getResponseNames() {
+        return responseNames;
+    }
+
+    /**
+     * @return true, wenn die KI Blöcke über Aliase benennt
+     */
+    boolean isAliased() {
+        return aliasTable != null;
+    }
+
+    /**
+     * Übersetzt einen Block-Namen oder Alias aus der KI-Antwort in den Modellnamen.
+     *
+     * @param promptName Der Name bzw. Alias, wie ihn die KI geliefert hat
+     * @return Der Modellname bzw. der unveränderte Name, wenn er weder Alias ist noch gekürzt wurde
+     */
+    String resolveSubsystemName(String promptName) {
+        if (aliasTable != null) {
+            String modelName = aliasTable.resolve(promptName);
+            if (modelName != null) return modelName;
+        }
+        return modelNames.getOrDefault(promptName, promptName);
+    }
+
+    /**
+     * @return Version des Prompt-Aufbaus für den Cache-Schlüssel
+     */
+    String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Geschätzte Eingabe-Tokens
+     */
+    long getEstimatedTokens() {
+        return estimatedTokens;
+    }
+}
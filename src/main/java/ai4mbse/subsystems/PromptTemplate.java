@@ -0,0 +1,322 @@
+package ai4mbse.subsystems;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Vorkompilierte Prompt-Vorlage.
+ *
+ * Der Vorlagentext wird einmalig an seinen Platzhaltern {{requirement}} und
+ * {{subsystems}} in unveränderliche Segmente zerlegt. Der Subsystem-Block wird je
+ * Block-Katalog nur einmal gerendert und wiederverwendet; pro Aufruf wird lediglich der
+ * Requirement-Text eingefügt, in einen Puffer passender Größe.
+ *
+ * Im Alias-Modus wird jeder Block als "- S1: Name" aufgeführt und die KI antwortet mit
+ * dem Alias statt mit dem Namen (siehe {@link SubsystemAliasTable}).
+ *
+ * Die Version einer Vorlage setzt sich aus ihrem Namen und einem Hash des Vorlagentexts
+ * zusammen, sodass jede Textänderung gecachte Antworten automatisch ungültig macht.
+ */
+final class PromptTemplate {
+
+    /** Platzhalter für den Requirement-Text */
+    static final String REQUIREMENT = "{{requirement}}";
+
+    /** Platzhalter für die Liste der Block-Subsysteme */
+    static final String SUBSYSTEMS = "{{subsystems}}";
+
+    /** Anzahl der Block-Kataloge, deren gerenderter Subsystem-Block vorgehalten wird */
+    private static final int MAX_CACHED_CATALOGS = 16;
+
+    /** Rollenbeschreibung */
+    private static final String ROLE =
+        "Hello Gemini,\n\n" +
+        "Please act as an **expert Systems Engineer specializing in Model-Based Systems Engineering (MBSE)** with extensive experience in complex system architectures, particularly those modeled using tools like CATIA Magic / No Magic products (or similar SysML-compliant tools). Your analytical skills allow you to infer logical relationships even when they are not explicitly stated.\n\n";
+
+    /** Analyse-Regeln und Bewertungsskala */
+    private static final String RULES =
+        "**CRITICAL INSTRUCTIONS – PLEASE ADHERE STRICTLY:**\n\n" +
+        "1. **Single-Pass Task:** This is a **single-pass analysis**. You will not receive follow-up clarifications or opportunities for correction. It is paramount that your first response is as accurate, complete, and helpful as possible.\n" +
+        "2. **Precision and Justification:** Every suggested allocation must be logically justified based *only* on the information present in the requirement description and subsystem names. Do not invent information or make assumptions beyond the data.\n" +
+        "3. **Semantic Fit:** Only suggest allocations where subsystems semantically fit the requirement's intent and technical domain.\n" +
+        "4. **Confidence Scoring:** Provide realistic confidence scores (0.0-1.0) based on how well each subsystem matches the requirement's purpose.\n\n" +
+        "**Your Detailed Task:**\n\n" +
+        "1. **Parse:** Thoroughly analyze the provided requirement description.\n" +
+        "2. **Evaluate:** For each available subsystem, assess its suitability for implementing or satisfying the requirement.\n" +
+        "3. **Score:** Assign realistic confidence scores where:\n" +
+        "   - 0.9-1.0: Perfect semantic match, primary responsibility\n" +
+        "   - 0.7-0.8: Strong match, likely implementation candidate\n" +
+        "   - 0.4-0.6: Moderate match, supporting role possible\n" +
+        "   - 0.1-0.3: Weak match, indirect contribution only\n" +
+        "   - 0.0: No logical connection\n" +
+        "4. **Justify:** Provide concise (1-2 sentences) justification explaining *why* each allocation is logical.\n\n";
+
+    /** Rollen- und Aufgabenbeschreibung, Requirement und Block-Liste */
+    private static final String INSTRUCTIONS = ROLE +
+        "I will provide you with a requirement from a systems engineering project. Your primary task is to meticulously analyze this requirement and provide well-founded, actionable suggestions for requirement allocation to appropriate subsystems.\n\n" +
+        RULES +
+        "**Requirement to Analyze:**\n" +
+        "\"" + REQUIREMENT + "\"\n\n" +
+        "**Available Subsystems:**\n" +
+        SUBSYSTEMS +
+        "\n";
+
+    /** Aufgabenbeschreibung für mehrere Requirements, Requirement-Liste und Block-Liste */
+    private static final String PACKED_INSTRUCTIONS = ROLE +
+        "I will provide you with several requirements from a systems engineering project, each labelled with an ID such as R1. Your primary task is to meticulously analyze each requirement on its own and provide well-founded, actionable suggestions for requirement allocation to appropriate subsystems.\n\n" +
+        RULES +
+        "**Requirements to Analyze:**\n" +
+        REQUIREMENT +
+        "\n" +
+        "**Available Subsystems:**\n" +
+        SUBSYSTEMS +
+        "\n";
+
+    /** Aufgabenbeschreibung und Block-Liste ohne Requirement, für den Kontext-Cache */
+    private static final String CACHED_INSTRUCTIONS = ROLE +
+        "After these instructions I will provide you with a requirement from a systems engineering project. Your primary task is to meticulously analyze this requirement and provide well-founded, actionable suggestions for requirement allocation to appropriate subsystems.\n\n" +
+        RULES +
+        "**Available Subsystems:**\n" +
+        SUBSYSTEMS +
+        "\n";
+
+    /** Einleitung des Ausgabeformats für ein einzelnes Requirement */
+    private static final String ARRAY_FORMAT =
+        "**Output Format:** Provide your analysis as a JSON array of objects. Each object must have exactly three keys:\n";
+
+    /** Einleitung des Ausgabeformats für mehrere Requirements */
+    private static final String KEYED_FORMAT =
+        "**Output Format:** Provide your analysis as a JSON object with exactly one key per requirement ID (e.g. \"R1\"). Each value is a JSON array of objects for that requirement, and each object must have exactly three keys:\n";
+
+    /** Felder eines Kandidaten mit Block-Namen */
+    private static final String CANDIDATE_KEYS =
+        "- 'subsystemName' (string, exact name from Available Subsystems list)\n" +
+        "- 'score' (float, confidence value 0.0-1.0)\n" +
+        "- 'justification' (string, concise reasoning for the score)\n\n";
+
+    /** Beispiel einer gültigen Antwort; entfällt in der kompakten Vorlage */
+    private static final String EXAMPLE =
+        "**Example JSON Structure:**\n" +
+        "[\n" +
+        "  { \"subsystemName\": \"Power Management System\", \"score\": 0.95, \"justification\": \"Direct responsibility for power-related requirements based on domain expertise.\" },\n" +
+        "  { \"subsystemName\": \"Control System\", \"score\": 0.65, \"justification\": \"May interface with power systems for monitoring and control functions.\" },\n" +
+        "  { \"subsystemName\": \"User Interface\", \"score\": 0.15, \"justification\": \"Minimal relevance, only potential status display capabilities.\" }\n" +
+        "]\n\n";
+
+    /** Abschließende Anweisung */
+    private static final String CLOSING =
+        "**IMPORTANT:** Return only valid JSON and nothing else. Ensure all subsystem names exactly match those provided in the Available Subsystems list.";
+
+    /** Felder eines Kandidaten mit Aliasen statt Block-Namen */
+    private static final String ALIASED_CANDIDATE_KEYS =
+        "- 'subsystemName' (string, the alias token of the subsystem such as S1, exactly as given before the colon in the Available Subsystems list)\n" +
+        "- 'score' (float, confidence value 0.0-1.0)\n" +
+        "- 'justification' (string, concise reasoning for the score; refer to subsystems by name, not by alias)\n\n";
+
+    /** Beispielantwort mit Aliasen */
+    private static final String ALIASED_EXAMPLE =
+        "**Example JSON Structure:**\n" +
+        "[\n" +
+        "  { \"subsystemName\": \"S4\", \"score\": 0.95, \"justification\": \"Direct responsibility for power-related requirements based on domain expertise.\" },\n" +
+        "  { \"subsystemName\": \"S1\", \"score\": 0.65, \"justification\": \"May interface with power systems for monitoring and control functions.\" },\n" +
+        "  { \"subsystemName\": \"S7\", \"score\": 0.15, \"justification\": \"Minimal relevance, only potential status display capabilities.\" }\n" +
+        "]\n\n";
+
+    /** Abschließende Anweisung mit Aliasen */
+    private static final String ALIASED_CLOSING =
+        "**IMPORTANT:** Return only valid JSON and nothing else. Every 'subsystemName' must be one of the alias tokens from the Available Subsystems list.";
+
+    /** Zusatz der abschließenden Anweisung für mehrere Requirements */
+    private static final String KEYED_CLOSING =
+        "**IMPORTANT:** Include every requirement ID, with an empty array if no subsystem fits. ";
+
+    /** Erweiterter Prompt für die Allokations-Analyse */
+    static final PromptTemplate ADVANCED = new PromptTemplate("advanced-1",
+        INSTRUCTIONS + ARRAY_FORMAT + CANDIDATE_KEYS + EXAMPLE + CLOSING, false);
+
+    /** Erweiterter Prompt ohne Beispielantwort, für Prompts über dem Token-Budget */
+    static final PromptTemplate ADVANCED_WITHOUT_EXAMPLE = new PromptTemplate("advanced-1-no-example",
+        INSTRUCTIONS + ARRAY_FORMAT + CANDIDATE_KEYS + CLOSING, false);
+
+    /** Erweiterter Prompt mit Aliasen (S1, S2, ...) statt Block-Namen in der Antwort */
+    static final PromptTemplate ALIASED = new PromptTemplate("aliased-1",
+        INSTRUCTIONS + ARRAY_FORMAT + ALIASED_CANDIDATE_KEYS + ALIASED_EXAMPLE + ALIASED_CLOSING, true);
+
+    /** Prompt mit Aliasen ohne Beispielantwort, für Prompts über dem Token-Budget */
+    static final PromptTemplate ALIASED_WITHOUT_EXAMPLE = new PromptTemplate("aliased-1-no-example",
+        INSTRUCTIONS + ARRAY_FORMAT + ALIASED_CANDIDATE_KEYS + ALIASED_CLOSING, true);
+
+    /**
+     * Prompt für mehrere Requirements gegen denselben Block-Katalog. Der Platzhalter
+     * {@link #REQUIREMENT} nimmt die Liste der Requirements mit ihren IDs auf.
+     */
+    static final PromptTemplate PACKED = new PromptTemplate("packed-1",
+        PACKED_INSTRUCTIONS + KEYED_FORMAT + CANDIDATE_KEYS + KEYED_CLOSING + CLOSING, false);
+
+    /** Prompt für mehrere Requirements mit Aliasen statt Block-Namen */
+    static final PromptTemplate PACKED_ALIASED = new PromptTemplate("packed-aliased-1",
+        PACKED_INSTRUCTIONS + KEYED_FORMAT + ALIASED_CANDIDATE_KEYS + KEYED_CLOSING + ALIASED_CLOSING, true);
+
+    /**
+     * Statischer Teil für den Kontext-Cache von Gemini: Anweisungen, Block-Katalog und
+     * Ausgabeformat. Das Requirement folgt je Aufruf über {@link #CACHED_REQUIREMENT}.
+     */
+    static final PromptTemplate CACHED_PREFIX = new PromptTemplate("cached-prefix-1",
+        CACHED_INSTRUCTIONS + ARRAY_FORMAT + CANDIDATE_KEYS + EXAMPLE + CLOSING, false);
+
+    /** Statischer Teil für den Kontext-Cache mit Aliasen statt Block-Namen */
+    static final PromptTemplate CACHED_PREFIX_ALIASED = new PromptTemplate("cached-prefix-aliased-1",
+        CACHED_INSTRUCTIONS + ARRAY_FORMAT + ALIASED_CANDIDATE_KEYS + ALIASED_EXAMPLE + ALIASED_CLOSING, true);
+
+    /** Je Aufruf gesendeter Teil zu einem gecachten statischen Teil */
+    static final PromptTemplate CACHED_REQUIREMENT = new PromptTemplate("cached-requirement-1",
+        "**Requirement to Analyze:**\n\"" + REQUIREMENT + "\"", false);
+
+    /** Literale Segmente; null markiert einen Platzhalter an dieser Stelle */
+    private final String[] literals;
+
+    /** Platzhalter je Segment (null bei literalen Segmenten) */
+    private final String[] slots;
+
+    /** Gesamtlänge aller literalen Segmente */
+    private final int literalLength;
+
+    /** Version der Vorlage für Cache-Schlüssel */
+    private final String version;
+
+    /** Ob die Block-Liste mit Aliasen ("- S1: Name") gerendert wird */
+    private final boolean aliased;
+
+    /** Gerenderte Subsystem-Blöcke je Block-Katalog (LRU) */
+    private final Map<List<String>, String> subsystemBlocks = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, String> eldest) {
+            return size() > MAX_CACHED_CATALOGS;
+        }
+    };
+
+    /** Statistik: Wiederverwendete und neu gerenderte Subsystem-Blöcke */
+    private long blockHits, blockMisses;
+
+    /**
+     * Kompiliert eine Vorlage.
+     *
+     * @param name Name der Vorlage, Teil der Version
+     * @param text Vorlagentext mit den Platzhaltern {@link #REQUIREMENT} und {@link #SUBSYSTEMS}
+     * @param aliased Ob jeder Block mit seinem Alias aus der {@link SubsystemAliasTable} aufgeführt wird
+     */
+    PromptTemplate(String name, String text, boolean aliased) {
+        List<String> literalList = new ArrayList<>();
+        List<String> slotList = new ArrayList<>();
+        int length = 0;
+        int pos = 0;
+        while (pos < text.length()) {
+            int start = text.indexOf("{{", pos);
+            int end = start < 0 ? -1 : text.indexOf("}}", start);
+            if (end < 0) {
+                literalList.add(text.substring(pos));
+                slotList.add(null);
+                length += text.length() - pos;
+                break;
+            }
+            String slot = text.substring(start, end + 2);
+            if (!slot.equals(REQUIREMENT) && !slot.equals(SUBSYSTEMS)) {
+                throw new IllegalArgumentException("Unbekannter Platzhalter in Vorlage " + name + ": " + slot);
+            }
+            if (start > pos) {
+                literalList.add(text.substring(pos, start));
+                slotList.add(null);
+                length += start - pos;
+            }
+            literalList.add(null);
+            slotList.add(slot);
+            pos = end + 2;
+        }
+        this.literals = literalList.toArray(new String[0]);
+        this.slots = slotList.toArray(new String[0]);
+        this.literalLength = length;
+        // String.hashCode ist durch die Spezifikation festgelegt und damit über Neustarts stabil
+        this.version = name + "+" + String.format("%08x", text.hashCode());
+        this.aliased = aliased;
+    }
+
+    /**
+     * @return true, wenn die KI Aliase statt Block-Namen liefern soll
+     */
+    boolean isAliased() {
+        return aliased;
+    }
+
+    /**
+     * @return Version der Vorlage (Name und Hash des Vorlagentexts) für Cache-Schlüssel
+     */
+    String getVersion() {
+        return version;
+    }
+
+    /**
+     * Rendert die Vorlage für ein Requirement.
+     *
+     * @param requirementText Der Text des Requirements
+     * @param subsystemNames Die Block-Namen in Anzeigereihenfolge
+     * @return Der fertige Prompt
+     */
+    String render(String requirementText, List<String> subsystemNames) {
+        String subsystemBlock = subsystemBlock(subsystemNames);
+        StringBuilder prompt = new StringBuilder(literalLength + requirementText.length() + subsystemBlock.length());
+        for (int i = 0; i < literals.length; i++) {
+            if (literals[i] != null) {
+                prompt.append(literals[i]);
+            } else if (slots[i].equals(REQUIREMENT)) {
+                prompt.append(requirementText);
+            } else {
+                prompt.append(subsystemBlock);
+            }
+        }
+        return prompt.toString();
+    }
+
+    /**
+     * Liefert den gerenderten Subsystem-Block eines Katalogs, beim ersten Mal gerendert.
+     */
+    private synchronized String subsystemBlock(List<String> subsystemNames) {
+        String block = subsystemBlocks.get(subsystemNames);
+        if (block != null) {
+            blockHits++;
+            return block;
+        }
+        blockMisses++;
+        int length = 0;
+        for (String name : subsystemNames) length += name.length() + (aliased ? 10 : 3);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < subsystemNames.size(); i++) {
+            builder.append("- ");
+            if (aliased) builder.append(SubsystemAliasTable.alias(i)).append(": ");
+            builder.append(subsystemNames.get(i)).append('\n');
+        }
+        block = builder.toString();
+        // Unveränderliche Kopie als Schlüssel, damit spätere Änderungen der Liste nicht durchschlagen
+        subsystemBlocks.put(List.copyOf(subsystemNames), block);
+        return block;
+    }
+
+    /**
+     * @return Statistik-Bericht aller Vorlagen
+     */
+    static String getAllStatistics() {
+        return ADVANCED.getStatistics() + "\n" + ADVANCED_WITHOUT_EXAMPLE.getStatistics()
+            + "\n" + ALIASED.getStatistics() + "\n" + ALIASED_WITHOUT_EXAMPLE.getStatistics()
+            + "\n" + PACKED.getStatistics() + "\n" + PACKED_ALIASED.getStatistics()
+            + "\n" + CACHED_PREFIX.getStatistics() + "\n" + CACHED_PREFIX_ALIASED.getStatistics();
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über wiederverwendete Subsystem-Blöcke
+     */
+    synchronized String getStatistics() {
+        return String.format("Prompt template %s: %d subsystem blocks reused, %d rendered, %d catalogs cached",
+            version, blockHits, blockMisses, subsystemBlocks.size());
+    }
+}
@@ -0,0 +1,181 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Packt mehrere Requirements mit demselben Block-Katalog in einen gemeinsamen Prompt.
+ *
+ * Rolle, Regeln, Ausgabeformat und Block-Katalog werden so nur einmal je Aufruf gesendet
+ * statt einmal je Requirement. Die Requirements werden nach geschätzten Tokens absteigend
+ * per First-Fit in Pakete verteilt, die zusammen mit dem festen Anteil unter dem Budget
+ * des {@link PromptBudgetGovernor} bleiben. Jedes Requirement erhält im Paket eine kurze
+ * ID (R1, R2, ...), unter der die KI ihre Kandidaten zurückliefert.
+ */
+final class RequirementPackingPlanner {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /** Maximale Anzahl an Requirements je Prompt */
+    private static final int MAX_REQUIREMENTS = (int) Math.max(1,
+        ConfigurationService.getLongSetting("AI4MBSE_PACK_MAX_REQUIREMENTS", 8));
+
+    /** Geschätzte Tokens für ID, Anführungszeichen und Zeilenumbruch eines Requirements */
+    private static final int REQUIREMENT_OVERHEAD_TOKENS = 5;
+
+    /** Statistik: Aufteilungen, gepackte Aufrufe, darin enthaltene Requirements, Einzelaufrufe */
+    private static long plans, packedCalls, requirementsPacked, singleCalls, fallbacks;
+
+    private RequirementPackingPlanner() {
+    }
+
+    /**
+     * Ein Paket von Requirements für einen gemeinsamen Aufruf.
+     */
+    static final class Pack {
+
+        /** Positionen der Requirements in der Eingabeliste */
+        private final List<Integer> members;
+
+        /** IDs der Requirements im Prompt, in derselben Reihenfolge */
+        private final List<String> keys;
+
+        /** Der Prompt samt Katalog; null bei einzeln zu sendenden Requirements */
+        private final PromptPlan plan;
+
+        private Pack(List<Integer> members, List<String> keys, PromptPlan plan) {
+            this.members = members;
+            this.keys = keys;
+            this.plan = plan;
+        }
+
+        /**
+         * @return Positionen der Requirements in der Eingabeliste
+         */
+        List<Integer> getMembers() {
+            return members;
+        }
+
+        /**
+         * @return IDs der Requirements im Prompt (R1, R2, ...)
+         */
+        List<String> getKeys() {
+            return keys;
+        }
+
+        /**
+         * @return Der gemeinsame Prompt oder null, wenn das Requirement einzeln gesendet wird
+         */
+        PromptPlan getPlan() {
+            return plan;
+        }
+    }
+
+    /**
+     * Verteilt Requirements mit gemeinsamem Block-Katalog auf Prompts.
+     *
+     * Im strukturierten Modus enthält das Antwortschema die Block-Namen bzw. Aliase je
+     * Requirement; dieser Anteil zählt daher zu den Kosten jedes Requirements.
+     * Requirements, die allein kein Paket füllen, werden als Einzelpaket ohne Prompt
+     * geliefert und vom Aufrufer über den normalen Einzelaufruf bearbeitet.
+     *
+     * @param requirementTexts Die Texte der Requirements
+     * @param subsystemNames Der gemeinsame Block-Katalog
+     * @param withSchema Ob die Block-Namen zusätzlich als Antwortschema gesendet werden
+     * @param aliased Ob die KI Blöcke über Aliase statt über Namen benennt
+     * @return Die Pakete; jedes Requirement ist in genau einem enthalten
+     */
+    static List<Pack> plan(List<String> requirementTexts, List<String> subsystemNames, boolean withSchema,
+                           boolean aliased) {
+        PromptTemplate template = aliased ? PromptTemplate.PACKED_ALIASED : PromptTemplate.PACKED;
+        SubsystemAliasTable aliasTable = aliased ? new SubsystemAliasTable(subsystemNames) : null;
+        List<String> responseNames = aliasTable != null ? aliasTable.aliases() : subsystemNames;
+
+        long fixed = TokenEstimator.estimate(template.render("", subsystemNames));
+        long schemaCost = withSchema ? TokenEstimator.estimateRequest("", responseNames) : 0;
+        long budget = PromptBudgetGovernor.getMaxInputTokens();
+        long capacity = budget > 0 ? budget - fixed : Long.MAX_VALUE;
+
+        long[] costs = new long[requirementTexts.size()];
+        List<Integer> order = new ArrayList<>(costs.length);
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = TokenEstimator.estimate(requirementTexts.get(i)) + REQUIREMENT_OVERHEAD_TOKENS + schemaCost;
+            order.add(i);
+        }
+        order.sort((a, b) -> Long.compare(costs[b], costs[a]));
+
+        // First-Fit-Decreasing: jedes Requirement in das erste Paket mit Platz
+        List<List<Integer>> bins = new ArrayList<>();
+        List<Long> remaining = new ArrayList<>();
+        for (int index : order) {
+            int bin = 0;
+            while (bin < bins.size()
+                    && (bins.get(bin).size() >= MAX_REQUIREMENTS || remaining.get(bin) < costs[index])) {
+                bin++;
+            }
+            if (bin == bins.size()) {
+                bins.add(new ArrayList<>());
+                remaining.add(capacity);
+            }
+            bins.get(bin).add(index);
+            remaining.set(bin, remaining.get(bin) - costs[index]);
+        }
+
+        List<Pack> packs = new ArrayList<>(bins.size());
+        int packed = 0, singles = 0;
+        for (List<Integer> members : bins) {
+            Collections.sort(members);
+            if (members.size() == 1) {
+                packs.add(new Pack(members, List.of(), null));
+                singles++;
+                continue;
+            }
+            List<String> keys = new ArrayList<>(members.size());
+            StringBuilder requirements = new StringBuilder();
+            long estimate = fixed;
+            for (int i = 0; i < members.size(); i++) {
+                String key = "R" + (i + 1);
+                keys.add(key);
+                requirements.append(key).append(": \"").append(requirementTexts.get(members.get(i))).append("\"\n");
+                estimate += costs[members.get(i)];
+            }
+            PromptPlan plan = new PromptPlan(template.render(requirements.toString(), subsystemNames), subsystemNames,
+                Collections.emptyMap(), aliasTable, template.getVersion(), estimate);
+            packs.add(new Pack(members, keys, plan));
+            packed += members.size();
+        }
+
+        synchronized (RequirementPackingPlanner.class) {
+            plans++;
+            packedCalls += packs.size() - singles;
+            requirementsPacked += packed;
+            singleCalls += singles;
+        }
+        logger.info(requirementTexts.size() + " Requirements auf " + packs.size() + " Aufrufe verteilt ("
+            + (packs.size() - singles) + " gepackt, " + singles + " einzeln).", "RequirementPackingPlanner");
+        return packs;
+    }
+
+    /**
+     * Erfasst Requirements eines Pakets, die mangels verwertbarer Antwort einzeln
+     * nachgefragt werden.
+     *
+     * @param count Anzahl der Requirements
+     */
+    static synchronized void recordFallback(int count) {
+        fallbacks += count;
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über gepackte Prompts
+     */
+    static synchronized String getStatistics() {
+        return String.format("Requirement packing (max %d): %d batches, %d packed calls with %d requirements (%.1f per call), %d single calls, %d fallbacks",
+            MAX_REQUIREMENTS, plans, packedCalls, requirementsPacked,
+            packedCalls == 0 ? 0.0 : (double) requirementsPacked / packedCalls, singleCalls, fallbacks);
+    }
+}
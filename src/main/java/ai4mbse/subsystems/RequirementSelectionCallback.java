@@ -3,10 +3,20 @@ package ai4mbse.subsystems;
 import com.nomagic.magicdraw.core.Project;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
 
+import java.util.List;
+
 /**
  * Callback-Interface für Requirement-Auswahl.
  */
 public interface RequirementSelectionCallback {
     void onRequirementSelected(Element selectedRequirement, Project project);
+
+    /**
+     * Mehrere Requirements wurden ausgewählt; ohne eigene Behandlung wird nur das erste
+     * bearbeitet.
+     */
+    default void onRequirementsSelected(List<Element> selectedRequirements, Project project) {
+        onRequirementSelected(selectedRequirements.get(0), project);
+    }
     void onRequirementSelectionCancelled();
 }
\ No newline at end of file
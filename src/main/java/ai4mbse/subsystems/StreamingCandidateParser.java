@@ -0,0 +1,107 @@
+package ai4mbse.subsystems;
+
+import com.google.gson.JsonParseException;
+import java.util.function.Consumer;
+
+import ai4mbse.model.AllocationCandidate;
+
+/**
+ * Inkrementeller Parser für die JSON-Array-Antwort der KI.
+ *
+ * Nimmt die Textfragmente einer gestreamten Gemini-Antwort entgegen und liefert
+ * jeden AllocationCandidate aus, sobald sein JSON-Objekt vollständig empfangen
+ * wurde. Zeichen außerhalb von Objekten (Array-Klammern, Kommas, Markdown-Zäune)
+ * werden übersprungen.
+ */
+class StreamingCandidateParser {
+
+    /** Empfänger für vollständig geparste Kandidaten */
+    private final Consumer<AllocationCandidate> candidateConsumer;
+
+    /** Puffer für das aktuell offene JSON-Objekt */
+    private final StringBuilder currentObject = new StringBuilder();
+
+    /** Verschachtelungstiefe geschweifter Klammern */
+    private int depth;
+
+    /** true, solange sich der Parser innerhalb eines JSON-Strings befindet */
+    private boolean inString;
+
+    /** true, wenn das vorherige Zeichen ein Escape-Backslash war */
+    private boolean escaped;
+
+    /** Anzahl der bisher ausgelieferten Kandidaten */
+    private int candidateCount;
+
+    /**
+     * @param candidateConsumer Empfänger, der jeden vollständigen Kandidaten erhält
+     */
+    StreamingCandidateParser(Consumer<AllocationCandidate> candidateConsumer) {
+        this.candidateConsumer = candidateConsumer;
+    }
+
+    /**
+     * Verarbeitet das nächste Textfragment der KI-Antwort.
+     *
+     * @param fragment Ein beliebig geschnittener Teil des Antworttexts
+     */
+    void feed(String fragment) {
+        for (int i = 0; i < fragment.length(); i++) {
+            char c = fragment.charAt(i);
+            if (depth == 0) {
+                // Außerhalb eines Objekts zählt nur der Beginn des nächsten Objekts
+                if (c == '{') {
+                    depth = 1;
+                    currentObject.setLength(0);
+                    currentObject.append(c);
+                }
+                continue;
+            }
+
+            currentObject.append(c);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    emit(currentObject.toString());
+                    currentObject.setLength(0);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Anzahl der bisher ausgelieferten Kandidaten
+     */
+    int getCandidateCount() {
+        return candidateCount;
+    }
+
+    /**
+     * Deserialisiert ein vollständiges JSON-Objekt und reicht es weiter.
+     *
+     * @param json Der Text eines vollständigen JSON-Objekts
+     */
+    private void emit(String json) {
+        try {
+            AllocationCandidate candidate = AllocationCandidateCodec.read(json);
+            if (candidate != null) {
+                candidateCount++;
+                candidateConsumer.accept(candidate);
+            }
+        } catch (JsonParseException e) {
+            // Einzelnes fehlerhaftes Objekt überspringen, der Stream läuft weiter
+        }
+    }
+}
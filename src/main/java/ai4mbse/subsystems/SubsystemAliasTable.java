@@ -0,0 +1,82 @@
+package ai4mbse.subsystems;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aliase der Blöcke eines Prompts.
+ *
+ * Im Alias-Modus erhält jeder Block des Katalogs ein kurzes Token (S1, S2, ...), das im
+ * Prompt, im Antwortschema und in der Antwort statt des vollständigen Namens steht. Das
+ * Token ist die Position des Blocks im Katalog; die Rückübersetzung ist ein Array-Zugriff
+ * ohne Namensvergleich. Tokens außerhalb des Katalogs werden erkannt und abgewiesen.
+ */
+final class SubsystemAliasTable {
+
+    /** Präfix eines Alias */
+    private static final char ALIAS_PREFIX = 'S';
+
+    /** Modellnamen der Blöcke, indiziert nach Alias-Nummer - 1 */
+    private final String[] modelNames;
+
+    /**
+     * @param modelNames Modellnamen der Blöcke in Katalogreihenfolge
+     */
+    SubsystemAliasTable(List<String> modelNames) {
+        this.modelNames = modelNames.toArray(new String[0]);
+    }
+
+    /**
+     * @param index Position des Blocks im Katalog (ab 0)
+     * @return Der Alias des Blocks, z.B. "S1"
+     */
+    static String alias(int index) {
+        return ALIAS_PREFIX + Integer.toString(index + 1);
+    }
+
+    /**
+     * @return Alle Aliase in Katalogreihenfolge, z.B. für das Antwortschema
+     */
+    List<String> aliases() {
+        List<String> aliases = new ArrayList<>(modelNames.length);
+        for (int i = 0; i < modelNames.length; i++) aliases.add(alias(i));
+        return aliases;
+    }
+
+    /**
+     * Liest die Position eines Alias, ohne Teilstrings anzulegen.
+     *
+     * @param alias Der Alias aus der Antwort (Leerraum am Rand wird ignoriert)
+     * @return Position im Katalog oder -1, wenn der Text kein gültiger Alias ist
+     */
+    int indexOf(String alias) {
+        if (alias == null) return -1;
+        int start = 0, end = alias.length();
+        while (start < end && Character.isWhitespace(alias.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(alias.charAt(end - 1))) end--;
+        if (end - start < 2 || Character.toUpperCase(alias.charAt(start)) != ALIAS_PREFIX) return -1;
+        int number = 0;
+        for (int i = start + 1; i < end; i++) {
+            char c = alias.charAt(i);
+            if (c < '0' || c > '9' || number > modelNames.length) return -1;
+            number = number * 10 + (c - '0');
+        }
+        return number >= 1 && number <= modelNames.length ? number - 1 : -1;
+    }
+
+    /**
+     * @param alias Der Alias aus der Antwort
+     * @return Der Modellname des Blocks oder null, wenn der Alias unbekannt ist
+     */
+    String resolve(String alias) {
+        int index = indexOf(alias);
+        return index < 0 ? null : modelNames[index];
+    }
+
+    /**
+     * @return Anzahl der Blöcke
+     */
+    int size() {
+        return modelNames.length;
+    }
+}
@@ -0,0 +1,294 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.config.ConfigurationService;
+import ai4mbse.logging.LoggingService;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Löst Block-Namen aus der KI-Antwort auf, die nicht exakt im Katalog stehen.
+ *
+ * Die KI weicht gelegentlich in Groß-/Kleinschreibung, Leerraum, Satzzeichen oder einem
+ * angehängten "Block" vom Modellnamen ab. Statt solche Kandidaten zu verwerfen, wird der
+ * Name zuerst normalisiert und im normalisierten Katalog gesucht, danach über einen
+ * Trigramm-Index und eine begrenzte Editierdistanz dem ähnlichsten Block zugeordnet.
+ * Kennungen im Namen (Ziffernfolgen und einzelne Buchstaben, z.B. in "Motor 3" oder
+ * "Pump A") müssen dabei exakt übereinstimmen; die Editierdistanz gleicht nur
+ * Schreibweisen von Wörtern aus. Passen mehrere Blöcke gleich gut, wird nicht geraten
+ * und der Kandidat verworfen.
+ * Der Index wird je Katalog einmal aufgebaut und anhand des Katalog-Fingerprints
+ * wiederverwendet.
+ */
+final class SubsystemNameResolver {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /** Aktiviert die unscharfe Auflösung; sonst gilt nur der exakte Name */
+    private static final boolean ENABLED = ConfigurationService.getBooleanSetting("AI4MBSE_FUZZY_NAMES", true);
+
+    /** Höchste Editierdistanz zwischen normalisiertem Antwort- und Modellnamen */
+    private static final int MAX_DISTANCE = (int) ConfigurationService.getLongSetting("AI4MBSE_FUZZY_NAMES_MAX_DISTANCE", 2);
+
+    /** Mindestlänge eines normalisierten Namens für die Editierdistanz (kürzere nur normalisiert) */
+    private static final int MIN_FUZZY_LENGTH = 4;
+
+    /** Wörter am Rand eines Namens, die beim Vergleich ignoriert werden */
+    private static final Set<String> NOISE_WORDS = Set.of("block", "subsystem");
+
+    /** Anzahl der vorgehaltenen Kataloge */
+    private static final int MAX_CATALOGS = 8;
+
+    /** Resolver je Katalog-Fingerprint (LRU) */
+    private static final Map<String, SubsystemNameResolver> catalogs =
+        new LinkedHashMap<String, SubsystemNameResolver>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SubsystemNameResolver> eldest) {
+                return size() > MAX_CATALOGS;
+            }
+        };
+
+    /**
+     * Ergebnis einer Auflösung für die Statistik.
+     */
+    private enum Result { NORMALIZED, FUZZY, AMBIGUOUS, UNRESOLVED }
+
+    /** Statistik: Auflösungen je Ergebnis */
+    private static final long[] results = new long[Result.values().length];
+
+    /** Statistik: aufgebaute Indizes */
+    private static long indexesBuilt;
+
+    /** Modellnamen in Katalogreihenfolge */
+    private final String[] modelNames;
+
+    /** Normalisierte Modellnamen, parallel zu {@link #modelNames} */
+    private final String[] normalizedNames;
+
+    /** Kennungen der Modellnamen, parallel zu {@link #modelNames} */
+    private final String[] identifiers;
+
+    /** Normalisierter Name zu Positionen im Katalog (mehrere bei Kollision) */
+    private final Map<String, List<Integer>> byNormalizedName = new HashMap<>();
+
+    /** Trigramm zu Positionen im Katalog */
+    private final Map<String, List<Integer>> trigramIndex = new HashMap<>();
+
+    private SubsystemNameResolver(Map<String, String> subsystemNameToIdMap) {
+        modelNames = subsystemNameToIdMap.keySet().toArray(new String[0]);
+        normalizedNames = new String[modelNames.length];
+        identifiers = new String[modelNames.length];
+        for (int i = 0; i < modelNames.length; i++) {
+            normalizedNames[i] = normalize(modelNames[i]);
+            identifiers[i] = identifiers(normalizedNames[i]);
+            byNormalizedName.computeIfAbsent(normalizedNames[i], k -> new ArrayList<>(1)).add(i);
+            for (String trigram : trigrams(normalizedNames[i])) {
+                trigramIndex.computeIfAbsent(trigram, k -> new ArrayList<>()).add(i);
+            }
+        }
+    }
+
+    /**
+     * Liefert den Resolver eines Katalogs und baut ihn beim ersten Zugriff auf.
+     *
+     * @param subsystemNameToIdMap Zuordnung von Block-Namen zu IDs
+     * @return Der Resolver des Katalogs
+     */
+    static SubsystemNameResolver forCatalog(Map<String, String> subsystemNameToIdMap) {
+        String fingerprint = AIIntegrationService.computeCatalogFingerprint(subsystemNameToIdMap);
+        synchronized (catalogs) {
+            SubsystemNameResolver resolver = catalogs.get(fingerprint);
+            if (resolver == null) {
+                resolver = new SubsystemNameResolver(subsystemNameToIdMap);
+                catalogs.put(fingerprint, resolver);
+                synchronized (SubsystemNameResolver.class) {
+                    indexesBuilt++;
+                }
+            }
+            return resolver;
+        }
+    }
+
+    /**
+     * @return true, wenn die unscharfe Auflösung aktiviert ist
+     */
+    static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Ordnet einen Namen aus der KI-Antwort, der nicht exakt im Katalog steht, einem
+     * Modellnamen zu.
+     *
+     * @param name Der Name aus der Antwort
+     * @return Der Modellname oder null, wenn kein Block eindeutig passt
+     */
+    String resolve(String name) {
+        if (name == null) return null;
+        String query = normalize(name);
+        List<Integer> sameName = byNormalizedName.get(query);
+        if (sameName != null) {
+            if (sameName.size() == 1) {
+                count(Result.NORMALIZED);
+                return modelNames[sameName.get(0)];
+            }
+            return ambiguous(name, sameName);
+        }
+
+        if (query.length() < MIN_FUZZY_LENGTH || MAX_DISTANCE <= 0) {
+            count(Result.UNRESOLVED);
+            return null;
+        }
+        int bound = Math.min(MAX_DISTANCE, Math.max(1, query.length() / 4));
+        String queryIdentifiers = identifiers(query);
+
+        // Jede Änderung zerstört höchstens drei Trigramme; weniger Gemeinsamkeiten schließen den Block aus
+        Set<String> queryTrigrams = trigrams(query);
+        int[] shared = new int[modelNames.length];
+        for (String trigram : queryTrigrams) {
+            List<Integer> positions = trigramIndex.get(trigram);
+            if (positions != null) for (int position : positions) shared[position]++;
+        }
+        int minShared = Math.max(1, queryTrigrams.size() - 3 * bound);
+
+        int best = -1, bestDistance = Integer.MAX_VALUE;
+        List<Integer> tied = new ArrayList<>(2);
+        for (int i = 0; i < modelNames.length; i++) {
+            if (shared[i] < minShared) continue;
+            // "Motor 3" ist nicht "Motor 1": abweichende Kennungen schließen den Block aus
+            if (!identifiers[i].equals(queryIdentifiers)) continue;
+            int distance = boundedDistance(query, normalizedNames[i], bound);
+            if (distance > bound) continue;
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+                tied.clear();
+                tied.add(i);
+            } else if (distance == bestDistance) {
+                tied.add(i);
+            }
+        }
+        if (best < 0) {
+            count(Result.UNRESOLVED);
+            return null;
+        }
+        if (tied.size() > 1) return ambiguous(name, tied);
+        count(Result.FUZZY);
+        logger.info("Block-Name '" + name + "' aus der KI-Antwort als '" + modelNames[best] + "' erkannt (Distanz "
+            + bestDistance + ").", "SubsystemNameResolver");
+        return modelNames[best];
+    }
+
+    private String ambiguous(String name, List<Integer> positions) {
+        count(Result.AMBIGUOUS);
+        Set<String> names = new LinkedHashSet<>();
+        for (int position : positions) names.add(modelNames[position]);
+        logger.warning("Block-Name '" + name + "' aus der KI-Antwort ist mehrdeutig " + names + " - Kandidat wird verworfen.", "SubsystemNameResolver");
+        return null;
+    }
+
+    /**
+     * Normalisiert einen Namen: Unicode-Kompatibilitätsform, Kleinschreibung, Satzzeichen
+     * und Leerraum als einzelnes Leerzeichen, ohne "Block"/"Subsystem" am Rand.
+     *
+     * @param name Der Name
+     * @return Der normalisierte Name
+     */
+    static String normalize(String name) {
+        String folded = Normalizer.normalize(name, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= folded.length(); i++) {
+            char c = i < folded.length() ? folded.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        int start = 0, end = words.size();
+        while (end - start > 1 && NOISE_WORDS.contains(words.get(end - 1))) end--;
+        while (end - start > 1 && NOISE_WORDS.contains(words.get(start))) start++;
+        return String.join(" ", words.subList(start, end));
+    }
+
+    /**
+     * Zerlegt einen normalisierten Namen an Leerzeichen und Wechseln zwischen Buchstaben und
+     * Ziffern und liefert daraus die Ziffernfolgen und einzelnen Buchstaben, in Reihenfolge.
+     * "Motor3", "Motor 3" und "motor-3" haben so dieselbe Kennung "3", "Pump 3b" die Kennung "3 b".
+     *
+     * @return Die Kennungen eines normalisierten Namens
+     */
+    static String identifiers(String normalizedName) {
+        StringBuilder identifiers = new StringBuilder();
+        int start = 0;
+        for (int i = 1; i <= normalizedName.length(); i++) {
+            char previous = normalizedName.charAt(i - 1);
+            boolean boundary = i == normalizedName.length() || normalizedName.charAt(i) == ' ' || previous == ' '
+                || Character.isDigit(previous) != Character.isDigit(normalizedName.charAt(i));
+            if (!boundary) continue;
+            if (previous != ' ' && (Character.isDigit(previous) || i - start == 1)) {
+                identifiers.append(normalizedName, start, i).append(' ');
+            }
+            start = i;
+        }
+        return identifiers.toString();
+    }
+
+    /**
+     * @return Die Trigramme eines normalisierten Namens, mit Randmarkierung
+     */
+    private static Set<String> trigrams(String normalizedName) {
+        String padded = "  " + normalizedName + " ";
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) trigrams.add(padded.substring(i, i + 3));
+        return trigrams;
+    }
+
+    /**
+     * Levenshtein-Distanz mit Abbruch, sobald sie die Schranke sicher übersteigt.
+     *
+     * @return Die Distanz oder bound + 1, wenn sie größer als bound ist
+     */
+    static int boundedDistance(String a, String b, int bound) {
+        if (Math.abs(a.length() - b.length()) > bound) return bound + 1;
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > bound) return bound + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], bound + 1);
+    }
+
+    private static synchronized void count(Result result) {
+        results[result.ordinal()]++;
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über aufgelöste und verworfene Namen
+     */
+    static synchronized String getStatistics() {
+        return String.format("Name resolver %s: %d catalogs indexed, %d normalized, %d fuzzy, %d ambiguous, %d unresolved",
+            ENABLED ? "on" : "off", indexesBuilt, results[Result.NORMALIZED.ordinal()], results[Result.FUZZY.ordinal()],
+            results[Result.AMBIGUOUS.ordinal()], results[Result.UNRESOLVED.ordinal()]);
+    }
+}
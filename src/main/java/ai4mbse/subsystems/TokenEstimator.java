@@ -0,0 +1,125 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.logging.LoggingService;
+
+import java.util.List;
+
+/**
+ * Offline-Schätzung der Eingabe-Tokens eines Prompts.
+ *
+ * Der Text wird in einem Durchlauf grob wie von einem Subword-Tokenizer zerlegt:
+ * Wörter zählen ein Token je angefangene fünf Buchstaben, Ziffernfolgen eines je drei
+ * Ziffern, Satz- und Sonderzeichen je eines; Leerraum ist frei. Die Schätzung wird mit
+ * dem Verhältnis zu den tatsächlichen Tokens aus usageMetadata fortlaufend kalibriert.
+ */
+final class TokenEstimator {
+
+    private static final LoggingService logger = LoggingService.getInstance();
+
+    /** Geschätzter Grundaufwand des Antwortschemas ohne Block-Namen */
+    private static final int SCHEMA_OVERHEAD_TOKENS = 40;
+
+    /** Gewicht neuer Messungen bei der Kalibrierung */
+    private static final double CALIBRATION_WEIGHT = 0.2;
+
+    /** Grenzen des Kalibrierungsfaktors, damit Ausreißer die Schätzung nicht kippen */
+    private static final double MIN_FACTOR = 0.5, MAX_FACTOR = 2.0;
+
+    /** Verhältnis tatsächlicher zu geschätzten Tokens (gleitender Mittelwert) */
+    private static double factor = 1.0;
+
+    /** Statistik: Aufrufe mit Messung, Summen geschätzter und tatsächlicher Tokens */
+    private static long measuredCalls, estimatedSum, actualSum;
+
+    /** Letzte Schätzung und Messung */
+    private static long lastEstimated = -1, lastActual = -1;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * Schätzt die Tokens eines Texts, kalibriert an den bisherigen Messungen.
+     *
+     * @param text Der Text
+     * @return Geschätzte Anzahl an Tokens
+     */
+    static long estimate(String text) {
+        double calibration;
+        synchronized (TokenEstimator.class) {
+            calibration = factor;
+        }
+        return Math.round(estimateRaw(text) * calibration);
+    }
+
+    /**
+     * Schätzt die Eingabe-Tokens eines Aufrufs: Prompt und, im strukturierten Modus, die
+     * Block-Namen des Antwortschemas.
+     *
+     * @param prompt Der Text-Prompt
+     * @param allowedSubsystems Block-Namen für das Antwortschema oder null
+     * @return Geschätzte Anzahl an Eingabe-Tokens
+     */
+    static long estimateRequest(String prompt, List<String> allowedSubsystems) {
+        long tokens = estimate(prompt);
+        if (allowedSubsystems != null) {
+            tokens += SCHEMA_OVERHEAD_TOKENS;
+            for (String name : allowedSubsystems) tokens += estimate(name) + 1;
+        }
+        return tokens;
+    }
+
+    /**
+     * Unkalibrierte Schätzung.
+     */
+    private static long estimateRaw(String text) {
+        if (text == null) return 0;
+        long tokens = 0;
+        int letters = 0, digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetter(c)) {
+                if (digits > 0) tokens += (digits + 2) / 3;
+                digits = 0;
+                letters++;
+                continue;
+            }
+            if (letters > 0) tokens += (letters + 4) / 5;
+            letters = 0;
+            if (Character.isDigit(c)) {
+                digits++;
+                continue;
+            }
+            if (digits > 0) tokens += (digits + 2) / 3;
+            digits = 0;
+            if (!Character.isWhitespace(c)) tokens++;
+        }
+        tokens += (letters + 4) / 5 + (digits + 2) / 3;
+        return tokens;
+    }
+
+    /**
+     * Erfasst die tatsächliche Tokenzahl eines Aufrufs und kalibriert die Schätzung.
+     *
+     * @param estimated Die vor dem Senden geschätzten Tokens
+     * @param actual promptTokenCount aus usageMetadata
+     */
+    static synchronized void recordActual(long estimated, long actual) {
+        if (estimated <= 0 || actual <= 0) return;
+        measuredCalls++;
+        estimatedSum += estimated;
+        actualSum += actual;
+        lastEstimated = estimated;
+        lastActual = actual;
+        logger.info("Eingabe-Tokens: ~" + estimated + " geschätzt, " + actual + " laut usageMetadata.", "TokenEstimator");
+        double ratio = factor * actual / estimated;
+        factor = Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, factor + CALIBRATION_WEIGHT * (ratio - factor)));
+    }
+
+    /**
+     * @return Kurzer Statistik-Bericht über geschätzte und tatsächliche Tokens
+     */
+    static synchronized String getStatistics() {
+        return String.format("Token estimate: %d calls measured, %d estimated vs %d actual input tokens, last %d vs %d, calibration %.2f",
+            measuredCalls, estimatedSum, actualSum, lastEstimated, lastActual, factor);
+    }
+}
@@ -0,0 +1,85 @@
+package ai4mbse.subsystems;
+
+import ai4mbse.logging.TokenUsage;
+import ai4mbse.logging.TokenUsageLedger;
+
+/**
+ * Sammelt den Tokenverbrauch der Gemini-Aufrufe eines Arbeitsschritts, z.B. einer
+ * Allokation oder einer Stapelverarbeitung.
+ *
+ * Ein Bereich gilt für den Thread, der ihn öffnet; Aufrufe auf anderen Threads (z.B.
+ * Ensemble-Varianten) werden über {@link #bind()} zugeordnet. Bereiche können
+ * verschachtelt werden; ein Aufruf zählt dann für alle umschließenden Bereiche.
+ * Jeder Aufruf wird außerdem im {@link TokenUsageLedger} der Sitzung gebucht.
+ */
+final class TokenUsageScope {
+
+    /** Aktueller Bereich je Thread */
+    private static final ThreadLocal<TokenUsageScope> current = new ThreadLocal<>();
+
+    /**
+     * Zuordnung eines Threads zu einem Bereich; {@link #close()} stellt die vorherige wieder her.
+     */
+    interface Binding extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /** Umschließender Bereich oder null */
+    private final TokenUsageScope parent;
+
+    /** Gesammelter Verbrauch */
+    private TokenUsage usage = TokenUsage.NONE;
+
+    private TokenUsageScope(TokenUsageScope parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Öffnet einen Bereich innerhalb des aktuellen Bereichs des Threads. Der Bereich
+     * ist erst nach {@link #bind()} aktiv.
+     *
+     * @return Der neue Bereich
+     */
+    static TokenUsageScope open() {
+        return new TokenUsageScope(current.get());
+    }
+
+    /**
+     * Ordnet dem aktuellen Thread diesen Bereich zu.
+     *
+     * @return Die Zuordnung, die beim Schließen aufgehoben wird
+     */
+    Binding bind() {
+        TokenUsageScope previous = current.get();
+        current.set(this);
+        return () -> {
+            if (previous == null) current.remove();
+            else current.set(previous);
+        };
+    }
+
+    /**
+     * Bucht einen Gemini-Aufruf in der Sitzung und in allen Bereichen des aktuellen Threads.
+     *
+     * @param model Der Modellname
+     * @param usage Der Verbrauch laut usageMetadata
+     */
+    static void recordCall(String model, TokenUsage usage) {
+        TokenUsageLedger.getInstance().recordCall(model, usage);
+        for (TokenUsageScope scope = current.get(); scope != null; scope = scope.parent) {
+            scope.add(usage);
+        }
+    }
+
+    private synchronized void add(TokenUsage other) {
+        usage = usage.plus(other);
+    }
+
+    /**
+     * @return Der bisher gesammelte Verbrauch
+     */
+    synchronized TokenUsage getUsage() {
+        return usage;
+    }
+}
@@ -233,7 +233,8 @@ public class UserInterfaceManager {
     }
     
     /**
-     * Zeigt einen nicht-modalen Dialog zur Requirement-Auswahl.
+     * Zeigt einen nicht-modalen Dialog zur Requirement-Auswahl. Werden mehrere Requirements
+     * ausgewählt, erhält der Callback sie gemeinsam.
      * 
      * @param elems Liste der Requirement-Elemente
      * @param model ListModel für die UI
@@ -241,11 +242,11 @@ public class UserInterfaceManager {
      * @param callback Callback für die weitere Verarbeitung
      */
     public void showNonModalRequirementDialog(List<Element> elems, DefaultListModel<String> model, Project project, RequirementSelectionCallback callback) {
-        JDialog reqDialog = new JDialog(getMainFrame(), "Select Requirement for Subsystem Analysis", false);
+        JDialog reqDialog = new JDialog(getMainFrame(), "Select Requirement(s) for Subsystem Analysis", false);
         reqDialog.setLayout(new BorderLayout());
         
         JList<String> list = new JList<>(model);
-        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         list.setVisibleRowCount(Math.min(12, model.size()));
         JScrollPane pane = new JScrollPane(list);
         pane.setPreferredSize(new Dimension(400, 300));
@@ -255,16 +256,23 @@ public class UserInterfaceManager {
         JButton cancelButton = new JButton("Cancel");
         
         okButton.addActionListener(e -> {
-            int idx = list.getSelectedIndex();
-            if (idx < 0) {
+            int[] indices = list.getSelectedIndices();
+            if (indices.length == 0) {
                 showMessage("⚠️ Bitte ein Requirement auswählen.", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-            Element selectedRequirement = elems.get(idx);
             reqDialog.dispose();
             
-            // Fortsetzung mit Callback
-            callback.onRequirementSelected(selectedRequirement, project);
+            // Fortsetzung mit Callback; mehrere Requirements werden gemeinsam bearbeitet
+            if (indices.length == 1) {
+                callback.onRequirementSelected(elems.get(indices[0]), project);
+            } else {
+                List<Element> selectedRequirements = new ArrayList<>(indices.length);
+                for (int idx : indices) {
+                    selectedRequirements.add(elems.get(idx));
+                }
+                callback.onRequirementsSelected(selectedRequirements, project);
+            }
         });
         
         cancelButton.addActionListener(e -> {
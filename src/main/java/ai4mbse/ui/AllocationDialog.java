@@ -21,7 +21,7 @@ import java.util.List;
  * Die Tabelle enthält folgende Spalten:
  * - Auswahlcheckbox
  * - Subsystemname
- * - Konfidenzwert (als Prozent)
+ * - Konfidenzwert (als Prozent, bei Ensemble-Bewertung mit Streuung und Stabilität)
  * - Begründung der KI
  * 
  * @author AI4MBSE Plugin
@@ -43,6 +43,24 @@ public class AllocationDialog extends JDialog {
     
     /** Referenz auf das Hauptfenster für die Positionierung des Dialogs */
     private Frame dialogOwner;
+    
+    /** Name des Requirements für die Kopfzeile */
+    private String requirementName;
+    
+    /** true, solange die KI im Streaming-Modus noch weitere Vorschläge generiert */
+    private boolean generating;
+    
+    /** Statuszeile für den Fortschritt der gestreamten Generierung */
+    private JLabel statusLabel;
+    
+    /** OK-Button, im Streaming-Modus bis zum Abschluss der Generierung deaktiviert */
+    private JButton okButton;
+
+    /** Streuung, bis zu der eine Ensemble-Bewertung als stabil gilt */
+    private static final double STABLE_DISPERSION = 0.05;
+
+    /** Streuung, ab der eine Ensemble-Bewertung als instabil gilt */
+    private static final double UNSTABLE_DISPERSION = 0.15;
 
 
     /**
@@ -55,6 +73,24 @@ public class AllocationDialog extends JDialog {
         super(owner, "Confirm Subsystem Allocations", false); // NON-MODAL!
         this.candidates = candidates;
         this.dialogOwner = owner;
+        this.requirementName = candidates != null && !candidates.isEmpty()
+            ? candidates.get(0).getRequirementElement().getHumanName() : "N/A";
+        initComponents();
+    }
+
+    /**
+     * Konstruktor für den Streaming-Modus: Der Dialog startet leer und wird über
+     * {@link #addCandidate(AllocationCandidate)} befüllt, während die KI noch generiert.
+     * 
+     * @param owner Das Hauptfenster als Parent für diesen Dialog
+     * @param requirementName Name des analysierten Requirements für die Kopfzeile
+     */
+    public AllocationDialog(Frame owner, String requirementName) {
+        super(owner, "Confirm Subsystem Allocations", false); // NON-MODAL!
+        this.candidates = new ArrayList<>();
+        this.dialogOwner = owner;
+        this.requirementName = requirementName;
+        this.generating = true;
         initComponents();
     }
 
@@ -67,8 +103,7 @@ public class AllocationDialog extends JDialog {
         setPreferredSize(new Dimension(700, 400));
 
         // Header mit Requirement-Name
-        JLabel headerLabel = new JLabel("AI-Suggested Allocations for Requirement: " + 
-            (candidates != null && !candidates.isEmpty() ? candidates.get(0).getRequirementElement().getHumanName() : "N/A"), SwingConstants.CENTER);
+        JLabel headerLabel = new JLabel("AI-Suggested Allocations for Requirement: " + requirementName, SwingConstants.CENTER);
         headerLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
         add(headerLabel, BorderLayout.NORTH);
 
@@ -109,7 +144,7 @@ public class AllocationDialog extends JDialog {
         TableColumnModel columnModel = table.getColumnModel();
         columnModel.getColumn(0).setPreferredWidth(50);  // Auswahl-Checkbox
         columnModel.getColumn(1).setPreferredWidth(150); // Subsystemname
-        columnModel.getColumn(2).setPreferredWidth(50);  // Konfidenz
+        columnModel.getColumn(2).setPreferredWidth(hasDispersion() ? 130 : 50); // Konfidenz
         columnModel.getColumn(3).setPreferredWidth(300); // Begründung
 
         // Angenommen, 'table' ist deine JTable
@@ -152,7 +187,8 @@ public class AllocationDialog extends JDialog {
 
         // --- Buttons ---
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
-        JButton okButton = new JButton("OK");
+        okButton = new JButton("OK");
+        okButton.setEnabled(!generating);
         okButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -191,7 +227,19 @@ public class AllocationDialog extends JDialog {
 
         buttonPanel.add(okButton);
         buttonPanel.add(cancelButton);
-        add(buttonPanel, BorderLayout.SOUTH);
+
+        if (generating || hasDispersion()) {
+            // Statuszeile links neben den Buttons: Fortschritt bzw. Erläuterung der Streuung
+            statusLabel = new JLabel(generating ? "KI generiert Vorschläge..."
+                : "± = Streuung der Konfidenz über die Ensemble-Läufe");
+            statusLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+            JPanel southPanel = new JPanel(new BorderLayout());
+            southPanel.add(statusLabel, BorderLayout.WEST);
+            southPanel.add(buttonPanel, BorderLayout.EAST);
+            add(southPanel, BorderLayout.SOUTH);
+        } else {
+            add(buttonPanel, BorderLayout.SOUTH);
+        }
 
         pack();
         setLocationRelativeTo(dialogOwner); // Center on parent frame
@@ -209,17 +257,86 @@ public class AllocationDialog extends JDialog {
         candidates.sort((c1, c2) -> Double.compare(c2.getConfidence(), c1.getConfidence()));
 
         for (AllocationCandidate candidate : candidates) {
-            // Automatische Vorauswahl bei hoher Konfidenz
-            boolean preSelected = candidate.getConfidence() >= 0.5;
-            candidate.setSelectedForAllocation(preSelected);
-
-            tableModel.addRow(new Object[] {
-                preSelected,
-                candidate.getSubsystemName(),
-                String.format("%.0f %%", candidate.getConfidence() * 100),
-                candidate.getJustification()
-            });
+            tableModel.addRow(createRow(candidate));
+        }
+    }
+
+    /**
+     * Fügt einen gestreamten Kandidaten an der nach Konfidenz sortierten Position ein.
+     * Muss auf dem Event Dispatch Thread aufgerufen werden.
+     * 
+     * @param candidate Der neu empfangene Allokationskandidat
+     */
+    public void addCandidate(AllocationCandidate candidate) {
+        int index = 0;
+        while (index < candidates.size() && candidates.get(index).getConfidence() >= candidate.getConfidence()) {
+            index++;
+        }
+        // Kandidatenliste und Tabellenzeilen bleiben index-gleich (wichtig für OK-Button)
+        candidates.add(index, candidate);
+        tableModel.insertRow(index, createRow(candidate));
+        if (statusLabel != null) {
+            statusLabel.setText("KI generiert Vorschläge... (" + candidates.size() + " bisher)");
+        }
+    }
+
+    /**
+     * Beendet den Streaming-Modus: aktualisiert die Statuszeile und gibt den OK-Button frei.
+     * Muss auf dem Event Dispatch Thread aufgerufen werden.
+     */
+    public void markGenerationComplete() {
+        generating = false;
+        okButton.setEnabled(true);
+        if (statusLabel != null) {
+            statusLabel.setText(candidates.size() + " Vorschläge vollständig empfangen");
+        }
+    }
+
+    /**
+     * Erstellt die Tabellenzeile für einen Kandidaten und wählt ihn bei
+     * hoher Konfidenz (>= 0.5) automatisch vor.
+     * 
+     * @param candidate Der darzustellende Allokationskandidat
+     * @return Die Zellenwerte der Tabellenzeile
+     */
+    private Object[] createRow(AllocationCandidate candidate) {
+        // Automatische Vorauswahl bei hoher Konfidenz
+        boolean preSelected = candidate.getConfidence() >= 0.5;
+        candidate.setSelectedForAllocation(preSelected);
+
+        return new Object[] {
+            preSelected,
+            candidate.getSubsystemName(),
+            formatConfidence(candidate),
+            candidate.getJustification()
+        };
+    }
+
+    /**
+     * Formatiert die Konfidenz; bei Ensemble-Bewertung mit Streuung und Stabilitätsstufe.
+     * 
+     * @param candidate Der Allokationskandidat
+     * @return Die Konfidenz, z.B. "85 %" oder "85 % ±4 (stabil)"
+     */
+    private static String formatConfidence(AllocationCandidate candidate) {
+        Double dispersion = candidate.getScoreDispersion();
+        if (dispersion == null) {
+            return String.format("%.0f %%", candidate.getConfidence() * 100);
+        }
+        String stability = dispersion <= STABLE_DISPERSION ? "stabil"
+            : dispersion <= UNSTABLE_DISPERSION ? "mittel" : "instabil";
+        return String.format("%.0f %% ±%.0f (%s)", candidate.getConfidence() * 100, dispersion * 100, stability);
+    }
+
+    /**
+     * @return true, wenn mindestens ein Kandidat aus einer Ensemble-Bewertung mit Streuung stammt
+     */
+    private boolean hasDispersion() {
+        if (candidates == null) return false;
+        for (AllocationCandidate candidate : candidates) {
+            if (candidate.getScoreDispersion() != null) return true;
         }
+        return false;
     }
 
     /**
@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2024 AI4MBSE Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package ai4mbse.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for the Gemini REST API, used for tests without network access or API key.
+ *
+ * Supports generateContent (with and without cachedContent) and the cachedContents
+ * resource (create, get, TTL update, delete) including expiry. Answers are deterministic:
+ * the first three subsystems of the "Available Subsystems" list are returned with
+ * scores 0.9, 0.6 and 0.3. Point the plugin at the server with
+ * GEMINI_API_URL=http://localhost:PORT/v1beta/models/gemini-2.5-flash:generateContent.
+ */
+public class GeminiStandInServer {
+
+    private static final String BASE_PATH = "/v1beta/";
+    private static final String CATALOG_HEADER = "**Available Subsystems:**";
+    private static final double[] SCORES = { 0.9, 0.6, 0.3 };
+
+    /**
+     * A cached content held by the server.
+     */
+    private static final class CachedContent {
+        private final String model;
+        private final String text;
+        private volatile long expiresAtMillis;
+
+        private CachedContent(String model, String text, long expiresAtMillis) {
+            this.model = model;
+            this.text = text;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAtMillis;
+        }
+    }
+
+    private final HttpServer server;
+    private final Map<String, CachedContent> caches = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    /** Counters for tests */
+    private final AtomicLong generateCalls = new AtomicLong(), cachedGenerateCalls = new AtomicLong(),
+        cachesCreated = new AtomicLong(), ttlUpdates = new AtomicLong(), cachesDeleted = new AtomicLong(),
+        notFound = new AtomicLong();
+
+    /**
+     * @param port The local port (0 = any free port)
+     */
+    public GeminiStandInServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Gemini-StandIn");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext(BASE_PATH, this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * @return The generateContent URL for GEMINI_API_URL
+     */
+    public String getApiUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + BASE_PATH + "models/gemini-2.5-flash:generateContent";
+    }
+
+    public long getGenerateCalls() {
+        return generateCalls.get();
+    }
+
+    public long getCachedGenerateCalls() {
+        return cachedGenerateCalls.get();
+    }
+
+    public long getCachesCreated() {
+        return cachesCreated.get();
+    }
+
+    public long getTtlUpdates() {
+        return ttlUpdates.get();
+    }
+
+    public long getCachesDeleted() {
+        return cachesDeleted.get();
+    }
+
+    public long getNotFound() {
+        return notFound.get();
+    }
+
+    /**
+     * @return Number of cached contents that have not yet expired
+     */
+    public int getLiveCaches() {
+        caches.values().removeIf(CachedContent::isExpired);
+        return caches.size();
+    }
+
+    /**
+     * Lets all cached contents expire immediately, e.g. to test the fallback path.
+     */
+    public void expireAll() {
+        caches.values().forEach(cache -> cache.expiresAtMillis = 0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            URI uri = exchange.getRequestURI();
+            String path = uri.getPath().substring(BASE_PATH.length());
+            String method = exchange.getRequestMethod();
+            String body = readBody(exchange);
+
+            if (path.startsWith("models/") && path.endsWith(":generateContent") && method.equals("POST")) {
+                generate(exchange, path.substring("models/".length(), path.lastIndexOf(':')), body);
+            } else if (path.equals("cachedContents") && method.equals("POST")) {
+                createCache(exchange, body);
+            } else if (path.startsWith("cachedContents/")) {
+                CachedContent cache = caches.get(path);
+                if (cache == null || cache.isExpired()) {
+                    caches.remove(path);
+                    sendError(exchange, 404, "NOT_FOUND", "CachedContent not found (or permission denied)");
+                } else if (method.equals("GET")) {
+                    send(exchange, 200, describe(path, cache).toString());
+                } else if (method.equals("PATCH")) {
+                    cache.expiresAtMillis = System.currentTimeMillis() + parseTtlMillis(body);
+                    ttlUpdates.incrementAndGet();
+                    send(exchange, 200, describe(path, cache).toString());
+                } else if (method.equals("DELETE")) {
+                    caches.remove(path);
+                    cachesDeleted.incrementAndGet();
+                    send(exchange, 200, "{}");
+                } else {
+                    sendError(exchange, 405, "INVALID_ARGUMENT", "Method not allowed: " + method);
+                }
+            } else {
+                sendError(exchange, 404, "NOT_FOUND", "Unknown resource: " + path);
+            }
+        } catch (RuntimeException e) {
+            sendError(exchange, 400, "INVALID_ARGUMENT", String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void createCache(HttpExchange exchange, String body) throws IOException {
+        JsonObject request = JsonParser.parseString(body).getAsJsonObject();
+        String model = request.get("model").getAsString();
+        String name = "cachedContents/standin-" + nextId.getAndIncrement();
+        CachedContent cache = new CachedContent(model, collectText(request.getAsJsonArray("contents")),
+            System.currentTimeMillis() + parseTtlMillis(body));
+        caches.put(name, cache);
+        cachesCreated.incrementAndGet();
+        send(exchange, 200, describe(name, cache).toString());
+    }
+
+    private void generate(HttpExchange exchange, String model, String body) throws IOException {
+        generateCalls.incrementAndGet();
+        JsonObject request = JsonParser.parseString(body).getAsJsonObject();
+        String text = collectText(request.getAsJsonArray("contents"));
+        if (request.has("cachedContent")) {
+            String name = request.get("cachedContent").getAsString();
+            CachedContent cache = caches.get(name);
+            if (cache == null || cache.isExpired()) {
+                caches.remove(name);
+                sendError(exchange, 404, "NOT_FOUND", "CachedContent not found (or permission denied)");
+                return;
+            }
+            if (!cache.model.equals("models/" + model)) {
+                sendError(exchange, 400, "INVALID_ARGUMENT", "Model of cachedContent does not match the request");
+                return;
+            }
+            cachedGenerateCalls.incrementAndGet();
+            text = cache.text + "\n" + text;
+        }
+
+        JsonArray candidates = new JsonArray();
+        List<String> subsystems = parseCatalog(text);
+        for (int i = 0; i < Math.min(SCORES.length, subsystems.size()); i++) {
+            JsonObject candidate = new JsonObject();
+            candidate.addProperty("subsystemName", subsystems.get(i));
+            candidate.addProperty("score", SCORES[i]);
+            candidate.addProperty("justification", "Stand-in answer " + (i + 1));
+            candidates.add(candidate);
+        }
+
+        JsonObject part = new JsonObject();
+        part.addProperty("text", candidates.toString());
+        JsonArray parts = new JsonArray();
+        parts.add(part);
+        JsonObject content = new JsonObject();
+        content.add("parts", parts);
+        content.addProperty("role", "model");
+        JsonObject candidate = new JsonObject();
+        candidate.add("content", content);
+        candidate.addProperty("finishReason", "STOP");
+        JsonArray responseCandidates = new JsonArray();
+        responseCandidates.add(candidate);
+
+        JsonObject usage = new JsonObject();
+        usage.addProperty("promptTokenCount", text.length() / 4);
+        if (request.has("cachedContent")) usage.addProperty("cachedContentTokenCount", (text.length() - body.length()) / 4);
+        usage.addProperty("candidatesTokenCount", candidates.toString().length() / 4);
+        JsonObject response = new JsonObject();
+        response.add("candidates", responseCandidates);
+        response.add("usageMetadata", usage);
+        send(exchange, 200, response.toString());
+    }
+
+    /**
+     * Reads the subsystem names below the catalog header; lines look like "- Name"
+     * or, with aliases, "- S1: Name" (then the alias is returned).
+     */
+    private static List<String> parseCatalog(String prompt) {
+        List<String> names = new ArrayList<>();
+        int header = prompt.indexOf(CATALOG_HEADER);
+        if (header < 0) return names;
+        for (String line : prompt.substring(header + CATALOG_HEADER.length()).split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) continue;
+            if (!trimmed.startsWith("- ")) {
+                if (!names.isEmpty()) break;
+                continue;
+            }
+            String entry = trimmed.substring(2).trim();
+            int colon = entry.indexOf(':');
+            names.add(colon > 0 && entry.substring(0, colon).matches("S\\d+") ? entry.substring(0, colon) : entry);
+        }
+        return names;
+    }
+
+    private static String collectText(JsonArray contents) {
+        StringBuilder text = new StringBuilder();
+        if (contents == null) return "";
+        for (JsonElement content : contents) {
+            JsonArray parts = content.getAsJsonObject().getAsJsonArray("parts");
+            if (parts == null) continue;
+            for (JsonElement part : parts) {
+                JsonElement value = part.getAsJsonObject().get("text");
+                if (value != null) text.append(value.getAsString());
+            }
+        }
+        return text.toString();
+    }
+
+    private static long parseTtlMillis(String body) {
+        JsonObject request = JsonParser.parseString(body).getAsJsonObject();
+        String ttl = request.has("ttl") ? request.get("ttl").getAsString() : "3600s";
+        return (long) (Double.parseDouble(ttl.substring(0, ttl.length() - 1)) * 1000);
+    }
+
+    private static JsonObject describe(String name, CachedContent cache) {
+        JsonObject description = new JsonObject();
+        description.addProperty("name", name);
+        description.addProperty("model", cache.model);
+        description.addProperty("expireTime", java.time.Instant.ofEpochMilli(cache.expiresAtMillis).toString());
+        JsonObject usage = new JsonObject();
+        usage.addProperty("totalTokenCount", cache.text.length() / 4);
+        description.add("usageMetadata", usage);
+        return description;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private void sendError(HttpExchange exchange, int code, String status, String message) throws IOException {
+        if (code == 404) notFound.incrementAndGet();
+        JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", message);
+        error.addProperty("status", status);
+        JsonObject response = new JsonObject();
+        response.add("error", error);
+        send(exchange, code, response.toString());
+    }
+
+    private static void send(HttpExchange exchange, int code, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Starts the stand-in server on the given port (default 18080) until the process ends.
+     */
+    public static void main(String[] args) throws IOException {
+        GeminiStandInServer server = new GeminiStandInServer(args.length > 0 ? Integer.parseInt(args[0]) : 18080);
+        server.start();
+        System.out.println("Gemini stand-in listening, GEMINI_API_URL=" + server.getApiUrl());
+    }
+}